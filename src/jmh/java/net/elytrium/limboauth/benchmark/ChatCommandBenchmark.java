@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.handler.ChatCommandTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of the chat messages sent in the auth limbo with the compiled command table
+ * and with the previous {@code split(" ")} and {@code List.contains} chain. Run with {@code -prof gc} to compare the allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChatCommandBenchmark {
+
+  private static final List<String> REGISTER_COMMAND = List.of("/r", "/reg", "/register");
+  private static final List<String> LOGIN_COMMAND = List.of("/l", "/log", "/login");
+  private static final List<String> TOTP_COMMAND = List.of("/2fa", "/totp");
+
+  @Param({"VALID", "SPAM", "LONG_SPAM"})
+  private MessageType messageType;
+
+  private final ChatCommandTable.Tokens tokens = new ChatCommandTable.Tokens();
+  private ChatCommandTable table;
+  private String message;
+
+  @Setup
+  public void setup() {
+    this.table = new ChatCommandTable(REGISTER_COMMAND, LOGIN_COMMAND, TOTP_COMMAND, 71 * 2);
+    this.message = this.messageType.message;
+  }
+
+  @Benchmark
+  public void table(Blackhole blackhole) {
+    ChatCommandTable.Command command = this.table.parse(this.message, this.tokens);
+    blackhole.consume(command);
+    if (command != ChatCommandTable.Command.INVALID && this.tokens.getCount() == 2) {
+      blackhole.consume(this.tokens.get(1));
+    }
+  }
+
+  @Benchmark
+  public void split(Blackhole blackhole) {
+    String[] args = this.message.split(" ");
+    if (args.length != 0 && args.length == 2) {
+      ChatCommandTable.Command command;
+      if (REGISTER_COMMAND.contains(args[0])) {
+        command = ChatCommandTable.Command.REGISTER;
+      } else if (LOGIN_COMMAND.contains(args[0])) {
+        command = ChatCommandTable.Command.LOGIN;
+      } else if (TOTP_COMMAND.contains(args[0])) {
+        command = ChatCommandTable.Command.TOTP;
+      } else {
+        command = ChatCommandTable.Command.INVALID;
+      }
+
+      blackhole.consume(command);
+      if (command != ChatCommandTable.Command.INVALID) {
+        blackhole.consume(args[1]);
+      }
+    }
+  }
+
+  public enum MessageType {
+
+    VALID("/login Xq7vR2mL9tP4"),
+    SPAM("hello can someone help me with the login"),
+    LONG_SPAM("a ".repeat(128));
+
+    private final String message;
+
+    MessageType(String message) {
+      this.message = message;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import com.google.common.hash.Hashing;
+import de.mkammerer.argon2.Argon2Factory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.migration.MigrationHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Every {@link MigrationHash} verifier against a hash in the format of the plugin it migrates from.
+ * ARGON2 requires the native libargon2 to be installed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MigrationHashBenchmark {
+
+  private static final String PASSWORD = "correct horse battery staple";
+  private static final String SALT = "8a7b1c2d3e4f5a6b";
+
+  @Param({
+      "AUTHME", "AUTHME_NP", "ARGON2", "SHA512_DBA", "SHA512_NP", "SHA512_P", "SHA256_NP", "SHA256_P", "MD5", "MOON_SHA256",
+      "SHA256_NO_SALT", "SHA512_NO_SALT", "SHA512_P_REVERSED_HASH", "SHA512_NLOGIN", "CRC32C", "PLAINTEXT"
+  })
+  private MigrationHash migrationHash;
+
+  private String hash;
+
+  @Setup
+  public void setup() {
+    this.hash = genHash(this.migrationHash, PASSWORD);
+    if (!this.migrationHash.checkPassword(this.hash, PASSWORD)) {
+      throw new IllegalStateException("The " + this.migrationHash + " sample hash is not accepted by its verifier");
+    }
+  }
+
+  @Benchmark
+  public boolean correctPassword() {
+    return this.migrationHash.checkPassword(this.hash, PASSWORD);
+  }
+
+  @Benchmark
+  public boolean wrongPassword() {
+    return this.migrationHash.checkPassword(this.hash, "wrong password");
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private static String genHash(MigrationHash migrationHash, String password) {
+    switch (migrationHash) {
+      case AUTHME:
+        return "$SHA$" + SALT + "$" + digest(digest(password, "SHA-256") + SALT, "SHA-256");
+      case AUTHME_NP:
+        return "SHA$" + SALT + "$" + digest(digest(password, "SHA-256") + SALT, "SHA-256");
+      case ARGON2:
+        return Argon2Factory.create().hash(2, 65536, 1, password.toCharArray());
+      case SHA512_DBA:
+        return "SHA$" + SALT + "$" + digest(digest(password, "SHA-512") + SALT, "SHA-512");
+      case SHA512_NP:
+        return "SHA$" + SALT + "$" + digest(password + SALT, "SHA-512");
+      case SHA512_P:
+        return "$SHA$" + SALT + "$" + digest(password + SALT, "SHA-512");
+      case SHA256_NP:
+        return "SHA$" + SALT + "$" + digest(password + SALT, "SHA-256");
+      case SHA256_P:
+        return "$SHA$" + SALT + "$" + digest(password + SALT, "SHA-256");
+      case MD5:
+        return digest(password, "MD5");
+      case MOON_SHA256:
+        return "$SHA$" + digest(digest(password, "SHA-256"), "SHA-256");
+      case SHA256_NO_SALT:
+        return "$SHA$" + digest(password, "SHA-256");
+      case SHA512_NO_SALT:
+        return "$SHA$" + digest(password, "SHA-512");
+      case SHA512_P_REVERSED_HASH:
+        return "$SHA$" + digest(password + SALT, "SHA-512") + "$" + SALT;
+      case SHA512_NLOGIN:
+        return "$SHA$" + digest(digest(password, "SHA-512") + SALT, "SHA-512") + "$" + SALT;
+      case CRC32C:
+        return Hashing.crc32c().hashString(password, StandardCharsets.UTF_8).toString();
+      case PLAINTEXT:
+        return password;
+      default:
+        throw new IllegalArgumentException(migrationHash.name());
+    }
+  }
+
+  private static String digest(String string, String algorithm) {
+    try {
+      byte[] digest = MessageDigest.getInstance(algorithm).digest(string.getBytes(StandardCharsets.UTF_8));
+      StringBuilder builder = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+}
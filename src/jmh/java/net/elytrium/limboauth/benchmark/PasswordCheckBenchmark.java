@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.UUIDType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of {@link AuthSessionHandler#checkPassword} for the BCRYPT_COST values worth considering.
+ * Each point of the cost doubles the time, so the results show how many logins per second one hashing thread can handle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PasswordCheckBenchmark {
+
+  private static final String PASSWORD = "correct horse battery staple";
+
+  @Param({"8", "10", "12", "14"})
+  private int cost;
+
+  private RegisteredPlayer player;
+
+  @Setup
+  public void setup() {
+    this.player = new RegisteredPlayer("Benchmark", "00000000-0000-0000-0000-000000000000", "127.0.0.1", UUIDType.JAVA_OFFLINE)
+        .setHash(BCrypt.withDefaults().hashToString(this.cost, PASSWORD.toCharArray()));
+  }
+
+  @Benchmark
+  public boolean correctPassword() {
+    return AuthSessionHandler.checkPassword(PASSWORD, this.player, (PlayerRepository) null);
+  }
+
+  @Benchmark
+  public boolean wrongPassword() {
+    return AuthSessionHandler.checkPassword("wrong password", this.player, (PlayerRepository) null);
+  }
+
+  @Benchmark
+  public String genHash() {
+    return BCrypt.withDefaults().hashToString(this.cost, PASSWORD.toCharArray());
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.table.TableUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import net.elytrium.limboauth.database.PlayerStatements;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.UUIDType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link RegisteredPlayer} round trips against the embedded databases, using the same queries as the PlayerRepository.
+ * The table is filled with {@code players} accounts and indexed the same way as the schema migrator does.
+ * The *Prepared benchmarks use the {@link PlayerStatements}, the others build the statement on every call, the difference is the saved parse cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlayerDaoBenchmark {
+
+  private static final String HASH = "$2a$10$" + "0".repeat(53);
+
+  @Param({"H2", "SQLITE"})
+  private String storageType;
+
+  @Param({"10000"})
+  private int players;
+
+  private Path directory;
+  private JdbcConnectionSource connectionSource;
+  private Dao<RegisteredPlayer, String> playerDao;
+  private String[] uuids;
+  private String[] nicknames;
+  private PlayerStatements statements;
+
+  @Setup
+  public void setup() throws Exception {
+    this.directory = Files.createTempDirectory("limboauth-benchmark");
+    Path database = this.directory.resolve("limboauth");
+    String url = this.storageType.equals("H2") ? "jdbc:h2:" + database.toAbsolutePath() : "jdbc:sqlite:" + database.toAbsolutePath() + ".db";
+    this.connectionSource = new JdbcConnectionSource(url);
+    TableUtils.createTableIfNotExists(this.connectionSource, RegisteredPlayer.class);
+    this.playerDao = DaoManager.createDao(this.connectionSource, RegisteredPlayer.class);
+    this.playerDao.executeRawNoArgs("CREATE INDEX AUTH_LOWERCASENICKNAME_IDX ON AUTH (LOWERCASENICKNAME, REGDATE)");
+    this.playerDao.executeRawNoArgs("CREATE INDEX AUTH_IP_IDX ON AUTH (IP)");
+
+    this.uuids = new String[this.players];
+    this.nicknames = new String[this.players];
+    this.playerDao.callBatchTasks(() -> {
+      for (int i = 0; i < this.players; ++i) {
+        this.uuids[i] = UUID.randomUUID().toString();
+        this.nicknames[i] = "Player" + i;
+        this.playerDao.create(new RegisteredPlayer(this.nicknames[i], this.uuids[i], "10.0." + (i >> 8 & 0xFF) + "." + (i & 0xFF), UUIDType.JAVA_OFFLINE)
+            .setHash(HASH));
+      }
+
+      return null;
+    });
+
+    this.statements = new PlayerStatements(this.playerDao);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    this.connectionSource.close();
+    try (Stream<Path> files = Files.walk(this.directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public RegisteredPlayer fetchByUuid() throws SQLException {
+    return this.playerDao.queryBuilder().where().eq(RegisteredPlayer.UUID_FIELD, this.randomUuid()).queryForFirst();
+  }
+
+  @Benchmark
+  public RegisteredPlayer fetchByNickname() throws SQLException {
+    return this.playerDao.queryBuilder()
+        .orderBy(RegisteredPlayer.REG_DATE_FIELD, true)
+        .where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, this.randomNickname().toLowerCase(Locale.ROOT))
+        .queryForFirst();
+  }
+
+  @Benchmark
+  public RegisteredPlayer fetchByUuidPrepared() throws SQLException {
+    return this.statements.fetchByUuid(this.randomUuid());
+  }
+
+  @Benchmark
+  public RegisteredPlayer fetchByNicknamePrepared() throws SQLException {
+    return this.statements.fetchByNickname(this.randomNickname().toLowerCase(Locale.ROOT));
+  }
+
+  @Benchmark
+  public int updateHash() throws SQLException {
+    UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder()
+        .updateColumnValue(RegisteredPlayer.HASH_FIELD, HASH);
+    updateBuilder.where().eq(RegisteredPlayer.UUID_FIELD, this.randomUuid());
+    return updateBuilder.update();
+  }
+
+  @Benchmark
+  public int updateHashPrepared() throws SQLException {
+    return this.statements.updateColumn(RegisteredPlayer.UUID_FIELD, this.randomUuid(), RegisteredPlayer.HASH_FIELD, HASH);
+  }
+
+  @Benchmark
+  public int updateLoginData() throws SQLException {
+    UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder()
+        .updateColumnValue(RegisteredPlayer.LOGIN_IP_FIELD, "127.0.0.1")
+        .updateColumnValue(RegisteredPlayer.LOGIN_DATE_FIELD, System.currentTimeMillis());
+    updateBuilder.where().eq(RegisteredPlayer.UUID_FIELD, this.randomUuid());
+    return updateBuilder.update();
+  }
+
+  @Benchmark
+  public long countByIp() throws SQLException {
+    return this.playerDao.queryBuilder().where().eq(RegisteredPlayer.IP_FIELD, "10.0.0.1").countOf();
+  }
+
+  private String randomUuid() {
+    return this.uuids[ThreadLocalRandom.current().nextInt(this.uuids.length)];
+  }
+
+  private String randomNickname() {
+    return this.nicknames[ThreadLocalRandom.current().nextInt(this.nicknames.length)];
+  }
+}
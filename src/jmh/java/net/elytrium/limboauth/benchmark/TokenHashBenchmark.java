@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Longs;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.handler.AuthSessionHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The SipHash session token signed in {@link net.elytrium.limboauth.LimboAuth#updateLoginData} and verified in
+ * {@link AuthSessionHandler#onGeneric(Object)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenHashBenchmark {
+
+  private static final String LOWERCASE_NICKNAME = "benchmark_player";
+
+  private long issueTime;
+  private long hash;
+
+  @Setup
+  public void setup() {
+    byte[] verifyKey = new byte[16];
+    ThreadLocalRandom.current().nextBytes(verifyKey);
+    Settings.IMP.MAIN.MOD.VERIFY_KEY = verifyKey;
+    this.issueTime = System.currentTimeMillis();
+    this.hash = AuthSessionHandler.genTokenHash(LOWERCASE_NICKNAME, this.issueTime);
+  }
+
+  @Benchmark
+  public byte[] issueToken() {
+    long hash = AuthSessionHandler.genTokenHash(LOWERCASE_NICKNAME, this.issueTime);
+    return Bytes.concat(Longs.toByteArray(this.issueTime), Longs.toByteArray(hash));
+  }
+
+  @Benchmark
+  public boolean verifyToken() {
+    return AuthSessionHandler.genTokenHash(LOWERCASE_NICKNAME, this.issueTime) == this.hash;
+  }
+
+  @Benchmark
+  public byte[] serializeNickname() {
+    // Baseline for the allocation done on every sign and verify.
+    return LOWERCASE_NICKNAME.getBytes(StandardCharsets.UTF_8);
+  }
+}
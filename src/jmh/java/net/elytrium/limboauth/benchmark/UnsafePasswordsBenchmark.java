@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import net.elytrium.limboauth.password.UnsafePasswordStorage;
+import net.elytrium.limboauth.password.UnsafePasswordStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Lookups in the bundled unsafe passwords list with every storage, as done by the password strength check on registration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UnsafePasswordsBenchmark {
+
+  @Param({"HASH_SET", "BLOOM_FILTER", "SORTED_HASH_FILE"})
+  private UnsafePasswordStorage storage;
+
+  private Path directory;
+  private UnsafePasswordStore store;
+  private String unsafePassword;
+
+  @Setup
+  public void setup() throws IOException {
+    this.directory = Files.createTempDirectory("limboauth-benchmark");
+    Path path = this.directory.resolve("unsafe_passwords.txt");
+    try (InputStream input = Objects.requireNonNull(this.getClass().getResourceAsStream("/unsafe_passwords.txt"))) {
+      Files.copy(input, path);
+    }
+
+    try (Stream<String> lines = Files.lines(path)) {
+      this.unsafePassword = lines.skip(1000).findFirst().orElseThrow();
+    }
+
+    this.store = this.storage.load(path);
+    if (!this.store.contains(this.unsafePassword)) {
+      throw new IllegalStateException(this.storage + " doesn't contain the unsafe password");
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(this.directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public boolean unsafePassword() {
+    return this.store.contains(this.unsafePassword);
+  }
+
+  @Benchmark
+  public boolean safePassword() {
+    return this.store.contains("Xq7!vR2#mL9@tP4$");
+  }
+}
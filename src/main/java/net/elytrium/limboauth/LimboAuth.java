@@ -19,19 +19,11 @@ package net.elytrium.limboauth;
 
 import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Longs;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
-import com.j256.ormlite.dao.GenericRawResults;
-import com.j256.ormlite.db.DatabaseType;
-import com.j256.ormlite.field.FieldType;
 import com.j256.ormlite.stmt.QueryBuilder;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.j256.ormlite.support.ConnectionSource;
-import com.j256.ormlite.table.TableInfo;
 import com.j256.ormlite.table.TableUtils;
 import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.event.EventManager;
@@ -50,7 +42,6 @@ import com.velocitypowered.api.proxy.messages.LegacyChannelIdentifier;
 import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
 import com.velocitypowered.api.scheduler.ScheduledTask;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import io.whitfin.siphash.SipHasher;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.commons.kyori.serialization.Serializers;
 import net.elytrium.commons.utils.reflection.ReflectionException;
@@ -60,15 +51,42 @@ import net.elytrium.limboapi.api.LimboFactory;
 import net.elytrium.limboapi.api.chunk.VirtualWorld;
 import net.elytrium.limboapi.api.command.LimboCommandMeta;
 import net.elytrium.limboapi.api.file.WorldFile;
+import net.elytrium.limboauth.admission.AdmissionController;
+import net.elytrium.limboauth.bruteforce.BruteforceTracker;
+import net.elytrium.limboauth.cluster.ClusterNode;
+import net.elytrium.limboauth.cluster.ClusterTransport;
+import net.elytrium.limboauth.cluster.ClusterTransportType;
+import net.elytrium.limboauth.cluster.DatabaseClusterTransport;
+import net.elytrium.limboauth.cluster.LoopbackClusterTransport;
 import net.elytrium.limboauth.command.*;
+import net.elytrium.limboauth.database.IpLimiter;
+import net.elytrium.limboauth.database.PlayerCache;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.database.SchemaMigrator;
+import net.elytrium.limboauth.database.StorageMigrator;
 import net.elytrium.limboauth.dependencies.DatabaseLibrary;
 import net.elytrium.limboauth.event.*;
 import net.elytrium.limboauth.floodgate.FloodgateApiHolder;
+import net.elytrium.limboauth.hash.HashingExecutor;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.handler.AuthSessionTicker;
 import net.elytrium.limboauth.listener.AuthListener;
+import net.elytrium.limboauth.listener.LoginFailureTracker;
+import net.elytrium.limboauth.metrics.MetricsRegistry;
+import net.elytrium.limboauth.model.ClusterEvent;
 import net.elytrium.limboauth.model.RegisteredPlayer;
 import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.model.StoredSession;
 import net.elytrium.limboauth.model.UUIDType;
+import net.elytrium.limboauth.password.HashSetUnsafePasswordStore;
+import net.elytrium.limboauth.password.UnsafePasswordStore;
+import net.elytrium.limboauth.premium.PremiumClassifier;
+import net.elytrium.limboauth.premium.PremiumResolver;
+import net.elytrium.limboauth.session.CachedSession;
+import net.elytrium.limboauth.session.DatabaseSessionStore;
+import net.elytrium.limboauth.session.MemorySessionStore;
+import net.elytrium.limboauth.session.SessionStorage;
+import net.elytrium.limboauth.session.SessionStore;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.ComponentSerializer;
 import net.kyori.adventure.title.Title;
@@ -83,25 +101,23 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.InetAddress;
-import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Plugin(
     id = "limboauth",
@@ -126,12 +142,11 @@ public class LimboAuth {
   private static Logger LOGGER;
   @MonotonicNonNull
   private static Serializer SERIALIZER;
+  private static final MetricsRegistry METRICS = new MetricsRegistry();
 
-  private final Map<String, CachedSessionUser> cachedAuthChecks = new ConcurrentHashMap<>();
-  // private final Map<String, CachedPremiumUser> premiumCache = new ConcurrentHashMap<>();
-  private final Map<InetAddress, CachedBruteforceUser> bruteforceCache = new ConcurrentHashMap<>();
   private final Map<UUID, Runnable> postLoginTasks = new ConcurrentHashMap<>();
-  private final Set<String> unsafePasswords = new HashSet<>();
+  // Runs the continuations of the futures that may be completed by another player, e.g. the admissions.
+  private final Executor pluginExecutor = task -> this.getServer().getScheduler().buildTask(this, task).schedule();
   private final Set<String> forcedPreviously = Collections.synchronizedSet(new HashSet<>());
 
   private final HttpClient client = HttpClient.newHttpClient();
@@ -157,13 +172,32 @@ public class LimboAuth {
   private Component nicknameInvalidKick;
   private Component reconnectKick;
   private Component wrongNicknamePrefixKick;
+  private Component databaseErrorKick;
 
   private ScheduledTask purgeCacheTask;
-  private ScheduledTask purgePremiumCacheTask;
   private ScheduledTask purgeBruteforceCacheTask;
+  private ScheduledTask flushLoginDataTask;
+  private ScheduledTask purgeLoginFailuresTask;
+  private ScheduledTask clusterFlushTask;
+  private ScheduledTask clearExpiredIpsTask;
+  private ScheduledTask expireAdmissionsTask;
+  private ScheduledTask writeMetricsTask;
+  private ScheduledTask recountPlayersTask;
 
   private ConnectionSource connectionSource;
   private Dao<RegisteredPlayer, String> playerDao;
+  private PlayerRepository playerRepository;
+  private HashingExecutor hashingExecutor;
+  private AuthSessionTicker authSessionTicker;
+  private BruteforceTracker bruteforceTracker;
+  private PremiumResolver premiumResolver;
+  private UnsafePasswordStore unsafePasswordStore;
+  private SessionStore sessionStore;
+  private ClusterNode clusterNode;
+  private IpLimiter ipLimiter;
+  private PremiumClassifier premiumClassifier;
+  private AdmissionController admissionController;
+  private final LoginFailureTracker loginFailureTracker = new LoginFailureTracker(TimeUnit.SECONDS.toMillis(20));
   private Pattern nicknameValidationPattern;
   private Limbo authServer;
 
@@ -211,7 +245,8 @@ public class LimboAuth {
     metrics.addCustomChart(new SimplePie("totp_enabled", () -> String.valueOf(Settings.IMP.MAIN.ENABLE_TOTP)));
     metrics.addCustomChart(new SimplePie("dimension", () -> String.valueOf(Settings.IMP.MAIN.DIMENSION)));
     metrics.addCustomChart(new SimplePie("save_uuid", () -> String.valueOf(Settings.IMP.MAIN.SAVE_UUID)));
-    metrics.addCustomChart(new SingleLineChart("registered_players", () -> Math.toIntExact(this.playerDao.countOf())));
+    // 0 (not counted yet) is not sent by bStats.
+    metrics.addCustomChart(new SingleLineChart("registered_players", () -> Math.toIntExact(Math.max(0, this.playerRepository.getRegisteredPlayers()))));
 
     if (!UpdatesChecker.checkVersionByURL("https://raw.githubusercontent.com/Elytrium/LimboAuth/master/VERSION", Settings.IMP.VERSION)) {
       LOGGER.error("****************************************");
@@ -222,7 +257,7 @@ public class LimboAuth {
   }
 
   @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH", justification = "LEGACY_AMPERSAND can't be null in velocity.")
-  public void reload() {
+  public synchronized void reload() {
     Settings.IMP.reload(this.configFile, Settings.IMP.PREFIX);
 
     ComponentSerializer<Component, Component, String> serializer = Settings.IMP.SERIALIZER.getSerializer();
@@ -263,77 +298,47 @@ public class LimboAuth {
     this.reconnectKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.RECONNECT_KICK);
     this.wrongNicknamePrefixKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.WRONG_NICKNAME_PREFIX_KICK);
     this.registrationsDisabledKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.REGISTRATIONS_DISABLED_KICK);
+    this.databaseErrorKick = SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.DATABASE_ERROR_KICK);
 
     if (Settings.IMP.MAIN.CHECK_PASSWORD_STRENGTH) {
       try {
-        this.unsafePasswords.clear();
         Path unsafePasswordsPath = Paths.get(this.dataDirectoryFile.getAbsolutePath(), Settings.IMP.MAIN.UNSAFE_PASSWORDS_FILE);
         if (!unsafePasswordsPath.toFile().exists()) {
           Files.copy(Objects.requireNonNull(this.getClass().getResourceAsStream("/unsafe_passwords.txt")), unsafePasswordsPath);
         }
 
-        try (Stream<String> unsafePasswordsStream = Files.lines(unsafePasswordsPath)) {
-          this.unsafePasswords.addAll(unsafePasswordsStream.collect(Collectors.toList()));
-        }
+        this.unsafePasswordStore = Settings.IMP.MAIN.UNSAFE_PASSWORDS_STORAGE.load(unsafePasswordsPath);
       } catch (IOException e) {
         throw new IllegalArgumentException(e);
       }
+    } else {
+      this.unsafePasswordStore = null;
     }
 
-    this.cachedAuthChecks.clear();
-    // this.premiumCache.clear();
-    this.bruteforceCache.clear();
-
-    Settings.DATABASE dbConfig = Settings.IMP.DATABASE;
-    DatabaseLibrary databaseLibrary = dbConfig.STORAGE_TYPE;
-    try {
-      this.connectionSource = databaseLibrary.connectToORM(
-          this.dataDirectoryFile.toPath().toAbsolutePath(),
-          dbConfig.HOSTNAME,
-          dbConfig.DATABASE + dbConfig.CONNECTION_PARAMETERS,
-          dbConfig.USER,
-          dbConfig.PASSWORD
-      );
-    } catch (ReflectiveOperationException e) {
-      throw new ReflectionException(e);
-    } catch (SQLException e) {
-      throw new SQLRuntimeException(e);
-    } catch (IOException | URISyntaxException e) {
-      throw new IllegalArgumentException(e);
+    if (this.premiumResolver != null) {
+      this.premiumResolver.shutdown();
     }
 
+    this.premiumResolver = PremiumResolver.fromSettings(this.client);
+    this.bruteforceTracker = new BruteforceTracker(
+        Settings.IMP.MAIN.PURGE_BRUTEFORCE_CACHE_MILLIS,
+        Settings.IMP.MAIN.BRUTEFORCE_MAX_ATTEMPTS,
+        Settings.IMP.MAIN.BRUTEFORCE_MAX_SUBNET_ATTEMPTS,
+        Settings.IMP.MAIN.BRUTEFORCE_CACHE_SIZE
+    );
+
     this.nicknameValidationPattern = Pattern.compile(Settings.IMP.MAIN.ALLOWED_NICKNAME_REGEX);
 
-    try {
-      TableUtils.createTableIfNotExists(this.connectionSource, RegisteredPlayer.class);
-      this.playerDao = DaoManager.createDao(this.connectionSource, RegisteredPlayer.class);
-      this.migrateDb(this.playerDao);
-    } catch (SQLException e) {
-      throw new SQLRuntimeException(e);
+    this.stopDatabase();
+    this.openDatabase();
+
+    if (this.hashingExecutor != null) {
+      this.hashingExecutor.shutdown();
     }
 
-    CommandManager manager = this.server.getCommandManager();
-    manager.unregister("unregister");
-    manager.unregister("forceregister");
-    manager.unregister("premium");
-    manager.unregister("forceunregister");
-    manager.unregister("changepassword");
-    manager.unregister("forcechangepassword");
-    manager.unregister("destroysession");
-    manager.unregister("2fa");
-    manager.unregister("limboauth");
+    this.hashingExecutor = HashingExecutor.ofCoresShare(Settings.IMP.MAIN.HASHING_THREADS_SHARE, Settings.IMP.MAIN.HASHING_QUEUE_SIZE);
 
-    manager.register("unregister", new UnregisterCommand(this, this.playerDao), "unreg");
-    manager.register("forceregister", new ForceRegisterCommand(this, this.playerDao), "forcereg");
-    // manager.register("premium", new PremiumCommand(this, this.playerDao), "license");
-    manager.register("forceunregister", new ForceUnregisterCommand(this, this.server, this.playerDao), "forceunreg");
-    manager.register("changepassword", new ChangePasswordCommand(this, this.playerDao), "changepass", "cp");
-    manager.register("forcechangepassword", new ForceChangePasswordCommand(this, this.server, this.playerDao), "forcechangepass", "fcp");
-    manager.register("destroysession", new DestroySessionCommand(this), "logout");
-    if (Settings.IMP.MAIN.ENABLE_TOTP) {
-      manager.register("2fa", new TotpCommand(this.playerDao), "totp");
-    }
-    manager.register("limboauth", new LimboAuthCommand(this), "la", "auth", "lauth");
+    this.registerCommands();
 
     Settings.MAIN.AUTH_COORDS authCoords = Settings.IMP.MAIN.AUTH_COORDS;
     VirtualWorld authWorld = this.factory.createVirtualWorld(
@@ -372,120 +377,316 @@ public class LimboAuth {
 
     EventManager eventManager = this.server.getEventManager();
     eventManager.unregisterListeners(this);
-    eventManager.register(this, new AuthListener(this, this.playerDao, this.floodgateApi));
+    eventManager.register(this, new AuthListener(this, this.floodgateApi));
 
     if (this.purgeCacheTask != null) {
       this.purgeCacheTask.cancel();
     }
 
     this.purgeCacheTask = this.server.getScheduler()
-        .buildTask(this, () -> this.checkCache(this.cachedAuthChecks, Settings.IMP.MAIN.PURGE_CACHE_MILLIS))
+        .buildTask(this, () -> this.sessionStore.evictExpired())
         .delay(Settings.IMP.MAIN.PURGE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
         .repeat(Settings.IMP.MAIN.PURGE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
         .schedule();
 
-    if (this.purgePremiumCacheTask != null) {
-      this.purgePremiumCacheTask.cancel();
-    }
-
-    /*
-    this.purgePremiumCacheTask = this.server.getScheduler()
-        .buildTask(this, () -> this.checkCache(this.premiumCache, Settings.IMP.MAIN.PURGE_PREMIUM_CACHE_MILLIS))
-        .delay(Settings.IMP.MAIN.PURGE_PREMIUM_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .repeat(Settings.IMP.MAIN.PURGE_PREMIUM_CACHE_MILLIS, TimeUnit.MILLISECONDS)
-        .schedule();
-
-     */
-
     if (this.purgeBruteforceCacheTask != null) {
       this.purgeBruteforceCacheTask.cancel();
     }
 
     this.purgeBruteforceCacheTask = this.server.getScheduler()
-        .buildTask(this, () -> this.checkCache(this.bruteforceCache, Settings.IMP.MAIN.PURGE_BRUTEFORCE_CACHE_MILLIS))
+        .buildTask(this, this.bruteforceTracker::evictExpired)
         .delay(Settings.IMP.MAIN.PURGE_BRUTEFORCE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
         .repeat(Settings.IMP.MAIN.PURGE_BRUTEFORCE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
         .schedule();
 
+    if (this.purgeLoginFailuresTask != null) {
+      this.purgeLoginFailuresTask.cancel();
+    }
+
+    this.purgeLoginFailuresTask = this.server.getScheduler()
+        .buildTask(this, this.loginFailureTracker::evictExpired)
+        .delay(this.loginFailureTracker.getTtl(), TimeUnit.MILLISECONDS)
+        .repeat(this.loginFailureTracker.getTtl(), TimeUnit.MILLISECONDS)
+        .schedule();
+
+    if (this.clearExpiredIpsTask != null) {
+      this.clearExpiredIpsTask.cancel();
+    }
+
+    this.clearExpiredIpsTask = this.server.getScheduler()
+        .buildTask(this, () -> this.ipLimiter.clearExpired().exceptionally(e -> {
+          LOGGER.error("Unable to clear the expired registration IPs.", e);
+          return null;
+        }))
+        .delay(Settings.IMP.MAIN.IP_LIMIT_PURGE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+        .repeat(Settings.IMP.MAIN.IP_LIMIT_PURGE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+        .schedule();
+
+    Settings.MAIN.ADMISSION admissionConfig = Settings.IMP.MAIN.ADMISSION;
+    if (this.admissionController == null) {
+      this.admissionController = new AdmissionController(admissionConfig.MAX_SESSIONS, admissionConfig.MAX_SUBNET_SESSIONS,
+          admissionConfig.MAX_QUEUE_SIZE, admissionConfig.MAX_WAIT_MILLIS);
+    } else {
+      // The players that are being authenticated keep their slots.
+      this.admissionController.configure(admissionConfig.MAX_SESSIONS, admissionConfig.MAX_SUBNET_SESSIONS,
+          admissionConfig.MAX_QUEUE_SIZE, admissionConfig.MAX_WAIT_MILLIS);
+    }
+
+    if (this.expireAdmissionsTask != null) {
+      this.expireAdmissionsTask.cancel();
+    }
+
+    this.expireAdmissionsTask = this.server.getScheduler()
+        .buildTask(this, this.admissionController::expireWaiting)
+        .delay(1, TimeUnit.SECONDS)
+        .repeat(1, TimeUnit.SECONDS)
+        .schedule();
+
+    if (this.writeMetricsTask != null) {
+      this.writeMetricsTask.cancel();
+      this.writeMetricsTask = null;
+    }
+
+    Settings.MAIN.METRICS metricsConfig = Settings.IMP.MAIN.METRICS;
+    if (!metricsConfig.PROMETHEUS_FILE.isEmpty()) {
+      Path prometheusFile = this.dataDirectory.resolve(metricsConfig.PROMETHEUS_FILE);
+      this.writeMetricsTask = this.server.getScheduler()
+          .buildTask(this, () -> {
+            try {
+              METRICS.writePrometheus(prometheusFile);
+            } catch (IOException e) {
+              LOGGER.error("Unable to write the metrics to " + prometheusFile + ".", e);
+            }
+          })
+          .repeat(metricsConfig.PROMETHEUS_WRITE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+          .schedule();
+    }
+
+    if (this.authSessionTicker != null) {
+      this.authSessionTicker.retire();
+    }
+
+    this.authSessionTicker = new AuthSessionTicker(
+        Settings.IMP.MAIN.AUTH_TIME,
+        Settings.IMP.MAIN.ENABLE_BOSSBAR && !(Settings.IMP.MAIN.MOD.ENABLED && Settings.IMP.MAIN.MOD.LOGIN_ONLY_BY_MOD),
+        Settings.IMP.MAIN.BOSSBAR_COLOR,
+        Settings.IMP.MAIN.BOSSBAR_OVERLAY
+    );
+    this.authSessionTicker.schedule(this);
+
+    if (this.flushLoginDataTask != null) {
+      this.flushLoginDataTask.cancel();
+    }
+
+    Settings.DATABASE dbConfig = Settings.IMP.DATABASE;
+    // The repository is looked up on every run, as it is replaced when the database is switched.
+    this.flushLoginDataTask = this.server.getScheduler()
+        .buildTask(this, () -> this.playerRepository.flushLoginData().exceptionally(e -> {
+          LOGGER.error("Unable to save the login data.", e);
+          return null;
+        }))
+        .delay(dbConfig.LOGIN_DATA_FLUSH_INTERVAL, TimeUnit.MILLISECONDS)
+        .repeat(dbConfig.LOGIN_DATA_FLUSH_INTERVAL, TimeUnit.MILLISECONDS)
+        .schedule();
+
+    if (this.recountPlayersTask != null) {
+      this.recountPlayersTask.cancel();
+    }
+
+    this.recountPlayersTask = this.server.getScheduler()
+        .buildTask(this, () -> this.playerRepository.reconcileRegisteredPlayers().exceptionally(e -> {
+          LOGGER.error("Unable to count the registered accounts.", e);
+          return null;
+        }))
+        .repeat(dbConfig.REGISTERED_PLAYERS_RECOUNT_INTERVAL, TimeUnit.MILLISECONDS)
+        .schedule();
+
     eventManager.fireAndForget(new AuthPluginReloadEvent());
   }
 
-  private List<String> filterCommands(List<String> commands) {
-    return commands.stream().filter(command -> command.startsWith("/")).map(command -> command.substring(1)).collect(Collectors.toList());
-  }
+  /**
+   * Stops everything that uses the current database, writing the pending data. The connection source is closed by {@link #openDatabase()}.
+   */
+  private void stopDatabase() {
+    if (this.clusterFlushTask != null) {
+      this.clusterFlushTask.cancel();
+      this.clusterFlushTask = null;
+    }
+
+    if (this.clusterNode != null) {
+      this.clusterNode.close();
+      this.clusterNode = null;
+    }
 
-  private void checkCache(Map<?, ? extends CachedUser> userMap, long time) {
-    userMap.entrySet().stream()
-        .filter(userEntry -> userEntry.getValue().getCheckTime() + time <= System.currentTimeMillis())
-        .map(Map.Entry::getKey)
-        .forEach(userMap::remove);
+    if (this.sessionStore != null) {
+      this.sessionStore.close();
+    }
+
+    if (this.playerRepository != null) {
+      this.playerRepository.shutdown();
+    }
   }
 
-  public void migrateDb(Dao<?, ?> dao) {
-    TableInfo<?, ?> tableInfo = dao.getTableInfo();
-
-    Set<FieldType> tables = new HashSet<>();
-    Collections.addAll(tables, tableInfo.getFieldTypes());
-
-    String findSql;
-    String database = Settings.IMP.DATABASE.DATABASE;
-    String tableName = tableInfo.getTableName();
-    DatabaseLibrary databaseLibrary = Settings.IMP.DATABASE.STORAGE_TYPE;
-    switch (databaseLibrary) {
-      case SQLITE: {
-        findSql = "SELECT name FROM PRAGMA_TABLE_INFO('" + tableName + "')";
-        break;
-      }
-      case H2: {
-        findSql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = '" + tableName + "';";
-        break;
-      }
-      case POSTGRESQL: {
-        findSql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_CATALOG = '" + database + "' AND TABLE_NAME = '" + tableName + "';";
-        break;
-      }
-      case MARIADB:
-      case MYSQL: {
-        findSql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + database + "' AND TABLE_NAME = '" + tableName + "';";
-        break;
-      }
-      default: {
-        LOGGER.error("WRONG DATABASE TYPE.");
-        this.server.shutdown();
-        return;
-      }
+  /**
+   * Connects to the database from the config, replacing the current connection, and recreates everything that uses it.
+   */
+  private void openDatabase() {
+    if (this.connectionSource != null) {
+      this.connectionSource.closeQuietly();
     }
 
-    try (GenericRawResults<String[]> queryResult = dao.queryRaw(findSql)) {
-      queryResult.forEach(result -> tables.removeIf(table -> table.getColumnName().equalsIgnoreCase(result[0])));
+    Settings.DATABASE dbConfig = Settings.IMP.DATABASE;
+    DatabaseLibrary databaseLibrary = dbConfig.STORAGE_TYPE;
+    try {
+      this.connectionSource = databaseLibrary.connectToORM(
+          this.dataDirectoryFile.toPath().toAbsolutePath(),
+          dbConfig.HOSTNAME,
+          dbConfig.DATABASE + dbConfig.CONNECTION_PARAMETERS,
+          dbConfig.USER,
+          dbConfig.PASSWORD
+      );
+    } catch (ReflectiveOperationException e) {
+      throw new ReflectionException(e);
+    } catch (SQLException e) {
+      throw new SQLRuntimeException(e);
+    } catch (IOException | URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
 
-      tables.forEach(table -> {
-        try {
-          StringBuilder builder = new StringBuilder("ALTER TABLE ");
-          if (databaseLibrary == DatabaseLibrary.POSTGRESQL) {
-            builder.append('"');
-          }
-          builder.append(tableName);
-          if (databaseLibrary == DatabaseLibrary.POSTGRESQL) {
-            builder.append('"');
-          }
-          builder.append(" ADD ");
-          String columnDefinition = table.getColumnDefinition();
-          DatabaseType databaseType = dao.getConnectionSource().getDatabaseType();
-          if (columnDefinition == null) {
-            List<String> dummy = List.of();
-            databaseType.appendColumnArg(table.getTableName(), builder, table, dummy, dummy, dummy, dummy);
-          } else {
-            databaseType.appendEscapedEntityName(builder, table.getColumnName());
-            builder.append(" ").append(columnDefinition).append(" ");
-          }
+    try {
+      TableUtils.createTableIfNotExists(this.connectionSource, RegisteredPlayer.class);
+      this.playerDao = DaoManager.createDao(this.connectionSource, RegisteredPlayer.class);
+      new SchemaMigrator(this.playerDao, Settings.IMP.DATABASE.STORAGE_TYPE, Settings.IMP.DATABASE.DATABASE).migrate();
+    } catch (SQLException e) {
+      throw new SQLRuntimeException(e);
+    }
 
-          dao.executeRawNoArgs(builder.toString());
+    // Pooled databases can serve one query per connection, the others have only one connection.
+    int databaseThreads = databaseLibrary.isPooled() ? Math.max(1, dbConfig.POOL.MAX_SIZE) : 1;
+    PlayerCache playerCache = new PlayerCache(dbConfig.PLAYER_CACHE_SIZE, dbConfig.PLAYER_CACHE_EXPIRE_TIME);
+    this.playerRepository = new PlayerRepository(this.playerDao, playerCache, databaseThreads, dbConfig.QUEUE_SIZE, dbConfig.LOGIN_DATA_BATCH_SIZE);
+    this.ipLimiter = new IpLimiter(this.playerRepository, Settings.IMP.MAIN.IP_LIMIT_REGISTRATIONS, Settings.IMP.MAIN.IP_LIMIT_VALID_TIME,
+        Settings.IMP.MAIN.IP_LIMIT_CACHE_MILLIS, dbConfig.PLAYER_CACHE_SIZE);
+    this.premiumClassifier = PremiumClassifier.fromSettings(this.playerRepository, this.premiumResolver);
+
+    if (Settings.IMP.MAIN.SESSION_STORAGE == SessionStorage.DATABASE) {
+      try {
+        TableUtils.createTableIfNotExists(this.connectionSource, StoredSession.class);
+        Dao<StoredSession, String> sessionDao = DaoManager.createDao(this.connectionSource, StoredSession.class);
+        this.sessionStore = new DatabaseSessionStore(sessionDao, this.playerRepository, Settings.IMP.MAIN.PURGE_CACHE_MILLIS);
+      } catch (SQLException e) {
+        throw new SQLRuntimeException(e);
+      }
+    } else {
+      MemorySessionStore memorySessionStore = new MemorySessionStore(
+          Settings.IMP.MAIN.SAVE_SESSIONS ? this.dataDirectory.resolve("sessions.bin") : null, Settings.IMP.MAIN.PURGE_CACHE_MILLIS);
+      memorySessionStore.restore();
+      this.sessionStore = memorySessionStore;
+    }
+
+    Settings.MAIN.CLUSTER clusterConfig = Settings.IMP.MAIN.CLUSTER;
+    if (clusterConfig.ENABLED) {
+      ClusterTransport clusterTransport;
+      if (clusterConfig.TRANSPORT == ClusterTransportType.LOOPBACK) {
+        clusterTransport = new LoopbackClusterTransport(LoopbackClusterTransport.Network.SHARED);
+      } else {
+        try {
+          TableUtils.createTableIfNotExists(this.connectionSource, ClusterEvent.class);
+          Dao<ClusterEvent, Long> eventDao = DaoManager.createDao(this.connectionSource, ClusterEvent.class);
+          clusterTransport = new DatabaseClusterTransport(eventDao, this.playerRepository, clusterConfig.POLL_INTERVAL_MILLIS,
+              clusterConfig.EVENT_RETENTION_MILLIS);
         } catch (SQLException e) {
           throw new SQLRuntimeException(e);
         }
-      });
-    } catch (Exception e) {
+      }
+
+      // The DATABASE session storage is already shared, so only the MEMORY sessions are published.
+      this.clusterNode = new ClusterNode(clusterConfig.NODE_ID, clusterTransport, this.sessionStore,
+          Settings.IMP.MAIN.SESSION_STORAGE == SessionStorage.MEMORY, this.bruteforceTracker, playerCache);
+      this.clusterNode.start();
+
+      this.clusterFlushTask = this.server.getScheduler()
+          .buildTask(this, this.clusterNode::flushFailures)
+          .delay(clusterConfig.POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+          .repeat(clusterConfig.POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+          .schedule();
+    }
+  }
+
+  private void registerCommands() {
+    CommandManager manager = this.server.getCommandManager();
+    manager.unregister("unregister");
+    manager.unregister("forceregister");
+    manager.unregister("premium");
+    manager.unregister("forceunregister");
+    manager.unregister("changepassword");
+    manager.unregister("forcechangepassword");
+    manager.unregister("destroysession");
+    manager.unregister("2fa");
+    manager.unregister("limboauth");
+
+    manager.register("unregister", new UnregisterCommand(this, this.playerRepository), "unreg");
+    manager.register("forceregister", new ForceRegisterCommand(this, this.playerRepository), "forcereg");
+    // manager.register("premium", new PremiumCommand(this, this.playerRepository), "license");
+    manager.register("forceunregister", new ForceUnregisterCommand(this, this.server, this.playerRepository), "forceunreg");
+    manager.register("changepassword", new ChangePasswordCommand(this, this.playerRepository), "changepass", "cp");
+    manager.register("forcechangepassword", new ForceChangePasswordCommand(this, this.server, this.playerRepository), "forcechangepass", "fcp");
+    manager.register("destroysession", new DestroySessionCommand(this), "logout");
+    if (Settings.IMP.MAIN.ENABLE_TOTP) {
+      manager.register("2fa", new TotpCommand(this, this.playerRepository), "totp");
+    }
+    manager.register("limboauth", new LimboAuthCommand(this), "la", "auth", "lauth");
+  }
+
+  /**
+   * Saves the pending data and closes the database, called when the proxy is shutting down.
+   */
+  public void shutdown() {
+    if (this.flushLoginDataTask != null) {
+      this.flushLoginDataTask.cancel();
+    }
+
+    if (this.writeMetricsTask != null) {
+      this.writeMetricsTask.cancel();
+    }
+
+    if (this.recountPlayersTask != null) {
+      this.recountPlayersTask.cancel();
+    }
+
+    if (this.hashingExecutor != null) {
+      this.hashingExecutor.shutdown();
+    }
+
+    if (this.premiumResolver != null) {
+      this.premiumResolver.shutdown();
+    }
+
+    if (this.clusterNode != null) {
+      this.clusterNode.close();
+    }
+
+    if (this.sessionStore != null) {
+      this.sessionStore.close();
+    }
+
+    if (this.playerRepository != null) {
+      this.playerRepository.shutdown();
+    }
+
+    if (this.connectionSource != null) {
+      this.connectionSource.closeQuietly();
+    }
+  }
+
+  private List<String> filterCommands(List<String> commands) {
+    return commands.stream().filter(command -> command.startsWith("/")).map(command -> command.substring(1)).collect(Collectors.toList());
+  }
+
+  public void migrateDb(Dao<?, ?> dao) {
+    try {
+      SchemaMigrator.addMissingColumns(dao, Settings.IMP.DATABASE.STORAGE_TYPE, Settings.IMP.DATABASE.DATABASE);
+    } catch (SQLException e) {
       throw new SQLRuntimeException(e);
     }
   }
@@ -493,29 +694,48 @@ public class LimboAuth {
   public void cacheAuthUser(Player player) {
     String username = player.getUsername();
     String lowercaseUsername = username.toLowerCase(Locale.ROOT);
-    this.cachedAuthChecks.put(lowercaseUsername, new CachedSessionUser(System.currentTimeMillis(), player.getRemoteAddress().getAddress(), username));
+    CachedSession session = new CachedSession(System.currentTimeMillis(), player.getRemoteAddress().getAddress(), username);
+    this.sessionStore.put(lowercaseUsername, session);
+    if (this.clusterNode != null) {
+      this.clusterNode.sessionGranted(lowercaseUsername, session);
+    }
   }
 
   public void removePlayerFromCache(String username) {
-    this.cachedAuthChecks.remove(username.toLowerCase(Locale.ROOT));
-    // this.premiumCache.remove(username.toLowerCase(Locale.ROOT));
+    String lowercaseUsername = username.toLowerCase(Locale.ROOT);
+    this.sessionStore.remove(lowercaseUsername);
+    if (this.clusterNode != null) {
+      this.clusterNode.sessionRevoked(lowercaseUsername);
+    }
   }
 
+  /**
+   * Use {@link #checkNeedAuth(Player)}
+   */
+  @Deprecated()
   public boolean needAuth(Player player) {
+    return this.checkNeedAuth(player).join();
+  }
+
+  /**
+   * Completes with false if the player has an unexpired session for the same address and nickname case.
+   */
+  public CompletableFuture<Boolean> checkNeedAuth(Player player) {
     String username = player.getUsername();
-    String lowercaseUsername = username.toLowerCase(Locale.ROOT);
-    if (!this.cachedAuthChecks.containsKey(lowercaseUsername)) {
-      return true;
-    } else {
-      CachedSessionUser sessionUser = this.cachedAuthChecks.get(lowercaseUsername);
-      return !sessionUser.getInetAddress().equals(player.getRemoteAddress().getAddress()) || !sessionUser.getUsername().equals(username);
-    }
+    return this.sessionStore.get(username.toLowerCase(Locale.ROOT)).handle((session, e) -> {
+      if (e != null) {
+        LOGGER.error("Unable to fetch the session of " + username + ".", e);
+        return true;
+      }
+
+      return session == null || !session.getInetAddress().equals(player.getRemoteAddress().getAddress()) || !session.getUsername().equals(username);
+    });
   }
 
   public void authPlayer(Player player) {
     boolean isFloodgateUUID = this.floodgateApi.isFloodgateUUID(player.getUniqueId());
 
-    if (this.getBruteforceAttempts(player.getRemoteAddress().getAddress()) >= Settings.IMP.MAIN.BRUTEFORCE_MAX_ATTEMPTS) {
+    if (this.isBruteforceBlocked(player.getRemoteAddress().getAddress())) {
       player.disconnect(this.bruteforceAttemptKick);
       return;
     }
@@ -526,61 +746,77 @@ public class LimboAuth {
       return;
     }
 
-    RegisteredPlayer registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, player.getUniqueId());
+    String queuePosition = Settings.IMP.MAIN.STRINGS.QUEUE_POSITION;
+    IntConsumer positionListener = queuePosition.isEmpty() ? null
+        : position -> player.sendActionBar(SERIALIZER.deserialize(MessageFormat.format(queuePosition, position)));
+    this.admissionController.admit(player.getUniqueId(), player.getRemoteAddress().getAddress(), player, positionListener).thenAcceptAsync(admission -> {
+      switch (admission.getOutcome()) {
+        case ADMITTED: {
+          this.fetchAndAuthPlayer(player, isFloodgateUUID);
+          break;
+        }
+        case QUEUE_FULL: {
+          player.disconnect(SERIALIZER.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.QUEUE_FULL_KICK, admission.getPosition())));
+          break;
+        }
+        case TIMED_OUT: {
+          player.disconnect(SERIALIZER.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.QUEUE_TIMEOUT_KICK, admission.getPosition())));
+          break;
+        }
+        case CANCELLED:
+        default: {
+          break;
+        }
+      }
+    }, this.pluginExecutor);
+  }
+
+  private void fetchAndAuthPlayer(Player player, boolean isFloodgateUUID) {
+    long startTime = System.nanoTime();
+    this.playerRepository.fetchByUuid(player.getUniqueId())
+        .thenAccept(registeredPlayer -> {
+          if (registeredPlayer == null && (player.isOnlineMode() || isFloodgateUUID) && Settings.IMP.MAIN.SAVE_PREMIUM_ACCOUNTS) {
+            RegisteredPlayer premiumPlayer = new RegisteredPlayer(player, this.getUuidTypeFromPlayer(player)).setUuid(player.getUniqueId().toString());
+            this.playerRepository.create(premiumPlayer)
+                .thenRun(() -> {
+                  METRICS.record(MetricsRegistry.Stage.AUTH_PLAYER, startTime);
+                  this.authPlayer(player, premiumPlayer, isFloodgateUUID);
+                })
+                .exceptionally(e -> this.handleDatabaseError(player, e));
+          } else {
+            METRICS.record(MetricsRegistry.Stage.AUTH_PLAYER, startTime);
+            this.authPlayer(player, registeredPlayer, isFloodgateUUID);
+          }
+        })
+        .exceptionally(e -> this.handleDatabaseError(player, e));
+  }
 
+  private void authPlayer(Player player, @Nullable RegisteredPlayer registeredPlayer, boolean isFloodgateUUID) {
     boolean onlineMode = player.isOnlineMode();
     TaskEvent.Result result = TaskEvent.Result.NORMAL;
 
-    if (onlineMode || isFloodgateUUID) {
-
-      if (registeredPlayer == null || registeredPlayer.getHash().isEmpty()) {
-        RegisteredPlayer nicknameRegisteredPlayer = registeredPlayer;
-        registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, player.getUniqueId());
-
-        if (nicknameRegisteredPlayer != null && registeredPlayer == null && nicknameRegisteredPlayer.getHash().isEmpty()) {
-          registeredPlayer = nicknameRegisteredPlayer;
-          // registeredPlayer.setPremiumUuid(player.getUniqueId().toString());
-          try {
-            this.playerDao.update(registeredPlayer);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
+    if ((onlineMode || isFloodgateUUID) && (registeredPlayer == null || registeredPlayer.getHash().isEmpty())) {
+      // Due to the current connection state, which is set to LOGIN there, we cannot send the packets.
+      // We need to wait for the PLAY connection state to set.
+      this.postLoginTasks.put(player.getUniqueId(), () -> {
+        if (onlineMode) {
+          if (this.loginPremium != null) {
+            player.sendMessage(this.loginPremium);
           }
-        }
-
-        if (nicknameRegisteredPlayer == null && registeredPlayer == null && Settings.IMP.MAIN.SAVE_PREMIUM_ACCOUNTS) {
-          registeredPlayer = new RegisteredPlayer(player, getUuidTypeFromPlayer(player)).setUuid(player.getUniqueId().toString());
-
-          try {
-            this.playerDao.create(registeredPlayer);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
+          if (this.loginPremiumTitle != null) {
+            player.showTitle(this.loginPremiumTitle);
+          }
+        } else {
+          if (this.loginFloodgate != null) {
+            player.sendMessage(this.loginFloodgate);
+          }
+          if (this.loginFloodgateTitle != null) {
+            player.showTitle(this.loginFloodgateTitle);
           }
         }
+      });
 
-        if (registeredPlayer == null || registeredPlayer.getHash().isEmpty()) {
-          // Due to the current connection state, which is set to LOGIN there, we cannot send the packets.
-          // We need to wait for the PLAY connection state to set.
-          this.postLoginTasks.put(player.getUniqueId(), () -> {
-            if (onlineMode) {
-              if (this.loginPremium != null) {
-                player.sendMessage(this.loginPremium);
-              }
-              if (this.loginPremiumTitle != null) {
-                player.showTitle(this.loginPremiumTitle);
-              }
-            } else {
-              if (this.loginFloodgate != null) {
-                player.sendMessage(this.loginFloodgate);
-              }
-              if (this.loginFloodgateTitle != null) {
-                player.showTitle(this.loginFloodgateTitle);
-              }
-            }
-          });
-
-          result = TaskEvent.Result.BYPASS;
-        }
-      }
+      result = TaskEvent.Result.BYPASS;
     }
 
     EventManager eventManager = this.server.getEventManager();
@@ -604,13 +840,10 @@ public class LimboAuth {
 
     switch (event.getResult()) {
       case BYPASS: {
+        this.admissionController.release(player.getUniqueId(), player);
         this.factory.passLoginLimbo(player);
         this.cacheAuthUser(player);
-        try {
-          this.updateLoginData(player);
-        } catch (SQLException e) {
-          throw new SQLRuntimeException(e);
-        }
+        this.updateLoginData(player);
         break;
       }
       case CANCEL: {
@@ -622,27 +855,25 @@ public class LimboAuth {
       }
       case NORMAL:
       default: {
-        this.authServer.spawnPlayer(player, new AuthSessionHandler(this.playerDao, player, this, registeredPlayer));
+        this.authServer.spawnPlayer(player, new AuthSessionHandler(player, this, registeredPlayer));
         break;
       }
     }
   }
 
-  public void updateLoginData(Player player) throws SQLException {
+  private Void handleDatabaseError(Player player, Throwable throwable) {
+    LOGGER.error("Unable to fetch the account of " + player.getUsername() + ".", throwable);
+    player.disconnect(this.databaseErrorKick);
+    return null;
+  }
+
+  public void updateLoginData(Player player) {
     String lowercaseNickname = player.getUsername().toLowerCase(Locale.ROOT);
-    UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
-    updateBuilder.where().eq(RegisteredPlayer.UUID_FIELD, player.getUniqueId().toString());
-    updateBuilder.updateColumnValue(RegisteredPlayer.LOGIN_IP_FIELD, player.getRemoteAddress().getAddress().getHostAddress());
-    updateBuilder.updateColumnValue(RegisteredPlayer.LOGIN_DATE_FIELD, System.currentTimeMillis());
-    updateBuilder.update();
+    this.playerRepository.updateLoginData(player.getUniqueId(), player.getRemoteAddress().getAddress().getHostAddress(), System.currentTimeMillis());
 
     if (Settings.IMP.MAIN.MOD.ENABLED) {
-      byte[] lowercaseNicknameSerialized = lowercaseNickname.getBytes(StandardCharsets.UTF_8);
       long issueTime = System.currentTimeMillis();
-      long hash = SipHasher.init(Settings.IMP.MAIN.MOD.VERIFY_KEY)
-          .update(lowercaseNicknameSerialized)
-          .update(Longs.toByteArray(issueTime))
-          .digest();
+      long hash = AuthSessionHandler.genTokenHash(lowercaseNickname, issueTime);
 
       player.sendPluginMessage(this.getChannelIdentifier(player), Bytes.concat(Longs.toByteArray(issueTime), Longs.toByteArray(hash)));
     }
@@ -652,199 +883,109 @@ public class LimboAuth {
     return player.getProtocolVersion().compareTo(ProtocolVersion.MINECRAFT_1_13) >= 0 ? MOD_CHANNEL : LEGACY_MOD_CHANNEL;
   }
 
-  private boolean validateScheme(JsonElement jsonElement, List<String> scheme) {
-    if (!scheme.isEmpty()) {
-      if (!(jsonElement instanceof JsonObject)) {
-        return false;
-      }
-
-      JsonObject object = (JsonObject) jsonElement;
-      for (String field : scheme) {
-        if (!object.has(field)) {
-          return false;
-        }
-      }
-    }
-
-    return true;
-  }
-
+  /**
+   * Use {@link PremiumResolver#resolve(String)}
+   */
+  @Deprecated()
   public PremiumResponse isPremiumExternal(String nickname) {
-    try {
-      HttpResponse<String> response = this.client.send(
-          HttpRequest.newBuilder()
-              .uri(URI.create(String.format(Settings.IMP.MAIN.ISPREMIUM_AUTH_URL, URLEncoder.encode(nickname, StandardCharsets.UTF_8))))
-              .build(),
-          HttpResponse.BodyHandlers.ofString()
-      );
-
-      int statusCode = response.statusCode();
-
-      if (Settings.IMP.MAIN.STATUS_CODE_RATE_LIMIT.contains(statusCode)) {
-        return new PremiumResponse(PremiumState.RATE_LIMIT);
-      }
-
-      JsonElement jsonElement = JsonParser.parseString(response.body());
-
-      if (Settings.IMP.MAIN.STATUS_CODE_USER_EXISTS.contains(statusCode)
-          && this.validateScheme(jsonElement, Settings.IMP.MAIN.USER_EXISTS_JSON_VALIDATOR_FIELDS)) {
-        return new PremiumResponse(PremiumState.PREMIUM_USERNAME, ((JsonObject) jsonElement).get(Settings.IMP.MAIN.JSON_UUID_FIELD).getAsString());
-      }
-
-      if (Settings.IMP.MAIN.STATUS_CODE_USER_NOT_EXISTS.contains(statusCode)
-          && this.validateScheme(jsonElement, Settings.IMP.MAIN.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS)) {
-        return new PremiumResponse(PremiumState.CRACKED);
-      }
-
-      return new PremiumResponse(PremiumState.ERROR);
-    } catch (IOException | InterruptedException e) {
-      LOGGER.error("Unable to authenticate with Mojang.", e);
-      return new PremiumResponse(PremiumState.ERROR);
-    }
+    return this.premiumResolver.resolve(nickname).join();
   }
 
+  /**
+   * Use {@link #isPremiumInternalAsync(String)}, this one blocks the calling thread until the database responds.
+   */
+  @Deprecated()
   public PremiumResponse isPremiumInternal(String nickname) {
-    try {
-      QueryBuilder<RegisteredPlayer, String> crackedCountQuery = this.playerDao.queryBuilder();
-      crackedCountQuery.where()
-          .eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname)
-          .and()
-          .ne(RegisteredPlayer.HASH_FIELD, "");
-      crackedCountQuery.setCountOf(true);
-
-      QueryBuilder<RegisteredPlayer, String> premiumCountQuery = this.playerDao.queryBuilder();
-      premiumCountQuery.where()
-          .eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname)
-          .and()
-          .eq(RegisteredPlayer.HASH_FIELD, "");
-      premiumCountQuery.setCountOf(true);
-
-      if (this.playerDao.countOf(crackedCountQuery.prepare()) != 0) {
-        return new PremiumResponse(PremiumState.CRACKED);
-      }
-
-      if (this.playerDao.countOf(premiumCountQuery.prepare()) != 0) {
-        return new PremiumResponse(PremiumState.PREMIUM);
-      }
+    return this.isPremiumInternalAsync(nickname).join();
+  }
 
-      return new PremiumResponse(PremiumState.UNKNOWN);
-    } catch (SQLException e) {
-      LOGGER.error("Unable to check if account is premium.", e);
-      return new PremiumResponse(PremiumState.ERROR);
-    }
+  public CompletableFuture<PremiumResponse> isPremiumInternalAsync(String nickname) {
+    return this.premiumClassifier.classify(nickname);
   }
 
+  /**
+   * Use {@link #isPremiumUuidAsync(UUID)}, this one blocks the calling thread until the database responds.
+   */
+  @Deprecated()
   public boolean isPremiumUuid(UUID uuid) {
-    try {
-      QueryBuilder<RegisteredPlayer, String> premiumCountQuery = this.playerDao.queryBuilder();
+    return this.isPremiumUuidAsync(uuid).join();
+  }
+
+  public CompletableFuture<Boolean> isPremiumUuidAsync(UUID uuid) {
+    return this.playerRepository.query(playerDao -> {
+      QueryBuilder<RegisteredPlayer, String> premiumCountQuery = playerDao.queryBuilder();
       premiumCountQuery.where()
           .eq(RegisteredPlayer.UUID_FIELD, uuid.toString())
           .and()
           .eq(RegisteredPlayer.UUID_TYPE_FIELD, UUIDType.JAVA_ONLINE);
       premiumCountQuery.setCountOf(true);
 
-      return this.playerDao.countOf(premiumCountQuery.prepare()) != 0;
-    } catch (SQLException e) {
+      return playerDao.countOf(premiumCountQuery.prepare()) != 0;
+    }).exceptionally(e -> {
       LOGGER.error("Unable to check if account is premium.", e);
       return false;
-    }
+    });
   }
 
-  /*
-  @SafeVarargs
-  private boolean checkIsPremiumAndCache(String nickname, Function<String, PremiumResponse>... functions) {
-    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
-    if (this.premiumCache.containsKey(lowercaseNickname)) {
-      return this.premiumCache.get(lowercaseNickname).isPremium();
-    }
-
-    boolean premium = false;
-    boolean unknown = false;
-    boolean wasRateLimited = false;
-    boolean wasError = false;
-    UUID uuid = null;
-
-    for (Function<String, PremiumResponse> function : functions) {
-      PremiumResponse check = function.apply(lowercaseNickname);
-      if (check.getUuid() != null) {
-        uuid = check.getUuid();
-      }
+  public List<String> getOnlineModeNames() {
+    return onlineMode;
+  }
 
-      switch (check.getState()) {
-        case CRACKED: {
-          this.premiumCache.put(lowercaseNickname, new CachedPremiumUser(System.currentTimeMillis(), false));
-          return false;
-        }
-        case PREMIUM: {
-          this.premiumCache.put(lowercaseNickname, new CachedPremiumUser(System.currentTimeMillis(), true));
-          return true;
-        }
-        case PREMIUM_USERNAME: {
-          premium = true;
-          break;
-        }
-        case UNKNOWN: {
-          unknown = true;
-          break;
-        }
-        case RATE_LIMIT: {
-          wasRateLimited = true;
-          break;
-        }
-        default:
-        case ERROR: {
-          wasError = true;
-          break;
-        }
-      }
+  public void incrementBruteforceAttempts(InetAddress address) {
+    this.bruteforceTracker.recordFailure(address);
+    if (this.clusterNode != null) {
+      this.clusterNode.bruteforceFailure(address);
     }
+  }
 
-    if (unknown) {
-      if (uuid != null && this.isPremiumUuid(uuid)) {
-        this.premiumCache.put(lowercaseNickname, new CachedPremiumUser(System.currentTimeMillis(), true));
-        return true;
-      }
+  public int getBruteforceAttempts(InetAddress address) {
+    return this.bruteforceTracker.getAttempts(address);
+  }
 
-    }
+  /**
+   * Checks both the address and its subnet attempts.
+   */
+  public boolean isBruteforceBlocked(InetAddress address) {
+    return this.bruteforceTracker.isBlocked(address);
+  }
 
-    if (wasRateLimited && unknown || wasRateLimited && wasError) {
-      return Settings.IMP.MAIN.ON_RATE_LIMIT_PREMIUM;
+  public void clearBruteforceAttempts(InetAddress address) {
+    this.bruteforceTracker.clear(address);
+    if (this.clusterNode != null) {
+      this.clusterNode.bruteforceCleared(address);
     }
+  }
 
-    if (wasError && unknown || !premium) {
-      return Settings.IMP.MAIN.ON_SERVER_ERROR_PREMIUM;
-    }
+  public IpLimiter getIpLimiter() {
+    return this.ipLimiter;
+  }
 
-    this.premiumCache.put(lowercaseNickname, new CachedPremiumUser(System.currentTimeMillis(), true));
-    return true;
+  public SessionStore getSessionStore() {
+    return this.sessionStore;
   }
 
+  /**
+   * Null if the cluster mode is disabled.
    */
-
-  public List<String> getOnlineModeNames() {
-    return onlineMode;
+  @Nullable
+  public ClusterNode getClusterNode() {
+    return this.clusterNode;
   }
 
-  public void incrementBruteforceAttempts(InetAddress address) {
-    this.getBruteforceUser(address).incrementAttempts();
+  public AdmissionController getAdmissionController() {
+    return this.admissionController;
   }
 
-  public int getBruteforceAttempts(InetAddress address) {
-    return this.getBruteforceUser(address).getAttempts();
+  public PremiumClassifier getPremiumClassifier() {
+    return this.premiumClassifier;
   }
 
-  private CachedBruteforceUser getBruteforceUser(InetAddress address) {
-    CachedBruteforceUser user = this.bruteforceCache.get(address);
-    if (user == null) {
-      user = new CachedBruteforceUser(System.currentTimeMillis());
-      this.bruteforceCache.put(address, user);
-    }
-
-    return user;
+  public PremiumResolver getPremiumResolver() {
+    return this.premiumResolver;
   }
 
-  public void clearBruteforceAttempts(InetAddress address) {
-    this.bruteforceCache.remove(address);
+  public BruteforceTracker getBruteforceTracker() {
+    return this.bruteforceTracker;
   }
 
   public void saveForceOfflineMode(String nickname) {
@@ -863,8 +1004,21 @@ public class LimboAuth {
     return this.postLoginTasks;
   }
 
+  /**
+   * Use {@link #getUnsafePasswordStore()}
+   */
+  @Deprecated()
   public Set<String> getUnsafePasswords() {
-    return this.unsafePasswords;
+    return this.unsafePasswordStore instanceof HashSetUnsafePasswordStore
+        ? ((HashSetUnsafePasswordStore) this.unsafePasswordStore).getPasswords()
+        : Set.of();
+  }
+
+  /**
+   * Returns null if the password strength check is disabled.
+   */
+  public UnsafePasswordStore getUnsafePasswordStore() {
+    return this.unsafePasswordStore;
   }
 
   public ProxyServer getServer() {
@@ -879,94 +1033,84 @@ public class LimboAuth {
     return this.playerDao;
   }
 
-  private static void setLogger(Logger logger) {
-    LOGGER = logger;
+  public LoginFailureTracker getLoginFailureTracker() {
+    return this.loginFailureTracker;
   }
 
-  private static void setSerializer(Serializer serializer) {
-    SERIALIZER = serializer;
+  public AuthSessionTicker getAuthSessionTicker() {
+    return this.authSessionTicker;
   }
 
-  public static Serializer getSerializer() {
-    return SERIALIZER;
+  public HashingExecutor getHashingExecutor() {
+    return this.hashingExecutor;
   }
 
-  public Limbo getAuthServer() {
-    return this.authServer;
-  }
-
-  public Pattern getNicknameValidationPattern() {
-    return this.nicknameValidationPattern;
+  public PlayerRepository getPlayerRepository() {
+    return this.playerRepository;
   }
 
-  public Component getWrongNicknamePrefixKick() {
-    return wrongNicknamePrefixKick;
+  public Path getDataDirectory() {
+    return this.dataDirectory;
   }
 
-  private static class CachedUser {
-
-    private final long checkTime;
-
-    public CachedUser(long checkTime) {
-      this.checkTime = checkTime;
+  /**
+   * Switches to the database the accounts have been copied to by the {@link StorageMigrator}, saving its settings to the config.
+   * The current repository is stopped first, so nothing is written to the old database after the last changes are copied to the new one.
+   * The players get the database errors for this short moment, but the auth limbo and the sessions in it are kept.
+   * If the last changes can't be copied, the old database is connected again.
+   */
+  public synchronized void switchDatabase(StorageMigrator migrator, DatabaseLibrary storageType, String hostname, String database, String user,
+      String password) throws SQLException {
+    this.stopDatabase();
+    try {
+      migrator.finish();
+    } catch (SQLException | RuntimeException e) {
+      this.openDatabase();
+      this.registerCommands();
+      throw e;
     }
 
-    public long getCheckTime() {
-      return this.checkTime;
-    }
+    Settings.DATABASE dbConfig = Settings.IMP.DATABASE;
+    dbConfig.STORAGE_TYPE = storageType;
+    dbConfig.HOSTNAME = hostname;
+    dbConfig.DATABASE = database;
+    dbConfig.USER = user;
+    dbConfig.PASSWORD = password;
+    Settings.IMP.save(this.configFile);
+    this.openDatabase();
+    this.registerCommands();
   }
 
-  private static class CachedSessionUser extends CachedUser {
-
-    private final InetAddress inetAddress;
-    private final String username;
-
-    public CachedSessionUser(long checkTime, InetAddress inetAddress, String username) {
-      super(checkTime);
-
-      this.inetAddress = inetAddress;
-      this.username = username;
-    }
-
-    public InetAddress getInetAddress() {
-      return this.inetAddress;
-    }
-
-    public String getUsername() {
-      return this.username;
-    }
+  private static void setLogger(Logger logger) {
+    LOGGER = logger;
   }
 
-  private static class CachedPremiumUser extends CachedUser {
-
-    private final boolean premium;
-
-    public CachedPremiumUser(long checkTime, boolean premium) {
-      super(checkTime);
-
-      this.premium = premium;
-    }
+  public static Logger getLogger() {
+    return LOGGER;
+  }
 
-    public boolean isPremium() {
-      return this.premium;
-    }
+  private static void setSerializer(Serializer serializer) {
+    SERIALIZER = serializer;
   }
 
-  private static class CachedBruteforceUser extends CachedUser {
+  public static Serializer getSerializer() {
+    return SERIALIZER;
+  }
 
-    private int attempts;
+  public static MetricsRegistry getMetrics() {
+    return METRICS;
+  }
 
-    public CachedBruteforceUser(long checkTime) {
-      super(checkTime);
-    }
+  public Limbo getAuthServer() {
+    return this.authServer;
+  }
 
-    public void incrementAttempts() {
-      this.attempts++;
-    }
+  public Pattern getNicknameValidationPattern() {
+    return this.nicknameValidationPattern;
+  }
 
-    public int getAttempts() {
-      return  this.attempts;
-    }
+  public Component getWrongNicknamePrefixKick() {
+    return wrongNicknamePrefixKick;
   }
 
   public static class PremiumResponse {
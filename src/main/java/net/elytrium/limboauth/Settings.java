@@ -29,9 +29,12 @@ import net.elytrium.commons.kyori.serialization.Serializers;
 import net.elytrium.limboapi.api.chunk.Dimension;
 import net.elytrium.limboapi.api.file.BuiltInWorldFileType;
 import net.elytrium.limboapi.api.player.GameMode;
+import net.elytrium.limboauth.cluster.ClusterTransportType;
 import net.elytrium.limboauth.command.CommandPermissionState;
 import net.elytrium.limboauth.dependencies.DatabaseLibrary;
 import net.elytrium.limboauth.migration.MigrationHash;
+import net.elytrium.limboauth.password.UnsafePasswordStorage;
+import net.elytrium.limboauth.session.SessionStorage;
 import net.kyori.adventure.bossbar.BossBar;
 import net.kyori.adventure.title.Title;
 import net.kyori.adventure.util.Ticks;
@@ -73,6 +76,15 @@ public class Settings extends YamlConfig {
     public int MAX_PASSWORD_LENGTH = 71;
     public boolean CHECK_PASSWORD_STRENGTH = true;
     public String UNSAFE_PASSWORDS_FILE = "unsafe_passwords.txt";
+    @Comment({
+        "How the unsafe passwords are stored:",
+        " HASH_SET - in memory as is, fine for the small lists",
+        " BLOOM_FILTER - in a compact in-memory filter, a few safe passwords may be rejected, see UNSAFE_PASSWORDS_BLOOM_FILTER_FPP",
+        " SORTED_HASH_FILE - in a sorted hash index built next to the list and memory-mapped, recommended for the huge lists"
+    })
+    public UnsafePasswordStorage UNSAFE_PASSWORDS_STORAGE = UnsafePasswordStorage.HASH_SET;
+    @Comment("Probability of rejecting a safe password with the BLOOM_FILTER storage")
+    public double UNSAFE_PASSWORDS_BLOOM_FILTER_FPP = 0.000001;
     @Comment({"Only allow offline mode login"})
     public boolean ONLY_OFFLINE_MODE = false;
     @Comment({"offline host"})
@@ -125,20 +137,50 @@ public class Settings extends YamlConfig {
     public MigrationHash MIGRATION_HASH = MigrationHash.AUTHME;
     @Comment("Available dimensions: OVERWORLD, NETHER, THE_END")
     public Dimension DIMENSION = Dimension.THE_END;
+    @Comment("Time in milliseconds, during which the player doesn't have to log in again from the same address")
     public long PURGE_CACHE_MILLIS = 3600000;
+    @Comment({
+        "Where the login sessions are stored:",
+        " MEMORY - in the memory of this proxy, see SAVE_SESSIONS",
+        " DATABASE - in the SESSIONS table, shared between the proxies that use the same database"
+    })
+    public SessionStorage SESSION_STORAGE = SessionStorage.MEMORY;
+    @Comment("Save the MEMORY sessions to sessions.bin on shutdown and reload, so the players don't have to log in again after the restart")
+    public boolean SAVE_SESSIONS = true;
     public long PURGE_PREMIUM_CACHE_MILLIS = 28800000;
+    @Comment("Time in milliseconds to remember that the nickname doesn't belong to a premium account")
+    public long PURGE_CRACKED_CACHE_MILLIS = 3600000;
+    @Comment("Maximum amount of remembered premium and cracked nicknames")
+    public int PREMIUM_CACHE_SIZE = 10000;
+    @Comment("Time in milliseconds to remember whether the registered account is premium, the entry is dropped earlier if the account is changed on this proxy")
+    public long PREMIUM_CLASSIFIER_CACHE_MILLIS = 30000;
     public long PURGE_BRUTEFORCE_CACHE_MILLIS = 28800000;
     @Comment("Used to ban IPs when a possible attacker incorrectly enters the password")
     public int BRUTEFORCE_MAX_ATTEMPTS = 10;
+    @Comment({
+        "Used to ban subnets (/24 for IPv4, /64 for IPv6) when many attackers from them incorrectly enter the password, 0 to disable.",
+        "Disabled by default: the players behind a shared subnet (CGNAT, universities, mobile carriers) would be locked out by the others' mistakes"
+    })
+    public int BRUTEFORCE_MAX_SUBNET_ATTEMPTS = 0;
+    @Comment("Maximum amount of IPs and subnets whose attempts are counted exactly, the others are counted approximately using a fixed amount of memory")
+    public int BRUTEFORCE_CACHE_SIZE = 100000;
     @Comment("QR Generator URL, set {data} placeholder")
     public String QR_GENERATOR_URL = "https://api.qrserver.com/v1/create-qr-code/?data={data}&size=200x200&ecc=M&margin=30";
     public String TOTP_ISSUER = "LimboAuth by Elytrium";
     public int BCRYPT_COST = 10;
+    @Comment("Share of the available CPU cores used to check and hash the passwords, at least one thread is always used.")
+    public double HASHING_THREADS_SHARE = 0.5;
+    @Comment("Maximum amount of passwords waiting to be checked, players will be asked to retry later if the queue is full.")
+    public int HASHING_QUEUE_SIZE = 256;
     public int LOGIN_ATTEMPTS = 3;
     public int IP_LIMIT_REGISTRATIONS = 3;
     public int TOTP_RECOVERY_CODES_AMOUNT = 16;
     @Comment("Time in milliseconds, when ip limit works, set to 0 for disable.")
     public long IP_LIMIT_VALID_TIME = 21600000;
+    @Comment("Time in milliseconds, during which the amount of accounts registered from an IP is cached, set to 0 for disable.")
+    public long IP_LIMIT_CACHE_MILLIS = 60000;
+    @Comment("How often the IPs of the accounts registered before the ip limit time are cleared, in milliseconds.")
+    public long IP_LIMIT_PURGE_INTERVAL_MILLIS = 3600000;
     @Comment({
         "Regex of allowed nicknames",
         "^ means the start of the line, $ means the end of the line",
@@ -175,6 +217,15 @@ public class Settings extends YamlConfig {
         "Or implement your own API, it should just respond with HTTP code 200 (see parameters below) only if the player is premium"
     })
     public String ISPREMIUM_AUTH_URL = "https://api.mojang.com/users/profiles/minecraft/%s";
+    @Comment({
+        "Mojang bulk profiles URL, used to check up to 10 nicknames with one request",
+        "Set to \"\" if your API doesn't support it, then ISPREMIUM_AUTH_URL is used for every nickname"
+    })
+    public String ISPREMIUM_BULK_AUTH_URL = "https://api.mojang.com/profiles/minecraft";
+    @Comment("Time in milliseconds to wait for more nicknames before sending the bulk request")
+    public long PREMIUM_BATCH_DELAY_MILLIS = 50;
+    @Comment("Time in milliseconds to stop sending the requests after the API rate-limits the server, doubled on every next rate-limit")
+    public long PREMIUM_RATE_LIMIT_COOLDOWN_MILLIS = 30000;
 
     @Comment({
         "Status codes (see the comment above)",
@@ -222,6 +273,74 @@ public class Settings extends YamlConfig {
     @Comment("New players will be kicked with registrations-disabled-kick message")
     public boolean DISABLE_REGISTRATIONS = false;
 
+    @Create
+    public Settings.MAIN.CLUSTER CLUSTER;
+
+    @Comment({
+        "Share the sessions, failed login attempts and player cache invalidations between several proxies,",
+        "so a player that has logged in on one proxy doesn't have to log in again on the other one"
+    })
+    public static class CLUSTER {
+
+      public boolean ENABLED = false;
+
+      @Comment("Unique ID of this proxy, random if empty")
+      public String NODE_ID = "";
+
+      @Comment({
+          "DATABASE - through the CLUSTER_EVENTS table of the shared database",
+          "LOOPBACK - only between the plugin instances in the same JVM, for testing"
+      })
+      public ClusterTransportType TRANSPORT = ClusterTransportType.DATABASE;
+
+      @Comment("How often the events of the other proxies are fetched and the failed login attempts are published, in milliseconds")
+      public long POLL_INTERVAL_MILLIS = 500;
+
+      @Comment("How long the events are kept in the database, in milliseconds")
+      public long EVENT_RETENTION_MILLIS = 60000;
+    }
+
+    @Create
+    public Settings.MAIN.ADMISSION ADMISSION;
+
+    @Comment({
+        "Limits the amount of players that are being authenticated at the same time, the others wait in a queue.",
+        "Keeps the memory and database load bounded during the bot attacks. Players with a valid session are not affected"
+    })
+    public static class ADMISSION {
+
+      @Comment("Maximum amount of players in the auth limbo, including the ones whose accounts are being loaded, 0 to disable the limit")
+      public int MAX_SESSIONS = 1000;
+
+      @Comment({
+          "Maximum amount of such players from one subnet (/24 for IPv4, /64 for IPv6), 0 to disable.",
+          "The waiting subnets take turns, so a flood from one subnet doesn't lock the other players out"
+      })
+      public int MAX_SUBNET_SESSIONS = 20;
+
+      @Comment("Maximum amount of waiting players, the others are kicked with queue-full-kick message")
+      public int MAX_QUEUE_SIZE = 2000;
+
+      @Comment("Time in milliseconds after which the waiting player is kicked with queue-timeout-kick message, the client disconnects itself after 30 seconds")
+      public long MAX_WAIT_MILLIS = 20000;
+    }
+
+    @Create
+    public Settings.MAIN.METRICS METRICS;
+
+    @Comment("Latency of the authentication stages, also shown by /limboauth stats")
+    public static class METRICS {
+
+      @Comment({
+          "File in the plugin directory to write the metrics to in the Prometheus text format, e.g. \"metrics.prom\", empty to disable.",
+          "Can be collected with the node_exporter textfile collector"
+      })
+      public String PROMETHEUS_FILE = "";
+
+      @Comment("How often the metrics file is rewritten, in milliseconds")
+      public long PROMETHEUS_WRITE_INTERVAL_MILLIS = 15000;
+    }
+
     @Create
     public Settings.MAIN.MOD MOD;
 
@@ -322,6 +441,14 @@ public class Settings extends YamlConfig {
       public CommandPermissionState FORCE_UNREGISTER = CommandPermissionState.PERMISSION;
       @Comment("Permission: limboauth.admin.reload")
       public CommandPermissionState RELOAD = CommandPermissionState.PERMISSION;
+      @Comment("Permission: limboauth.admin.stats")
+      public CommandPermissionState STATS = CommandPermissionState.PERMISSION;
+      @Comment("Permission: limboauth.admin.import")
+      public CommandPermissionState IMPORT = CommandPermissionState.PERMISSION;
+      @Comment("Permission: limboauth.admin.export")
+      public CommandPermissionState EXPORT = CommandPermissionState.PERMISSION;
+      @Comment("Permission: limboauth.admin.migrate")
+      public CommandPermissionState MIGRATE = CommandPermissionState.PERMISSION;
       @Comment("Permission: limboauth.admin.help")
       public CommandPermissionState HELP = CommandPermissionState.TRUE;
     }
@@ -347,6 +474,7 @@ public class Settings extends YamlConfig {
       public String RELOAD = "{PRFX} &aReloaded successfully!";
       public String ERROR_OCCURRED = "{PRFX} &cAn internal error has occurred!";
       public String DATABASE_ERROR_KICK = "{PRFX} &cA database error has occurred!";
+      public String SERVER_BUSY = "{PRFX} &cThe server is busy, please try again in a few seconds.";
 
       public String NOT_PLAYER = "{PRFX} &cСonsole is not allowed to execute this command!";
       public String NOT_REGISTERED = "{PRFX} &cYou are not registered or your account is &6PREMIUM!";
@@ -422,6 +550,10 @@ public class Settings extends YamlConfig {
       public String FORCE_UNREGISTER_USAGE = "{PRFX} Usage: &6/forceunregister <nickname>";
 
       public String REGISTRATIONS_DISABLED_KICK = "{PRFX} Registrations are currently disabled.";
+      public String QUEUE_FULL_KICK = "{PRFX}{NL}&cToo many players are logging in right now, the queue is full, you would be &6#{0}&c. Please try again in a minute.";
+      @Comment("Shown in the action bar of the waiting players every second, empty to disable")
+      public String QUEUE_POSITION = "&eYou are &6#{0} &ein the login queue, please wait...";
+      public String QUEUE_TIMEOUT_KICK = "{PRFX}{NL}&cToo many players are logging in right now, you were &6#{0} &cin the queue. Please try again in a minute.";
 
       public String CHANGE_PASSWORD_SUCCESSFUL = "{PRFX} &aSuccessfully changed password!";
       @Comment("Or if change-password-need-old-pass set to false remove the \"<old password>\" part.")
@@ -474,7 +606,53 @@ public class Settings extends YamlConfig {
     public String USER = "user";
     public String PASSWORD = "password";
     public String DATABASE = "limboauth";
+    @Comment("The prepared statement cache of MySQL, MariaDB and PostgreSQL drivers is enabled by default, its parameters can be overridden here")
     public String CONNECTION_PARAMETERS = "?autoReconnect=true&initialTimeout=1&useSSL=false";
+    @Comment({
+        "Maximum amount of database queries waiting for a free database thread.",
+        "New queries will fail if the queue is full, e.g. when the database is down."
+    })
+    public int QUEUE_SIZE = 2048;
+    @Comment("Maximum amount of cached accounts per index (UUID and nickname), set to 0 to disable the cache.")
+    public long PLAYER_CACHE_SIZE = 10000;
+    @Comment("Time in milliseconds after which the cached account will be fetched from the database again.")
+    public long PLAYER_CACHE_EXPIRE_TIME = 300000;
+    @Comment("Time in milliseconds between the writes of the last login IPs and dates, they are saved in one batch.")
+    public long LOGIN_DATA_FLUSH_INTERVAL = 5000;
+    @Comment("The login data is written earlier if this amount of players is waiting to be saved.")
+    public int LOGIN_DATA_BATCH_SIZE = 500;
+    @Comment({
+        "Time in milliseconds between the recounts of the registered accounts shown in the metrics and /limboauth stats.",
+        "The amount is kept in memory between them, so the whole table isn't counted on every bStats sample."
+    })
+    public long REGISTERED_PLAYERS_RECOUNT_INTERVAL = 3600000;
+    @Comment({
+        "Amount of accounts written in one transaction by /limboauth import, also used as the fetch size of the source database.",
+        "Keep it below 1000 for sqlite, its older versions allow only 999 query parameters."
+    })
+    public int IMPORT_BATCH_SIZE = 500;
+
+    @Create
+    public DATABASE.POOL POOL;
+
+    @Comment("Connection pool settings, used only by mariadb, mysql and postgresql. sqlite and h2 always use a single connection.")
+    public static class POOL {
+
+      @Comment("Amount of connections that are kept open even if the pool is idle.")
+      public int MIN_SIZE = 2;
+      @Comment("Maximum amount of open connections.")
+      public int MAX_SIZE = 10;
+      @Comment("Time in milliseconds to wait for a free connection before the query fails.")
+      public long CONNECTION_TIMEOUT = 5000;
+      @Comment("Check that the connection is still alive before using it.")
+      public boolean VALIDATE_ON_BORROW = true;
+      @Comment("Time in seconds to wait for the connection validation.")
+      public int VALIDATION_TIMEOUT = 5;
+      @Comment("Time in milliseconds after which the connection will be closed and replaced with a new one, set to 0 to disable.")
+      public long MAX_LIFETIME = 1800000;
+      @Comment("Time in milliseconds after which a borrowed connection will be reported as a possible leak, set to 0 to disable.")
+      public long LEAK_DETECTION_THRESHOLD = 0;
+    }
   }
 
   public static class MD5KeySerializer extends ConfigSerializer<byte[], String> {
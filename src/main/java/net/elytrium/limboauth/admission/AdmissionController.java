@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.admission;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+import net.elytrium.limboauth.bruteforce.BruteforceTracker;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Limits the amount of players that are being authenticated at the same time, so the load during the join floods
+ * is bounded by the config and not by the attacker. The other players wait in a queue, the queue is FIFO inside every subnet
+ * (/24 for IPv4, /64 for IPv6) and the subnets take turns, so a flood from one subnet doesn't lock the other players out.
+ * The futures are always completed outside the lock.
+ * Every slot belongs to one connection (the owner), so the release of an old connection doesn't free the slot of the player who has reconnected.
+ */
+public class AdmissionController {
+
+  private final Map<UUID, Admission> activeSessions = new HashMap<>();
+  private final Map<Long, Integer> activeSubnetSessions = new HashMap<>();
+  // Insertion order is the turn order of the subnets, a subnet is moved to the end after its player is admitted.
+  private final Map<Long, ArrayDeque<Admission>> queues = new LinkedHashMap<>();
+  private final Map<UUID, Admission> waiting = new HashMap<>();
+  private int maxSessions;
+  private int maxSubnetSessions;
+  private int maxQueueSize;
+  private long maxWait;
+  private long admittedCount;
+  private long rejectedCount;
+
+  /**
+   * @param maxSessions       Maximum amount of players being authenticated at the same time, 0 to disable the limit.
+   * @param maxSubnetSessions Maximum amount of such players from one subnet, 0 to disable.
+   * @param maxQueueSize      Maximum amount of waiting players, the others are rejected immediately.
+   * @param maxWait           Time in milliseconds after which the waiting player is rejected.
+   */
+  public AdmissionController(int maxSessions, int maxSubnetSessions, int maxQueueSize, long maxWait) {
+    this.configure(maxSessions, maxSubnetSessions, maxQueueSize, maxWait);
+  }
+
+  /**
+   * Applies the new limits, e.g. after the reload. The admitted players are kept.
+   */
+  public void configure(int maxSessions, int maxSubnetSessions, int maxQueueSize, long maxWait) {
+    List<Admission> admitted;
+    synchronized (this) {
+      this.maxSessions = maxSessions;
+      this.maxSubnetSessions = maxSubnetSessions;
+      this.maxQueueSize = maxQueueSize;
+      this.maxWait = maxWait;
+      admitted = this.admitWaiting();
+    }
+
+    admitted.forEach(admission -> admission.complete(Outcome.ADMITTED, 0));
+  }
+
+  /**
+   * Returns the future that is completed when the player may be authenticated, or is rejected.
+   * Every admitted player must be {@link #release(UUID, Object) released} with the same owner.
+   *
+   * The future is completed on the thread that has freed the slot, so the callers should continue on their own executor.
+   *
+   * @param owner            The connection of the player, compared by identity.
+   * @param positionListener Receives the position of the waiting player on every {@link #expireWaiting()} call.
+   */
+  public CompletableFuture<Admission> admit(UUID uuid, InetAddress address, Object owner, @Nullable IntConsumer positionListener) {
+    long subnet = BruteforceTracker.subnet(address);
+    Admission admission = new Admission(uuid, subnet, owner, positionListener);
+    Outcome outcome;
+    int position = 0;
+    synchronized (this) {
+      if (this.maxSessions <= 0) {
+        outcome = Outcome.ADMITTED;
+      } else if (this.activeSessions.containsKey(uuid)) {
+        // The same player has reconnected, the new connection takes over the slot, so it is still counted once.
+        this.deactivate(this.activeSessions.get(uuid));
+        this.activate(admission);
+        outcome = Outcome.ADMITTED;
+      } else if (!this.queues.containsKey(subnet) && this.hasFreeSlot(subnet)) {
+        this.activate(admission);
+        outcome = Outcome.ADMITTED;
+      } else if (this.waiting.size() >= this.maxQueueSize) {
+        ++this.rejectedCount;
+        outcome = Outcome.QUEUE_FULL;
+        position = this.waiting.size() + 1;
+      } else {
+        Admission previous = this.waiting.put(uuid, admission);
+        if (previous != null) {
+          // The same player has reconnected, the old connection won't be admitted.
+          this.removeFromQueue(previous);
+          previous.complete(Outcome.CANCELLED, 0);
+        }
+
+        this.queues.computeIfAbsent(subnet, key -> new ArrayDeque<>()).add(admission);
+        return admission.future;
+      }
+    }
+
+    admission.complete(outcome, position);
+    return admission.future;
+  }
+
+  /**
+   * Frees the slot of the admitted player or removes the waiting one from the queue. Can be called several times.
+   * Does nothing if the slot or the place in the queue has been taken over by another connection of the same player.
+   */
+  public void release(UUID uuid, Object owner) {
+    List<Admission> admitted = List.of();
+    Admission cancelled = null;
+    synchronized (this) {
+      Admission active = this.activeSessions.get(uuid);
+      if (active != null && active.owner == owner) {
+        this.deactivate(active);
+        admitted = this.admitWaiting();
+      } else {
+        Admission waiting = this.waiting.get(uuid);
+        if (waiting != null && waiting.owner == owner) {
+          this.waiting.remove(uuid);
+          this.removeFromQueue(waiting);
+          cancelled = waiting;
+        }
+      }
+    }
+
+    admitted.forEach(admission -> admission.complete(Outcome.ADMITTED, 0));
+    if (cancelled != null) {
+      cancelled.complete(Outcome.CANCELLED, 0);
+    }
+  }
+
+  /**
+   * Rejects the players that have been waiting for too long, they would be disconnected by the client timeout anyway,
+   * and tells the other waiting players their positions. Should be called periodically.
+   */
+  public void expireWaiting() {
+    List<Admission> expired = new ArrayList<>();
+    List<Integer> expiredPositions = new ArrayList<>();
+    List<Admission> notified = new ArrayList<>();
+    List<Integer> positions = new ArrayList<>();
+    synchronized (this) {
+      long expireBefore = System.currentTimeMillis() - this.maxWait;
+      int[] positionsByIndex = this.getPositionsByIndex();
+      for (ArrayDeque<Admission> queue : this.queues.values()) {
+        int index = 0;
+        for (Admission admission : queue) {
+          int position = positionsByIndex[index++];
+          if (admission.createdAt <= expireBefore) {
+            expired.add(admission);
+            expiredPositions.add(position);
+          } else if (admission.positionListener != null) {
+            notified.add(admission);
+            positions.add(position);
+          }
+        }
+      }
+
+      for (Admission admission : expired) {
+        this.waiting.remove(admission.uuid);
+        this.removeFromQueue(admission);
+      }
+
+      this.rejectedCount += expired.size();
+    }
+
+    for (int i = 0; i < expired.size(); ++i) {
+      expired.get(i).complete(Outcome.TIMED_OUT, expiredPositions.get(i));
+    }
+
+    for (int i = 0; i < notified.size(); ++i) {
+      notified.get(i).positionListener.accept(positions.get(i));
+    }
+  }
+
+  private boolean hasFreeSlot(long subnet) {
+    return this.activeSessions.size() < this.maxSessions
+        && (this.maxSubnetSessions <= 0 || this.activeSubnetSessions.getOrDefault(subnet, 0) < this.maxSubnetSessions);
+  }
+
+  private void activate(Admission admission) {
+    this.activeSessions.put(admission.uuid, admission);
+    this.activeSubnetSessions.merge(admission.subnet, 1, Integer::sum);
+    ++this.admittedCount;
+  }
+
+  private void deactivate(Admission admission) {
+    this.activeSessions.remove(admission.uuid);
+    this.activeSubnetSessions.computeIfPresent(admission.subnet, (key, sessions) -> sessions == 1 ? null : sessions - 1);
+  }
+
+  private List<Admission> admitWaiting() {
+    List<Admission> admitted = new ArrayList<>();
+    while (!this.queues.isEmpty()) {
+      Admission next = null;
+      for (Iterator<Map.Entry<Long, ArrayDeque<Admission>>> iterator = this.queues.entrySet().iterator(); iterator.hasNext(); ) {
+        Map.Entry<Long, ArrayDeque<Admission>> entry = iterator.next();
+        if (this.maxSessions <= 0 || this.hasFreeSlot(entry.getKey())) {
+          next = entry.getValue().poll();
+          iterator.remove();
+          if (!entry.getValue().isEmpty()) {
+            this.queues.put(entry.getKey(), entry.getValue());
+          }
+
+          break;
+        }
+      }
+
+      if (next == null) {
+        break;
+      }
+
+      this.waiting.remove(next.uuid);
+      this.activate(next);
+      admitted.add(next);
+    }
+
+    return admitted;
+  }
+
+  private void removeFromQueue(Admission admission) {
+    ArrayDeque<Admission> queue = this.queues.get(admission.subnet);
+    if (queue != null) {
+      queue.remove(admission);
+      if (queue.isEmpty()) {
+        this.queues.remove(admission.subnet);
+      }
+    }
+  }
+
+  /**
+   * Estimated positions in the queue by the index inside the subnet queue. The subnets take turns,
+   * so the player with the index i is preceded by up to i players of every subnet: the position is the sum of min(size, i + 1) over the queues.
+   */
+  private int[] getPositionsByIndex() {
+    int maxLength = 0;
+    for (ArrayDeque<Admission> queue : this.queues.values()) {
+      maxLength = Math.max(maxLength, queue.size());
+    }
+
+    // Amount of the queues longer than the index.
+    int[] longerQueues = new int[maxLength];
+    for (ArrayDeque<Admission> queue : this.queues.values()) {
+      ++longerQueues[queue.size() - 1];
+    }
+
+    for (int i = maxLength - 2; i >= 0; --i) {
+      longerQueues[i] += longerQueues[i + 1];
+    }
+
+    int[] positions = new int[maxLength];
+    int position = 0;
+    for (int i = 0; i < maxLength; ++i) {
+      position += longerQueues[i];
+      positions[i] = position;
+    }
+
+    return positions;
+  }
+
+  public synchronized int getActiveSessions() {
+    return this.activeSessions.size();
+  }
+
+  public synchronized int getWaitingPlayers() {
+    return this.waiting.size();
+  }
+
+  public synchronized long getAdmittedCount() {
+    return this.admittedCount;
+  }
+
+  public synchronized long getRejectedCount() {
+    return this.rejectedCount;
+  }
+
+  public enum Outcome {
+    ADMITTED,
+    QUEUE_FULL,
+    TIMED_OUT,
+    // The player has disconnected or reconnected while waiting.
+    CANCELLED
+  }
+
+  public static class Admission {
+
+    private final CompletableFuture<Admission> future = new CompletableFuture<>();
+    private final UUID uuid;
+    private final long subnet;
+    private final Object owner;
+    private final IntConsumer positionListener;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile Outcome outcome;
+    private volatile int position;
+    private volatile long waitedMillis;
+
+    private Admission(UUID uuid, long subnet, Object owner, @Nullable IntConsumer positionListener) {
+      this.uuid = uuid;
+      this.subnet = subnet;
+      this.owner = owner;
+      this.positionListener = positionListener;
+    }
+
+    private void complete(Outcome outcome, int position) {
+      this.outcome = outcome;
+      this.position = position;
+      this.waitedMillis = System.currentTimeMillis() - this.createdAt;
+      this.future.complete(this);
+    }
+
+    public Outcome getOutcome() {
+      return this.outcome;
+    }
+
+    /**
+     * Position in the queue at the moment of the rejection, 0 if the player was not rejected.
+     */
+    public int getPosition() {
+      return this.position;
+    }
+
+    public long getWaitedMillis() {
+      return this.waitedMillis;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.bruteforce;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counts the failed login attempts per address and per subnet (/24 for IPv4, /64 for IPv6) over a sliding window.
+ * Every operation is lock-free and O(1). Up to {@code maxSize} keys of each kind are counted exactly,
+ * the long tail is counted approximately in fixed size count-min sketches, so the memory usage is bounded during the attacks.
+ */
+public class BruteforceTracker {
+
+  private static final int SKETCH_WIDTH = 8192;
+
+  private final CounterTable<InetAddress> addresses;
+  private final CounterTable<Long> ipv4Subnets;
+  private final CounterTable<Long> ipv6Subnets;
+  private final int maxAttempts;
+  private final int maxSubnetAttempts;
+
+  /**
+   * @param window            Length of the sliding window in milliseconds.
+   * @param maxAttempts       Attempts after which the address is blocked.
+   * @param maxSubnetAttempts Attempts after which the whole subnet is blocked, 0 to disable.
+   * @param maxSize           Maximum amount of exactly counted keys of each kind.
+   */
+  public BruteforceTracker(long window, int maxAttempts, int maxSubnetAttempts, int maxSize) {
+    long validWindow = Math.max(1, window);
+    this.addresses = new CounterTable<>(validWindow, maxSize, address -> address.hashCode());
+    this.ipv4Subnets = new CounterTable<>(validWindow, maxSize, Long::longValue);
+    this.ipv6Subnets = new CounterTable<>(validWindow, maxSize, Long::longValue);
+    this.maxAttempts = maxAttempts;
+    this.maxSubnetAttempts = maxSubnetAttempts;
+  }
+
+  public void recordFailure(InetAddress address) {
+    long currentTime = System.currentTimeMillis();
+    this.addresses.increment(address, currentTime);
+    if (this.maxSubnetAttempts > 0) {
+      this.subnetTable(address).increment(subnet(address), currentTime);
+    }
+  }
+
+  public int getAttempts(InetAddress address) {
+    return this.addresses.estimate(address, System.currentTimeMillis());
+  }
+
+  public int getSubnetAttempts(InetAddress address) {
+    return this.subnetTable(address).estimate(subnet(address), System.currentTimeMillis());
+  }
+
+  public boolean isBlocked(InetAddress address) {
+    return this.getAttempts(address) >= this.maxAttempts
+        || (this.maxSubnetAttempts > 0 && this.getSubnetAttempts(address) >= this.maxSubnetAttempts);
+  }
+
+  /**
+   * Forgets the attempts of the address, e.g. after the successful login.
+   * The subnet counters are kept, and the address can't be removed from the sketch if it didn't fit in the exact counters.
+   */
+  public void clear(InetAddress address) {
+    this.addresses.remove(address);
+  }
+
+  /**
+   * Drops the exact counters that have decayed to zero.
+   */
+  public void evictExpired() {
+    long currentTime = System.currentTimeMillis();
+    this.addresses.evictExpired(currentTime);
+    this.ipv4Subnets.evictExpired(currentTime);
+    this.ipv6Subnets.evictExpired(currentTime);
+  }
+
+  public int getTrackedAddresses() {
+    return this.addresses.size();
+  }
+
+  public int getTrackedSubnets() {
+    return this.ipv4Subnets.size() + this.ipv6Subnets.size();
+  }
+
+  private CounterTable<Long> subnetTable(InetAddress address) {
+    return address.getAddress().length == 4 ? this.ipv4Subnets : this.ipv6Subnets;
+  }
+
+  /**
+   * Packs the /24 subnet of the IPv4 address or the /64 subnet of the IPv6 one into a long.
+   */
+  public static long subnet(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    // /24 for IPv4, /64 for IPv6.
+    int prefixLength = bytes.length == 4 ? 3 : 8;
+    long subnet = 0;
+    for (int i = 0; i < prefixLength; ++i) {
+      subnet = (subnet << 8) | (bytes[i] & 0xFF);
+    }
+
+    return subnet;
+  }
+
+  private static class CounterTable<K> {
+
+    private final Map<K, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final CountMinSketch sketch;
+    private final ToLongFunction<K> hashFunction;
+    private final long window;
+    private final int maxSize;
+
+    private CounterTable(long window, int maxSize, ToLongFunction<K> hashFunction) {
+      this.sketch = new CountMinSketch(SKETCH_WIDTH, window);
+      this.hashFunction = hashFunction;
+      this.window = window;
+      this.maxSize = maxSize;
+    }
+
+    private void increment(K key, long currentTime) {
+      AtomicLong counter = this.counters.get(key);
+      if (counter == null) {
+        if (this.counters.size() >= this.maxSize) {
+          this.sketch.increment(CountMinSketch.mix(this.hashFunction.applyAsLong(key)), currentTime);
+          return;
+        }
+
+        counter = this.counters.computeIfAbsent(key, k -> new AtomicLong());
+      }
+
+      SlidingWindowCounter.increment(counter, currentTime, this.window);
+    }
+
+    private int estimate(K key, long currentTime) {
+      AtomicLong counter = this.counters.get(key);
+      if (counter != null) {
+        return SlidingWindowCounter.estimate(counter, currentTime, this.window);
+      }
+
+      return this.sketch.estimate(CountMinSketch.mix(this.hashFunction.applyAsLong(key)), currentTime);
+    }
+
+    private void remove(K key) {
+      this.counters.remove(key);
+    }
+
+    private void evictExpired(long currentTime) {
+      this.counters.values().removeIf(counter -> SlidingWindowCounter.estimate(counter, currentTime, this.window) == 0);
+    }
+
+    private int size() {
+      return this.counters.size();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.bruteforce;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fixed size, lock-free count-min sketch with the same two-window decay as {@link SlidingWindowCounter}.
+ * Estimates never undercount, so the addresses that don't fit in the exact counters still can't bypass the limits.
+ */
+class CountMinSketch {
+
+  private static final int DEPTH = 4;
+
+  private final AtomicReference<Windows> windows;
+  private final long window;
+  private final int mask;
+
+  CountMinSketch(int width, long window) {
+    this.mask = Integer.highestOneBit(Math.max(16, width) - 1) * 2 - 1;
+    this.window = window;
+    this.windows = new AtomicReference<>(new Windows(System.currentTimeMillis() / window, this.newTable(), this.newTable()));
+  }
+
+  void increment(long hash, long currentTime) {
+    Windows windows = this.rotate(currentTime);
+    for (int row = 0; row < DEPTH; ++row) {
+      int index = this.index(hash, row);
+      int value;
+      do {
+        value = windows.current.get(index);
+      } while (value != Integer.MAX_VALUE && !windows.current.compareAndSet(index, value, value + 1));
+    }
+  }
+
+  int estimate(long hash, long currentTime) {
+    Windows windows = this.windows.get();
+    long windowIndex = currentTime / this.window;
+    int current = Integer.MAX_VALUE;
+    int previous = Integer.MAX_VALUE;
+    for (int row = 0; row < DEPTH; ++row) {
+      int index = this.index(hash, row);
+      current = Math.min(current, windows.current.get(index));
+      previous = Math.min(previous, windows.previous.get(index));
+    }
+
+    if (windowIndex == windows.index) {
+      return SlidingWindowCounter.weigh(current, previous, currentTime, this.window);
+    } else if (windowIndex == windows.index + 1) {
+      return SlidingWindowCounter.weigh(0, current, currentTime, this.window);
+    } else {
+      return 0;
+    }
+  }
+
+  private Windows rotate(long currentTime) {
+    long windowIndex = currentTime / this.window;
+    while (true) {
+      Windows windows = this.windows.get();
+      if (windows.index >= windowIndex) {
+        return windows;
+      }
+
+      AtomicIntegerArray previous = windows.index + 1 == windowIndex ? windows.current : this.newTable();
+      Windows rotated = new Windows(windowIndex, this.newTable(), previous);
+      if (this.windows.compareAndSet(windows, rotated)) {
+        return rotated;
+      }
+    }
+  }
+
+  private int index(long hash, int row) {
+    // Double hashing, the rows are derived from the two halves of the mixed hash.
+    int high = (int) (hash >>> 32);
+    int low = (int) hash;
+    return row * (this.mask + 1) + ((low + row * high) & this.mask);
+  }
+
+  private AtomicIntegerArray newTable() {
+    return new AtomicIntegerArray((this.mask + 1) * DEPTH);
+  }
+
+  static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB9FE1A85EC53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  private static class Windows {
+
+    private final long index;
+    private final AtomicIntegerArray current;
+    private final AtomicIntegerArray previous;
+
+    private Windows(long index, AtomicIntegerArray current, AtomicIntegerArray previous) {
+      this.index = index;
+      this.current = current;
+      this.previous = previous;
+    }
+  }
+}
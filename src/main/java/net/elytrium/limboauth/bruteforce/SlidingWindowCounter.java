@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.bruteforce;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sliding window counter packed in a single {@link AtomicLong}: window index (32 bits), previous window (16 bits) and current window (16 bits).
+ * The previous window is weighted by the part of it that still overlaps the sliding window.
+ * Only the low 32 bits of the window index are stored, so the indexes are compared modulo 2^32.
+ */
+final class SlidingWindowCounter {
+
+  private static final int MAX_COUNT = 0xFFFF;
+  private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+  private SlidingWindowCounter() {
+
+  }
+
+  static void increment(AtomicLong counter, long currentTime, long window) {
+    long windowIndex = currentTime / window;
+    while (true) {
+      long state = counter.get();
+      int current = current(state, windowIndex);
+      long updated = pack(windowIndex, previous(state, windowIndex), Math.min(MAX_COUNT, current + 1));
+      if (counter.compareAndSet(state, updated)) {
+        return;
+      }
+    }
+  }
+
+  static int estimate(AtomicLong counter, long currentTime, long window) {
+    long windowIndex = currentTime / window;
+    long state = counter.get();
+    return weigh(current(state, windowIndex), previous(state, windowIndex), currentTime, window);
+  }
+
+  static int weigh(int current, int previous, long currentTime, long window) {
+    double previousWeight = 1.0 - (double) (currentTime % window) / window;
+    return current + (int) Math.ceil(previous * previousWeight);
+  }
+
+  private static int current(long state, long windowIndex) {
+    return (state >>> 32) == (windowIndex & INDEX_MASK) ? (int) (state & MAX_COUNT) : 0;
+  }
+
+  private static int previous(long state, long windowIndex) {
+    long stateIndex = state >>> 32;
+    if (stateIndex == (windowIndex & INDEX_MASK)) {
+      return (int) ((state >>> 16) & MAX_COUNT);
+    } else if (((stateIndex + 1) & INDEX_MASK) == (windowIndex & INDEX_MASK)) {
+      return (int) (state & MAX_COUNT);
+    } else {
+      return 0;
+    }
+  }
+
+  private static long pack(long windowIndex, int previous, int current) {
+    return ((windowIndex & INDEX_MASK) << 32) | ((long) previous << 16) | current;
+  }
+}
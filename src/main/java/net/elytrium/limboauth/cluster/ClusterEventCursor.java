@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Position of the node in the CLUSTER_EVENTS table. The auto-increment IDs are allocated on insert, but the rows become visible
+ * on commit, so a row with a lower ID may appear after the greater ones were already read. The skipped IDs are remembered
+ * as gaps and polled again until they are filled or the gap timeout passes (IDs are also skipped by the rolled back inserts).
+ * Not thread-safe, used only from the poller thread.
+ */
+class ClusterEventCursor {
+
+  private final NavigableMap<Long, Long> gaps = new TreeMap<>();
+  private final long gapTimeout;
+  private final int maxGaps;
+  private long lastId;
+
+  /**
+   * @param gapTimeout Time in milliseconds after which the missing ID is considered skipped for good.
+   * @param maxGaps    Maximum amount of the remembered gaps, the lowest ones are dropped first.
+   */
+  ClusterEventCursor(long gapTimeout, int maxGaps) {
+    this.gapTimeout = gapTimeout;
+    this.maxGaps = maxGaps;
+  }
+
+  void reset(long lastId) {
+    this.lastId = lastId;
+    this.gaps.clear();
+  }
+
+  /**
+   * Moves the cursor past the read event.
+   *
+   * @return true if the event wasn't read before and should be delivered
+   */
+  boolean accept(long id, long currentTime) {
+    if (id > this.lastId) {
+      // Only the closest IDs are remembered if the sequence has jumped, e.g. after a MySQL restart.
+      for (long missingId = Math.max(this.lastId + 1, id - this.maxGaps); missingId < id; ++missingId) {
+        this.gaps.put(missingId, currentTime);
+      }
+
+      this.lastId = id;
+      while (this.gaps.size() > this.maxGaps) {
+        this.gaps.pollFirstEntry();
+      }
+
+      return true;
+    }
+
+    return this.gaps.remove(id) != null;
+  }
+
+  /**
+   * Forgets the gaps that weren't filled in time.
+   */
+  void expireGaps(long currentTime) {
+    this.gaps.values().removeIf(noticedAt -> currentTime - noticedAt >= this.gapTimeout);
+  }
+
+  long getLastId() {
+    return this.lastId;
+  }
+
+  Set<Long> getGaps() {
+    return this.gaps.keySet();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Event published by one proxy of the cluster and applied by the others.
+ */
+public final class ClusterMessage {
+
+  private final Type type;
+  private final String node;
+  private final String key;
+  @Nullable
+  private final String value;
+  private final long time;
+
+  public ClusterMessage(Type type, String node, String key, @Nullable String value, long time) {
+    this.type = type;
+    this.node = node;
+    this.key = key;
+    this.value = value;
+    this.time = time;
+  }
+
+  public Type getType() {
+    return this.type;
+  }
+
+  /**
+   * ID of the proxy that has published the message.
+   */
+  public String getNode() {
+    return this.node;
+  }
+
+  public String getKey() {
+    return this.key;
+  }
+
+  @Nullable
+  public String getValue() {
+    return this.value;
+  }
+
+  public long getTime() {
+    return this.time;
+  }
+
+  @Override
+  public String toString() {
+    return this.type + "{node=" + this.node + ", key=" + this.key + ", value=" + this.value + ", time=" + this.time + "}";
+  }
+
+  public enum Type {
+
+    /**
+     * The player has logged in. Key - lowercase nickname, value - nickname and address separated by a space, time - login time.
+     */
+    SESSION_GRANT,
+    /**
+     * The session was destroyed. Key - lowercase nickname.
+     */
+    SESSION_REVOKE,
+    /**
+     * Failed login attempts. Key - address, value - amount of the attempts.
+     */
+    BRUTEFORCE_FAILURES,
+    /**
+     * The address has logged in successfully. Key - address.
+     */
+    BRUTEFORCE_CLEAR,
+    /**
+     * The account was modified. Key - UUID (may be empty), value - lowercase nickname (may be null).
+     */
+    PLAYER_INVALIDATE
+  }
+}
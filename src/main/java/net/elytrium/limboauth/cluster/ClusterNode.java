@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.bruteforce.BruteforceTracker;
+import net.elytrium.limboauth.database.PlayerCache;
+import net.elytrium.limboauth.session.CachedSession;
+import net.elytrium.limboauth.session.SessionStore;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Shares the local auth state with the other proxies through the {@link ClusterTransport}: session grants and revocations,
+ * failed login attempts and player cache invalidations. The messages received from the other proxies are applied locally only,
+ * so they aren't published again.
+ */
+public class ClusterNode {
+
+  private final String id;
+  private final ClusterTransport transport;
+  private final SessionStore sessionStore;
+  private final boolean shareSessions;
+  private final BruteforceTracker bruteforceTracker;
+  private final PlayerCache playerCache;
+  // Failed attempts are published in batches, so an attack doesn't produce one event per attempt.
+  private final Map<String, AtomicInteger> pendingFailures = new ConcurrentHashMap<>();
+  private final AtomicLong published = new AtomicLong();
+  private final AtomicLong received = new AtomicLong();
+  private final BiConsumer<String, String> invalidationListener = this::playerInvalidated;
+
+  /**
+   * @param id            Unique ID of this proxy, random if null or empty.
+   * @param shareSessions Whether the sessions should be published, false if the session store is already shared.
+   */
+  public ClusterNode(@Nullable String id, ClusterTransport transport, SessionStore sessionStore, boolean shareSessions,
+      BruteforceTracker bruteforceTracker, PlayerCache playerCache) {
+    this.id = id == null || id.isEmpty() ? UUID.randomUUID().toString() : id;
+    this.transport = transport;
+    this.sessionStore = sessionStore;
+    this.shareSessions = shareSessions;
+    this.bruteforceTracker = bruteforceTracker;
+    this.playerCache = playerCache;
+  }
+
+  public void start() {
+    this.transport.start(this.id, this::handle);
+    this.playerCache.addInvalidationListener(this.invalidationListener);
+  }
+
+  public void sessionGranted(String lowercaseNickname, CachedSession session) {
+    if (this.shareSessions) {
+      String value = session.getUsername() + " " + session.getInetAddress().getHostAddress();
+      this.publish(ClusterMessage.Type.SESSION_GRANT, lowercaseNickname, value, session.getCheckTime());
+    }
+  }
+
+  public void sessionRevoked(String lowercaseNickname) {
+    if (this.shareSessions) {
+      this.publish(ClusterMessage.Type.SESSION_REVOKE, lowercaseNickname, null, System.currentTimeMillis());
+    }
+  }
+
+  public void bruteforceFailure(InetAddress address) {
+    this.pendingFailures.computeIfAbsent(address.getHostAddress(), key -> new AtomicInteger()).incrementAndGet();
+  }
+
+  public void bruteforceCleared(InetAddress address) {
+    String key = address.getHostAddress();
+    this.pendingFailures.remove(key);
+    this.publish(ClusterMessage.Type.BRUTEFORCE_CLEAR, key, null, System.currentTimeMillis());
+  }
+
+  private void playerInvalidated(@Nullable String uuid, @Nullable String lowercaseNickname) {
+    this.publish(ClusterMessage.Type.PLAYER_INVALIDATE, uuid == null ? "" : uuid, lowercaseNickname, System.currentTimeMillis());
+  }
+
+  /**
+   * Publishes the failed attempts counted since the previous flush.
+   */
+  public void flushFailures() {
+    long currentTime = System.currentTimeMillis();
+    this.pendingFailures.keySet().forEach(key -> {
+      AtomicInteger attempts = this.pendingFailures.remove(key);
+      if (attempts != null) {
+        this.publish(ClusterMessage.Type.BRUTEFORCE_FAILURES, key, String.valueOf(attempts.get()), currentTime);
+      }
+    });
+  }
+
+  private void publish(ClusterMessage.Type type, String key, @Nullable String value, long time) {
+    this.published.incrementAndGet();
+    this.transport.publish(new ClusterMessage(type, this.id, key, value, time));
+  }
+
+  private void handle(ClusterMessage message) {
+    this.received.incrementAndGet();
+    try {
+      switch (message.getType()) {
+        case SESSION_GRANT: {
+          String[] value = message.getValue().split(" ");
+          CachedSession session = new CachedSession(message.getTime(), InetAddress.getByName(value[1]), value[0]);
+          this.sessionStore.put(message.getKey(), session);
+          break;
+        }
+        case SESSION_REVOKE: {
+          this.sessionStore.remove(message.getKey());
+          break;
+        }
+        case BRUTEFORCE_FAILURES: {
+          InetAddress address = InetAddress.getByName(message.getKey());
+          int attempts = Integer.parseInt(message.getValue());
+          for (int i = 0; i < attempts; ++i) {
+            this.bruteforceTracker.recordFailure(address);
+          }
+          break;
+        }
+        case BRUTEFORCE_CLEAR: {
+          this.bruteforceTracker.clear(InetAddress.getByName(message.getKey()));
+          break;
+        }
+        case PLAYER_INVALIDATE: {
+          this.playerCache.invalidateLocally(message.getKey().isEmpty() ? null : message.getKey(), message.getValue());
+          break;
+        }
+        default: {
+          break;
+        }
+      }
+    } catch (UnknownHostException | RuntimeException e) {
+      // Addresses are always published as literals, so they are never resolved.
+      LimboAuth.getLogger().warn("Ignoring the malformed cluster message " + message + ".", e);
+    }
+  }
+
+  /**
+   * Publishes the pending failed attempts and stops receiving the messages.
+   */
+  public void close() {
+    this.flushFailures();
+    this.playerCache.removeInvalidationListener(this.invalidationListener);
+    this.transport.close();
+  }
+
+  public String getId() {
+    return this.id;
+  }
+
+  public long getPublished() {
+    return this.published.get();
+  }
+
+  public long getReceived() {
+    return this.received.get();
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Delivers the {@link ClusterMessage messages} between the proxies.
+ * Transports don't have to guarantee the delivery order or exactly-once delivery, every message is idempotent enough.
+ */
+public interface ClusterTransport {
+
+  /**
+   * Starts receiving the messages published by the other nodes. The node's own messages must not be delivered back.
+   */
+  void start(String node, Consumer<ClusterMessage> listener);
+
+  void publish(ClusterMessage message);
+
+  void close();
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.Where;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.model.ClusterEvent;
+
+/**
+ * Exchanges the messages through the CLUSTER_EVENTS table: every node appends its events and polls the ones
+ * with the greater ID, as well as the lower IDs that were missing in the previous polls (see {@link ClusterEventCursor}).
+ * The old events are deleted by every node after the retention time.
+ * The queries are executed on the {@link PlayerRepository} executor, as the file databases share a single connection,
+ * and the transactions of the other queries must not include or roll back the polls.
+ */
+public class DatabaseClusterTransport implements ClusterTransport {
+
+  private static final long MAX_EVENTS_PER_POLL = 1000;
+  // Kept below the 999 parameters limit of the older SQLite versions.
+  private static final int MAX_GAPS = 500;
+  private static final long GAP_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+  private final Dao<ClusterEvent, Long> eventDao;
+  private final PlayerRepository playerRepository;
+  private final long pollInterval;
+  private final long retention;
+  private final ScheduledThreadPoolExecutor scheduler;
+
+  private String node;
+  private Consumer<ClusterMessage> listener;
+  // Accessed by one poll at a time, the scheduler waits for every poll to finish on the repository executor.
+  private final ClusterEventCursor cursor = new ClusterEventCursor(GAP_TIMEOUT, MAX_GAPS);
+  private long lastCleanup;
+
+  /**
+   * @param pollInterval Delay between the polls in milliseconds.
+   * @param retention    Time in milliseconds after which the events are deleted, should be much longer than the poll interval.
+   */
+  public DatabaseClusterTransport(Dao<ClusterEvent, Long> eventDao, PlayerRepository playerRepository, long pollInterval, long retention) {
+    this.eventDao = eventDao;
+    this.playerRepository = playerRepository;
+    this.pollInterval = Math.max(1, pollInterval);
+    this.retention = retention;
+
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth cluster poller");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public void start(String node, Consumer<ClusterMessage> listener) {
+    this.node = node;
+    this.listener = listener;
+    this.scheduler.execute(() -> {
+      try {
+        // The events published before the start are skipped, the state they describe is either in the database or stale.
+        DatabaseType databaseType = this.eventDao.getConnectionSource().getDatabaseType();
+        StringBuilder builder = new StringBuilder("SELECT MAX(");
+        databaseType.appendEscapedEntityName(builder, ClusterEvent.ID_FIELD);
+        builder.append(") FROM ");
+        databaseType.appendEscapedEntityName(builder, this.eventDao.getTableName());
+        this.cursor.reset(this.playerRepository.supply(() -> this.eventDao.queryRawValue(builder.toString())).join());
+      } catch (RuntimeException e) {
+        LimboAuth.getLogger().error("Unable to fetch the last cluster event, polling from the beginning.", e);
+      }
+    });
+    this.scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        this.playerRepository.supply(() -> {
+          this.poll();
+          return null;
+        }).join();
+      } catch (Throwable e) {
+        LimboAuth.getLogger().error("Unable to poll the cluster events.", e);
+      }
+    }, this.pollInterval, this.pollInterval, TimeUnit.MILLISECONDS);
+  }
+
+  private void poll() throws SQLException {
+    long currentTime = System.currentTimeMillis();
+    this.cursor.expireGaps(currentTime);
+    List<ClusterEvent> events;
+    do {
+      QueryBuilder<ClusterEvent, Long> queryBuilder = this.eventDao.queryBuilder();
+      Where<ClusterEvent, Long> where = queryBuilder.where().gt(ClusterEvent.ID_FIELD, this.cursor.getLastId());
+      if (!this.cursor.getGaps().isEmpty()) {
+        where.or().in(ClusterEvent.ID_FIELD, new ArrayList<>(this.cursor.getGaps()));
+      }
+
+      events = this.eventDao.query(queryBuilder.orderBy(ClusterEvent.ID_FIELD, true).limit(MAX_EVENTS_PER_POLL).prepare());
+      for (ClusterEvent event : events) {
+        if (this.cursor.accept(event.getId(), currentTime) && !this.node.equals(event.getNode())) {
+          this.deliver(event);
+        }
+      }
+    } while (events.size() == MAX_EVENTS_PER_POLL);
+
+    if (currentTime - this.lastCleanup >= this.retention) {
+      this.lastCleanup = currentTime;
+      DeleteBuilder<ClusterEvent, Long> deleteBuilder = this.eventDao.deleteBuilder();
+      deleteBuilder.where().lt(ClusterEvent.CREATED_FIELD, currentTime - this.retention);
+      deleteBuilder.delete();
+    }
+  }
+
+  private void deliver(ClusterEvent event) {
+    ClusterMessage.Type type;
+    try {
+      type = ClusterMessage.Type.valueOf(event.getType());
+    } catch (IllegalArgumentException e) {
+      // Published by a newer version of the plugin.
+      return;
+    }
+
+    this.listener.accept(new ClusterMessage(type, event.getNode(), event.getKey(), event.getValue(), event.getTime()));
+  }
+
+  @Override
+  public void publish(ClusterMessage message) {
+    ClusterEvent event = new ClusterEvent(message.getNode(), message.getType().name(), message.getKey(), message.getValue(),
+        message.getTime(), System.currentTimeMillis());
+    this.playerRepository.supply(() -> this.eventDao.create(event)).exceptionally(e -> {
+      LimboAuth.getLogger().error("Unable to publish the cluster event " + message + ".", e);
+      return null;
+    });
+  }
+
+  @Override
+  public void close() {
+    this.scheduler.shutdownNow();
+    try {
+      // The poll may be using the connection that is about to be closed.
+      this.scheduler.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
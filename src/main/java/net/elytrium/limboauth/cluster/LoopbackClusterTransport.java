@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the messages synchronously between the transports of the same {@link Network} in this JVM.
+ * Intended for testing the cluster mode with several plugin instances without a shared database.
+ */
+public class LoopbackClusterTransport implements ClusterTransport {
+
+  private final Network network;
+  private String node;
+
+  public LoopbackClusterTransport(Network network) {
+    this.network = network;
+  }
+
+  @Override
+  public void start(String node, Consumer<ClusterMessage> listener) {
+    this.node = node;
+    this.network.listeners.put(node, listener);
+  }
+
+  @Override
+  public void publish(ClusterMessage message) {
+    this.network.listeners.forEach((node, listener) -> {
+      if (!node.equals(message.getNode())) {
+        listener.accept(message);
+      }
+    });
+  }
+
+  @Override
+  public void close() {
+    if (this.node != null) {
+      this.network.listeners.remove(this.node);
+    }
+  }
+
+  public static class Network {
+
+    public static final Network SHARED = new Network();
+
+    private final Map<String, Consumer<ClusterMessage>> listeners = new ConcurrentHashMap<>();
+
+    public int getNodes() {
+      return this.listeners.size();
+    }
+  }
+}
@@ -17,28 +17,26 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
-import java.sql.SQLException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
 import net.elytrium.limboauth.event.ChangePasswordEvent;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.hash.HashingExecutor;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
-import net.elytrium.limboauth.model.UUIDType;
 import net.kyori.adventure.text.Component;
 
 public class ChangePasswordCommand implements SimpleCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final boolean needOldPass;
   private final Component notRegistered;
@@ -46,11 +44,12 @@ public class ChangePasswordCommand implements SimpleCommand {
   private final Component successful;
   private final Component errorOccurred;
   private final Component usage;
+  private final Component serverBusy;
   private final Component notPlayer;
 
-  public ChangePasswordCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public ChangePasswordCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.needOldPass = Settings.IMP.MAIN.CHANGE_PASSWORD_NEED_OLD_PASSWORD;
@@ -59,6 +58,7 @@ public class ChangePasswordCommand implements SimpleCommand {
     this.successful = serializer.deserialize(Settings.IMP.MAIN.STRINGS.CHANGE_PASSWORD_SUCCESSFUL);
     this.errorOccurred = serializer.deserialize(Settings.IMP.MAIN.STRINGS.ERROR_OCCURRED);
     this.usage = serializer.deserialize(Settings.IMP.MAIN.STRINGS.CHANGE_PASSWORD_USAGE);
+    this.serverBusy = serializer.deserialize(Settings.IMP.MAIN.STRINGS.SERVER_BUSY);
     this.notPlayer = serializer.deserialize(Settings.IMP.MAIN.STRINGS.NOT_PLAYER);
   }
 
@@ -70,50 +70,50 @@ public class ChangePasswordCommand implements SimpleCommand {
     if (source instanceof Player) {
       UUID uuid = ((Player) source).getUniqueId();
       String username = ((Player) source).getUsername();
-      RegisteredPlayer player = AuthSessionHandler.fetchInfo(this.playerDao, uuid);
-
-      if (player == null) {
-        source.sendMessage(this.notRegistered);
-        return;
-      }
-
-      boolean onlineMode = player.getHash().isEmpty();
-      boolean needOldPass = this.needOldPass && !onlineMode;
-      if (needOldPass) {
-        if (args.length < 2) {
-          source.sendMessage(this.usage);
-          return;
+      this.playerRepository.fetchByUuid(uuid).thenComposeAsync(player -> {
+        if (player == null) {
+          source.sendMessage(this.notRegistered);
+          return CompletableFuture.completedFuture(null);
         }
 
-        if (!AuthSessionHandler.checkPassword(args[0], player, this.playerDao)) {
-          source.sendMessage(this.wrongPassword);
-          return;
+        boolean onlineMode = player.getHash().isEmpty();
+        boolean needOldPass = this.needOldPass && !onlineMode;
+        if (needOldPass) {
+          if (args.length < 2) {
+            source.sendMessage(this.usage);
+            return CompletableFuture.completedFuture(null);
+          }
+
+          if (!AuthSessionHandler.checkPassword(args[0], player, this.playerRepository)) {
+            source.sendMessage(this.wrongPassword);
+            return CompletableFuture.completedFuture(null);
+          }
+        } else if (args.length < 1) {
+          source.sendMessage(this.usage);
+          return CompletableFuture.completedFuture(null);
         }
-      } else if (args.length < 1) {
-        source.sendMessage(this.usage);
-        return;
-      }
 
-      try {
         final String oldHash = player.getHash();
         final String newPassword = needOldPass ? args[1] : args[0];
         final String newHash = RegisteredPlayer.genHash(newPassword);
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder = playerDao.updateBuilder();
-        updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, RegisteredPlayer.genHash(needOldPass ? args[1] : args[0]));
-        updateBuilder.where().eq(RegisteredPlayer.UUID_FIELD, uuid);
-        updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, newHash);
-        updateBuilder.update();
-
-        this.plugin.removePlayerFromCache(username);
-
-        this.plugin.getServer().getEventManager().fireAndForget(
-            new ChangePasswordEvent(player, needOldPass ? args[0] : null, oldHash, newPassword, newHash));
-
-        source.sendMessage(this.successful);
-      } catch (SQLException e) {
-        source.sendMessage(this.errorOccurred);
-        throw new SQLRuntimeException(e);
-      }
+        return this.playerRepository.updateHash(uuid, newHash).thenRun(() -> {
+          this.plugin.removePlayerFromCache(username);
+
+          this.plugin.getServer().getEventManager().fireAndForget(
+              new ChangePasswordEvent(player, needOldPass ? args[0] : null, oldHash, newPassword, newHash));
+
+          source.sendMessage(this.successful);
+        });
+      }, this.plugin.getHashingExecutor()).exceptionally(e -> {
+        if (HashingExecutor.isBusy(e)) {
+          source.sendMessage(this.serverBusy);
+        } else {
+          source.sendMessage(this.errorOccurred);
+          LimboAuth.getLogger().error("Unable to change the password of " + username + ".", e);
+        }
+
+        return null;
+      });
     } else {
       source.sendMessage(this.notPlayer);
     }
@@ -17,47 +17,46 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.ProxyServer;
-import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.commons.velocity.commands.SuggestUtils;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
 import net.elytrium.limboauth.event.ChangePasswordEvent;
-import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.hash.HashingExecutor;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
 import net.kyori.adventure.text.Component;
 
 public class ForceChangePasswordCommand implements SimpleCommand {
 
   private final LimboAuth plugin;
   private final ProxyServer server;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final String message;
   private final String successful;
   private final String notSuccessful;
   private final String notRegistered;
   private final Component usage;
+  private final Component serverBusy;
 
-  public ForceChangePasswordCommand(LimboAuth plugin, ProxyServer server, Dao<RegisteredPlayer, String> playerDao) {
+  public ForceChangePasswordCommand(LimboAuth plugin, ProxyServer server, PlayerRepository playerRepository) {
     this.plugin = plugin;
     this.server = server;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     this.message = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_MESSAGE;
     this.successful = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_SUCCESSFUL;
     this.notSuccessful = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_NOT_SUCCESSFUL;
     this.notRegistered = Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_NOT_REGISTERED;
     this.usage = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_CHANGE_PASSWORD_USAGE);
+    this.serverBusy = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.SERVER_BUSY);
   }
 
   @Override
@@ -75,33 +74,34 @@ public class ForceChangePasswordCommand implements SimpleCommand {
       String newPassword = args[1];
 
       Serializer serializer = LimboAuth.getSerializer();
-      try {
-        RegisteredPlayer registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, nickname);
-
+      this.playerRepository.fetchByNickname(nickname).thenComposeAsync(registeredPlayer -> {
         if (registeredPlayer == null) {
           source.sendMessage(serializer.deserialize(MessageFormat.format(this.notRegistered, nickname)));
-          return;
+          return CompletableFuture.completedFuture(null);
         }
 
         final String oldHash = registeredPlayer.getHash();
         final String newHash = RegisteredPlayer.genHash(newPassword);
 
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
-        updateBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname.toLowerCase(Locale.ROOT));
-        updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, newHash);
-        updateBuilder.update();
-
-        this.plugin.removePlayerFromCache(nickname);
-        this.server.getPlayer(nickname)
-            .ifPresent(player -> player.sendMessage(serializer.deserialize(MessageFormat.format(this.message, newPassword))));
-
-        this.plugin.getServer().getEventManager().fireAndForget(new ChangePasswordEvent(registeredPlayer, null, oldHash, newPassword, newHash));
+        return this.playerRepository.updateHashByNickname(nickname, newHash).thenRun(() -> {
+          this.plugin.removePlayerFromCache(nickname);
+          this.server.getPlayer(nickname)
+              .ifPresent(player -> player.sendMessage(serializer.deserialize(MessageFormat.format(this.message, newPassword))));
+
+          this.plugin.getServer().getEventManager().fireAndForget(new ChangePasswordEvent(registeredPlayer, null, oldHash, newPassword, newHash));
+
+          source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, nickname)));
+        });
+      }, this.plugin.getHashingExecutor()).exceptionally(e -> {
+        if (HashingExecutor.isBusy(e)) {
+          source.sendMessage(this.serverBusy);
+        } else {
+          source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, nickname)));
+          LimboAuth.getLogger().error("Unable to change the password of " + nickname + ".", e);
+        }
 
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, nickname)));
-      } catch (SQLException e) {
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, nickname)));
-        throw new SQLRuntimeException(e);
-      }
+        return null;
+      });
     } else {
       source.sendMessage(this.usage);
     }
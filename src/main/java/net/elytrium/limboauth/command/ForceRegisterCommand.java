@@ -17,40 +17,41 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
-import java.sql.SQLException;
 import java.text.MessageFormat;
-import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 import com.velocitypowered.api.util.UuidUtils;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.hash.HashingExecutor;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
 import net.elytrium.limboauth.model.UUIDType;
 import net.kyori.adventure.text.Component;
 
 public class ForceRegisterCommand implements SimpleCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final String successful;
   private final String notSuccessful;
   private final Component usage;
+  private final Component serverBusy;
   private final Component takenNickname;
   private final Component incorrectNickname;
 
-  public ForceRegisterCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public ForceRegisterCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     this.successful = Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_SUCCESSFUL;
     this.notSuccessful = Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_NOT_SUCCESSFUL;
     this.usage = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_USAGE);
+    this.serverBusy = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.SERVER_BUSY);
     this.takenNickname = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_TAKEN_NICKNAME);
     this.incorrectNickname = LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.FORCE_REGISTER_INCORRECT_NICKNAME);
   }
@@ -72,26 +73,31 @@ public class ForceRegisterCommand implements SimpleCommand {
       String uuid = UuidUtils.generateOfflinePlayerUuid(nickname).toString();
 
       Serializer serializer = LimboAuth.getSerializer();
-      try {
-        if (!this.plugin.getNicknameValidationPattern().matcher(nickname).matches()) {
-          source.sendMessage(this.incorrectNickname);
-          return;
-        }
+      if (!this.plugin.getNicknameValidationPattern().matcher(nickname).matches()) {
+        source.sendMessage(this.incorrectNickname);
+        return;
+      }
 
-        String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
-        if (this.playerDao.idExists(lowercaseNickname)) {
+      String finalNickname = nickname;
+      this.playerRepository.fetchByNickname(nickname).thenComposeAsync(registeredPlayer -> {
+        if (registeredPlayer != null) {
           source.sendMessage(this.takenNickname);
-          return;
+          return CompletableFuture.completedFuture(null);
         }
 
-        RegisteredPlayer player = new RegisteredPlayer(nickname, uuid, "", UUIDType.JAVA_OFFLINE).setPassword(password);
-        this.playerDao.create(player);
+        RegisteredPlayer player = new RegisteredPlayer(finalNickname, uuid, "", UUIDType.JAVA_OFFLINE).setPassword(password);
+        return this.playerRepository.create(player)
+            .thenRun(() -> source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, finalNickname))));
+      }, this.plugin.getHashingExecutor()).exceptionally(e -> {
+        if (HashingExecutor.isBusy(e)) {
+          source.sendMessage(this.serverBusy);
+        } else {
+          source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, finalNickname)));
+          LimboAuth.getLogger().error("Unable to register " + finalNickname + ".", e);
+        }
 
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, nickname)));
-      } catch (SQLException e) {
-        source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, nickname)));
-        throw new SQLRuntimeException(e);
-      }
+        return null;
+      });
     } else {
       source.sendMessage(this.usage);
     }
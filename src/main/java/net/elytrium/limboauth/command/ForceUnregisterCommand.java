@@ -17,39 +17,34 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.DeleteBuilder;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.ProxyServer;
-import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.List;
-import java.util.Locale;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.commons.velocity.commands.SuggestUtils;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
 import net.elytrium.limboauth.event.AuthUnregisterEvent;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
 import net.kyori.adventure.text.Component;
 
 public class ForceUnregisterCommand implements SimpleCommand {
 
   private final LimboAuth plugin;
   private final ProxyServer server;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final Component kick;
   private final String successful;
   private final String notSuccessful;
   private final Component usage;
 
-  public ForceUnregisterCommand(LimboAuth plugin, ProxyServer server, Dao<RegisteredPlayer, String> playerDao) {
+  public ForceUnregisterCommand(LimboAuth plugin, ProxyServer server, PlayerRepository playerRepository) {
     this.plugin = plugin;
     this.server = server;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.kick = serializer.deserialize(Settings.IMP.MAIN.STRINGS.FORCE_UNREGISTER_KICK);
@@ -72,18 +67,16 @@ public class ForceUnregisterCommand implements SimpleCommand {
       String playerNick = args[0];
 
       Serializer serializer = LimboAuth.getSerializer();
-      try {
-        this.plugin.getServer().getEventManager().fireAndForget(new AuthUnregisterEvent(playerNick));
-        DeleteBuilder<RegisteredPlayer, String> deleteBuilder = this.playerDao.deleteBuilder();
-        deleteBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, playerNick.toLowerCase(Locale.ROOT));
-        deleteBuilder.delete();
+      this.plugin.getServer().getEventManager().fireAndForget(new AuthUnregisterEvent(playerNick));
+      this.playerRepository.deleteByNickname(playerNick).thenRun(() -> {
         this.plugin.removePlayerFromCache(playerNick);
         this.server.getPlayer(playerNick).ifPresent(player -> player.disconnect(this.kick));
         source.sendMessage(serializer.deserialize(MessageFormat.format(this.successful, playerNick)));
-      } catch (SQLException e) {
+      }).exceptionally(e -> {
         source.sendMessage(serializer.deserialize(MessageFormat.format(this.notSuccessful, playerNick)));
-        throw new SQLRuntimeException(e);
-      }
+        LimboAuth.getLogger().error("Unable to unregister " + playerNick + ".", e);
+        return null;
+      });
     } else {
       source.sendMessage(this.usage);
     }
@@ -18,14 +18,44 @@
 package net.elytrium.limboauth.command;
 
 import com.google.common.collect.ImmutableList;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.admission.AdmissionController;
+import net.elytrium.limboauth.cluster.ClusterNode;
+import net.elytrium.limboauth.database.PlayerCache;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.database.SchemaMigrator;
+import net.elytrium.limboauth.database.StorageMigrator;
+import net.elytrium.limboauth.dependencies.DatabaseLibrary;
+import net.elytrium.limboauth.importer.AccountBackupReader;
+import net.elytrium.limboauth.importer.AccountBackupWriter;
+import net.elytrium.limboauth.importer.AccountExporter;
+import net.elytrium.limboauth.importer.AccountImporter;
+import net.elytrium.limboauth.importer.CsvImportSource;
+import net.elytrium.limboauth.importer.ImportFormat;
+import net.elytrium.limboauth.importer.ImportProgress;
+import net.elytrium.limboauth.importer.JdbcImportSource;
+import net.elytrium.limboauth.metrics.LatencyHistogram;
+import net.elytrium.limboauth.metrics.MetricsRegistry;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.premium.PremiumResolver;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
@@ -40,6 +70,19 @@ public class LimboAuthCommand implements SimpleCommand {
 
   private static final Component AVAILABLE_SUBCOMMANDS_MESSAGE = Component.text("Available subcommands:", NamedTextColor.WHITE);
   private static final Component NO_AVAILABLE_SUBCOMMANDS_MESSAGE = Component.text("There is no available subcommands for you.", NamedTextColor.WHITE);
+  private static final List<Component> IMPORT_USAGE_MESSAGE = List.of(
+      Component.text("Usage:", NamedTextColor.WHITE),
+      Component.text("  /limboauth import <authme|nlogin> <jdbc url> [user] [password] [table]", NamedTextColor.YELLOW),
+      Component.text("  /limboauth import <csv|backup> <file in the plugin folder>", NamedTextColor.YELLOW),
+      Component.text("  /limboauth import stop", NamedTextColor.YELLOW)
+  );
+  private static final Component OUTSIDE_DATA_DIRECTORY_MESSAGE = Component.text("The file must be inside the plugin folder.", NamedTextColor.RED);
+  private static final List<String> IMPORT_ARGUMENTS = List.of("authme", "nlogin", "csv", "backup", "stop");
+  private static final long IMPORT_REPORT_INTERVAL = 2000;
+  private static final int PROGRESS_BAR_LENGTH = 20;
+  private static final AtomicReference<AccountImporter> RUNNING_IMPORT = new AtomicReference<>();
+  private static final AtomicBoolean RUNNING_EXPORT = new AtomicBoolean();
+  private static final AtomicBoolean RUNNING_MIGRATION = new AtomicBoolean();
 
   private final LimboAuth plugin;
 
@@ -64,6 +107,11 @@ public class LimboAuthCommand implements SimpleCommand {
           .map(Subcommand::getCommand)
           .filter(str -> str.regionMatches(true, 0, argument, 0, argument.length()))
           .collect(Collectors.toList());
+    } else if (args.length == 2 && args[0].equalsIgnoreCase(Subcommand.IMPORT.getCommand()) && Subcommand.IMPORT.hasPermission(source)) {
+      String argument = args[1];
+      return IMPORT_ARGUMENTS.stream()
+          .filter(str -> str.regionMatches(true, 0, argument, 0, argument.length()))
+          .collect(Collectors.toList());
     } else {
       return ImmutableList.of();
     }
@@ -113,12 +161,286 @@ public class LimboAuthCommand implements SimpleCommand {
     }
   }
 
+  private void importAccounts(CommandSource source, String[] args) {
+    if (args.length == 2 && args[1].equalsIgnoreCase("stop")) {
+      AccountImporter importer = RUNNING_IMPORT.get();
+      if (importer == null) {
+        source.sendMessage(Component.text("There is no running import.", NamedTextColor.RED));
+      } else {
+        importer.stop();
+        source.sendMessage(Component.text("Stopping the import, run the same import command again to resume it.", NamedTextColor.YELLOW));
+      }
+
+      return;
+    }
+
+    ImportFormat format = null;
+    if (args.length >= 3) {
+      try {
+        format = ImportFormat.valueOf(args[1].toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        // Show the usage below.
+      }
+    }
+
+    boolean fileFormat = format == ImportFormat.CSV || format == ImportFormat.BACKUP;
+    if (format == null || (fileFormat ? args.length != 3 : args.length > 6)) {
+      IMPORT_USAGE_MESSAGE.forEach(source::sendMessage);
+      return;
+    }
+
+    Path dataDirectory = this.plugin.getDataDirectory();
+    int batchSize = Settings.IMP.DATABASE.IMPORT_BATCH_SIZE;
+    String sourceId;
+    AccountImporter.SourceOpener opener;
+    if (fileFormat) {
+      Path file = resolveInside(dataDirectory, args[2]);
+      if (file == null) {
+        source.sendMessage(OUTSIDE_DATA_DIRECTORY_MESSAGE);
+        return;
+      }
+
+      sourceId = format.name().toLowerCase(Locale.ROOT) + " " + file;
+      opener = format == ImportFormat.CSV ? position -> new CsvImportSource(file, position) : position -> new AccountBackupReader(file, position);
+    } else {
+      ImportFormat jdbcFormat = format;
+      String jdbc = args[2];
+      String user = args.length > 3 ? args[3] : null;
+      String password = args.length > 4 ? args[4] : null;
+      String table = args.length > 5 ? args[5] : format.getDefaultTable();
+      // The ID is saved to the checkpoint file, so it doesn't include the password.
+      sourceId = format.name().toLowerCase(Locale.ROOT) + " " + jdbc + " " + table;
+      opener = position -> JdbcImportSource.open(dataDirectory, jdbc, user, password, jdbcFormat, table, position, batchSize);
+    }
+
+    // The backup is restored as it is, even if the nickname pattern has been changed since then.
+    AccountImporter importer = new AccountImporter(this.plugin.getPlayerRepository(),
+        format == ImportFormat.BACKUP ? null : this.plugin.getNicknameValidationPattern(), dataDirectory.resolve("import.checkpoint"), batchSize);
+    if (RUNNING_MIGRATION.get() || !RUNNING_IMPORT.compareAndSet(null, importer)) {
+      source.sendMessage(Component.text("Another import or a migration is running.", NamedTextColor.RED));
+      return;
+    }
+
+    source.sendMessage(Component.text("Importing the accounts from " + sourceId + "...", NamedTextColor.YELLOW));
+    Thread thread = new Thread(() -> {
+      try {
+        ImportProgress progress = importer.run(sourceId, opener, report -> source.sendMessage(progressLine(report)), IMPORT_REPORT_INTERVAL);
+        this.plugin.getPremiumClassifier().invalidateAll();
+        source.sendMessage(Component.text(progress.isFinished()
+            ? "The import has been finished in " + progress.getElapsedMillis() / 1000 + " seconds."
+            : "The import has been stopped, run the same import command again to resume it.", NamedTextColor.GREEN));
+      } catch (Throwable e) {
+        LimboAuth.getLogger().error("Unable to import the accounts from " + sourceId, e);
+        source.sendMessage(Component.text("The import has failed: " + e.getMessage()
+            + ". Run the same import command again to resume it.", NamedTextColor.RED));
+      } finally {
+        RUNNING_IMPORT.set(null);
+      }
+    }, "LimboAuth importer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Resolves the file path against the plugin folder, returns null if the path leads outside of it.
+   */
+  private static Path resolveInside(Path dataDirectory, String path) {
+    Path directory = dataDirectory.toAbsolutePath().normalize();
+    Path file = directory.resolve(path).toAbsolutePath().normalize();
+    return file.startsWith(directory) ? file : null;
+  }
+
+  private void exportAccounts(CommandSource source, String[] args) {
+    if (args.length > 2) {
+      source.sendMessage(Component.text("Usage: /limboauth export [file in the plugin folder]", NamedTextColor.YELLOW));
+      return;
+    }
+
+    Path dataDirectory = this.plugin.getDataDirectory();
+    String defaultName = "backups/limboauth-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + AccountBackupWriter.EXTENSION;
+    Path file = resolveInside(dataDirectory, args.length == 2 ? args[1] : defaultName);
+    if (file == null) {
+      source.sendMessage(OUTSIDE_DATA_DIRECTORY_MESSAGE);
+      return;
+    }
+
+    if (!RUNNING_EXPORT.compareAndSet(false, true)) {
+      source.sendMessage(Component.text("Another export is running.", NamedTextColor.RED));
+      return;
+    }
+
+    AccountExporter exporter = new AccountExporter(this.plugin.getPlayerRepository(), Settings.IMP.DATABASE.IMPORT_BATCH_SIZE);
+    source.sendMessage(Component.text("Exporting the accounts to " + file + "...", NamedTextColor.YELLOW));
+    Thread thread = new Thread(() -> {
+      try {
+        Files.createDirectories(file.getParent());
+        long startTime = System.currentTimeMillis();
+        long exported = exporter.export(file,
+            count -> source.sendMessage(Component.text(count + " accounts exported...", NamedTextColor.YELLOW)), IMPORT_REPORT_INTERVAL);
+        source.sendMessage(Component.text(exported + " accounts have been exported in " + (System.currentTimeMillis() - startTime) / 1000
+            + " seconds, restore them with /limboauth import backup " + dataDirectory.relativize(file), NamedTextColor.GREEN));
+      } catch (IOException | RuntimeException e) {
+        LimboAuth.getLogger().error("Unable to export the accounts to " + file, e);
+        source.sendMessage(Component.text("The export has failed: " + e.getMessage(), NamedTextColor.RED));
+      } finally {
+        RUNNING_EXPORT.set(false);
+      }
+    }, "LimboAuth exporter");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void migrateStorage(CommandSource source, String[] args) {
+    DatabaseLibrary storageType = null;
+    if (args.length >= 2) {
+      try {
+        storageType = DatabaseLibrary.valueOf(args[1].toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        // Show the usage below.
+      }
+    }
+
+    if (storageType == null || (storageType.isPooled() ? args.length != 6 : args.length != 2)) {
+      source.sendMessage(Component.text("Usage:", NamedTextColor.WHITE));
+      source.sendMessage(Component.text("  /limboauth migrate <mysql|mariadb|postgresql> <hostname> <database> <user> <password>", NamedTextColor.YELLOW));
+      source.sendMessage(Component.text("  /limboauth migrate <sqlite|h2>", NamedTextColor.YELLOW));
+      return;
+    }
+
+    Settings.DATABASE dbConfig = Settings.IMP.DATABASE;
+    // The file-based databases don't use these settings, so they are kept as they are.
+    String hostname = storageType.isPooled() ? args[2] : dbConfig.HOSTNAME;
+    String database = storageType.isPooled() ? args[3] : dbConfig.DATABASE;
+    String user = storageType.isPooled() ? args[4] : dbConfig.USER;
+    String password = storageType.isPooled() ? args[5] : dbConfig.PASSWORD;
+    if (storageType == dbConfig.STORAGE_TYPE && (!storageType.isPooled() || (hostname.equals(dbConfig.HOSTNAME) && database.equals(dbConfig.DATABASE)))) {
+      source.sendMessage(Component.text("This database is already used.", NamedTextColor.RED));
+      return;
+    }
+
+    if (RUNNING_IMPORT.get() != null || !RUNNING_MIGRATION.compareAndSet(false, true)) {
+      source.sendMessage(Component.text("Another migration or an import is running.", NamedTextColor.RED));
+      return;
+    }
+
+    DatabaseLibrary targetType = storageType;
+    source.sendMessage(Component.text("Migrating the accounts to " + targetType + ", the current database is used until the end of the migration.",
+        NamedTextColor.YELLOW));
+    Thread thread = new Thread(() -> {
+      StorageMigrator migrator = null;
+      ConnectionSource targetConnectionSource = null;
+      try {
+        targetConnectionSource = targetType.connectToORM(this.plugin.getDataDirectory().toAbsolutePath(),
+            hostname, database + dbConfig.CONNECTION_PARAMETERS, user, password);
+        TableUtils.createTableIfNotExists(targetConnectionSource, RegisteredPlayer.class);
+        Dao<RegisteredPlayer, String> targetDao = DaoManager.createDao(targetConnectionSource, RegisteredPlayer.class);
+        new SchemaMigrator(targetDao, targetType, database).migrate();
+
+        // The file-based databases have a single connection, so they are written by one thread.
+        int threads = targetType.isPooled() ? Math.max(1, dbConfig.POOL.MAX_SIZE) : 1;
+        migrator = new StorageMigrator(this.plugin.getPlayerRepository(), targetDao, dbConfig.IMPORT_BATCH_SIZE, threads);
+        long startTime = System.currentTimeMillis();
+        migrator.migrate(message -> source.sendMessage(Component.text(message, NamedTextColor.YELLOW)), IMPORT_REPORT_INTERVAL);
+        migrator.copyChanged();
+        source.sendMessage(Component.text("Switching to " + targetType + "...", NamedTextColor.YELLOW));
+        this.plugin.switchDatabase(migrator, targetType, hostname, database, user, password);
+        source.sendMessage(Component.text("The accounts have been migrated in " + (System.currentTimeMillis() - startTime) / 1000
+            + " seconds, " + targetType + " is used now.", NamedTextColor.GREEN));
+      } catch (Throwable e) {
+        LimboAuth.getLogger().error("Unable to migrate the accounts to " + targetType, e);
+        source.sendMessage(Component.text("The migration has failed, the database has not been switched: " + e.getMessage(), NamedTextColor.RED));
+      } finally {
+        if (migrator != null) {
+          migrator.close();
+        }
+
+        if (targetConnectionSource != null) {
+          targetConnectionSource.closeQuietly();
+        }
+
+        RUNNING_MIGRATION.set(false);
+      }
+    }, "LimboAuth storage migration");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private static Component progressLine(ImportProgress progress) {
+    double fraction = progress.getFraction();
+    StringBuilder bar = new StringBuilder("[");
+    int filled = fraction < 0 ? 0 : (int) (fraction * PROGRESS_BAR_LENGTH);
+    for (int i = 0; i < PROGRESS_BAR_LENGTH; ++i) {
+      bar.append(i < filled ? '#' : '-');
+    }
+
+    bar.append("] ").append(fraction < 0 ? "?" : String.format(Locale.ROOT, "%.1f", fraction * 100)).append('%');
+    return Component.textOfChildren(
+        Component.text(bar.toString(), NamedTextColor.GREEN),
+        Component.text(" | ", NamedTextColor.DARK_GRAY),
+        Component.text(progress.getImported() + " imported, " + progress.getSkipped() + " skipped, "
+            + String.format(Locale.ROOT, "%.0f", progress.getRate()) + " accounts/s", NamedTextColor.YELLOW)
+    );
+  }
+
   private enum Subcommand {
     RELOAD("Reload config.", Settings.IMP.MAIN.COMMAND_PERMISSION_STATE.RELOAD,
         (LimboAuthCommand parent, CommandSource source, String[] args) -> {
           parent.plugin.reload();
           source.sendMessage(LimboAuth.getSerializer().deserialize(Settings.IMP.MAIN.STRINGS.RELOAD));
-        });
+        }),
+    STATS("Show cache, database and latency statistics.", Settings.IMP.MAIN.COMMAND_PERMISSION_STATE.STATS,
+        (LimboAuthCommand parent, CommandSource source, String[] args) -> {
+          PlayerRepository playerRepository = parent.plugin.getPlayerRepository();
+          PlayerCache playerCache = playerRepository.getCache();
+          long hits = playerCache.getHitCount();
+          long misses = playerCache.getMissCount();
+          long requests = hits + misses;
+          source.sendMessage(statsLine("Player cache",
+              hits + " hits, " + misses + " misses ("
+                  + String.format(Locale.ROOT, "%.1f", requests == 0 ? 0.0 : hits * 100.0 / requests) + "% hit rate), "
+                  + playerCache.getSize() + " entries"));
+          long registeredPlayers = playerRepository.getRegisteredPlayers();
+          source.sendMessage(statsLine("Registered accounts", registeredPlayers == -1 ? "not counted yet" : String.valueOf(registeredPlayers)));
+          source.sendMessage(statsLine("Database queue", playerRepository.getQueuedQueries() + " queries"));
+          source.sendMessage(statsLine("Pending login updates", String.valueOf(playerRepository.getPendingLoginUpdates())));
+          source.sendMessage(statsLine("Players in the auth limbo", String.valueOf(parent.plugin.getAuthSessionTicker().getSessions())));
+          AdmissionController admissionController = parent.plugin.getAdmissionController();
+          source.sendMessage(statsLine("Admission", admissionController.getActiveSessions() + " authenticating, "
+              + admissionController.getWaitingPlayers() + " waiting, " + admissionController.getAdmittedCount() + " admitted, "
+              + admissionController.getRejectedCount() + " rejected"));
+          source.sendMessage(statsLine("Online mode failures", parent.plugin.getLoginFailureTracker().getSize() + " tracked, "
+              + parent.plugin.getLoginFailureTracker().getOfflineFallbacks() + " offline fallbacks"));
+          source.sendMessage(statsLine("Bruteforce tracker", parent.plugin.getBruteforceTracker().getTrackedAddresses() + " addresses, "
+              + parent.plugin.getBruteforceTracker().getTrackedSubnets() + " subnets"));
+          PremiumResolver premiumResolver = parent.plugin.getPremiumResolver();
+          source.sendMessage(statsLine("Premium resolver", premiumResolver.getCacheSize() + " cached, "
+              + premiumResolver.getInFlight() + " in flight, " + premiumResolver.getRequestsSent() + " requests sent"
+              + (premiumResolver.isRateLimited() ? ", rate-limited" : "")));
+          source.sendMessage(statsLine("Premium classifier", parent.plugin.getPremiumClassifier().getCacheSize() + " cached"));
+          long sessions = parent.plugin.getSessionStore().size();
+          source.sendMessage(statsLine("Sessions", (sessions == -1 ? "unknown" : String.valueOf(sessions))
+              + " (" + Settings.IMP.MAIN.SESSION_STORAGE + ")"));
+          ClusterNode clusterNode = parent.plugin.getClusterNode();
+          if (clusterNode != null) {
+            source.sendMessage(statsLine("Cluster node " + clusterNode.getId(),
+                clusterNode.getPublished() + " events published, " + clusterNode.getReceived() + " received"));
+          }
+
+          MetricsRegistry metrics = LimboAuth.getMetrics();
+          for (MetricsRegistry.Stage stage : MetricsRegistry.Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = metrics.get(stage).snapshot();
+            if (snapshot.getCount() != 0) {
+              source.sendMessage(statsLine(stage.getDisplayName(), snapshot.getCount() + " samples, p50 " + formatMicros(snapshot.getValueAtQuantile(0.5))
+                  + ", p99 " + formatMicros(snapshot.getValueAtQuantile(0.99)) + ", max " + formatMicros(snapshot.getMax())));
+            }
+          }
+        }),
+    IMPORT("Import accounts from AuthMe, nLogin, a CSV file or a backup.", Settings.IMP.MAIN.COMMAND_PERMISSION_STATE.IMPORT,
+        (LimboAuthCommand parent, CommandSource source, String[] args) -> parent.importAccounts(source, args)),
+    EXPORT("Export all accounts to a backup file.", Settings.IMP.MAIN.COMMAND_PERMISSION_STATE.EXPORT,
+        (LimboAuthCommand parent, CommandSource source, String[] args) -> parent.exportAccounts(source, args)),
+    MIGRATE("Copy all accounts to another database and switch to it.", Settings.IMP.MAIN.COMMAND_PERMISSION_STATE.MIGRATE,
+        (LimboAuthCommand parent, CommandSource source, String[] args) -> parent.migrateStorage(source, args));
 
     private final String command;
     private final String description;
@@ -149,6 +471,18 @@ public class LimboAuthCommand implements SimpleCommand {
     }
   }
 
+  private static String formatMicros(long micros) {
+    return String.format(Locale.ROOT, "%.1f ms", micros / 1000.0);
+  }
+
+  private static Component statsLine(String name, String value) {
+    return Component.textOfChildren(
+        Component.text("  " + name, NamedTextColor.GREEN),
+        Component.text(": ", NamedTextColor.DARK_GRAY),
+        Component.text(value, NamedTextColor.YELLOW)
+    );
+  }
+
   private interface SubcommandExecutor {
     void execute(LimboAuthCommand parent, CommandSource source, String[] args);
   }
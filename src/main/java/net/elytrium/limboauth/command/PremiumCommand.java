@@ -17,25 +17,23 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
-import java.sql.SQLException;
-import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.hash.HashingExecutor;
 import net.kyori.adventure.text.Component;
 
 @Deprecated
 public class PremiumCommand implements SimpleCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final String confirmKeyword;
   private final Component notRegistered;
@@ -45,11 +43,12 @@ public class PremiumCommand implements SimpleCommand {
   private final Component notPremium;
   private final Component wrongPassword;
   private final Component usage;
+  private final Component serverBusy;
   private final Component notPlayer;
 
-  public PremiumCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public PremiumCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.confirmKeyword = Settings.IMP.MAIN.CONFIRM_KEYWORD;
@@ -60,6 +59,7 @@ public class PremiumCommand implements SimpleCommand {
     this.notPremium = serializer.deserialize(Settings.IMP.MAIN.STRINGS.NOT_PREMIUM);
     this.wrongPassword = serializer.deserialize(Settings.IMP.MAIN.STRINGS.WRONG_PASSWORD);
     this.usage = serializer.deserialize(Settings.IMP.MAIN.STRINGS.PREMIUM_USAGE);
+    this.serverBusy = serializer.deserialize(Settings.IMP.MAIN.STRINGS.SERVER_BUSY);
     this.notPlayer = serializer.deserialize(Settings.IMP.MAIN.STRINGS.NOT_PLAYER);
   }
 
@@ -72,28 +72,39 @@ public class PremiumCommand implements SimpleCommand {
       if (args.length == 2) {
         if (this.confirmKeyword.equalsIgnoreCase(args[1])) {
           String username = ((Player) source).getUsername();
-          RegisteredPlayer player = AuthSessionHandler.fetchInfo(this.playerDao, username);
-          if (player == null) {
-            source.sendMessage(this.notRegistered);
-          } else if (player.getHash().isEmpty()) {
-            source.sendMessage(this.alreadyPremium);
-          } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerDao)) {
-            if (this.plugin.isPremiumExternal(username.toLowerCase(Locale.ROOT)).getState() == LimboAuth.PremiumState.PREMIUM_USERNAME) {
-              try {
-                player.setHash("");
-                this.playerDao.update(player);
-                this.plugin.removePlayerFromCache(username);
-                ((Player) source).disconnect(this.successful);
-              } catch (SQLException e) {
-                source.sendMessage(this.errorOccurred);
-                throw new SQLRuntimeException(e);
-              }
+          this.playerRepository.fetchByNickname(username).thenComposeAsync(player -> {
+            if (player == null) {
+              source.sendMessage(this.notRegistered);
+            } else if (player.getHash().isEmpty()) {
+              source.sendMessage(this.alreadyPremium);
+            } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerRepository)) {
+              return this.plugin.getPremiumResolver().resolve(username).thenCompose(response -> {
+                if (response.getState() == LimboAuth.PremiumState.PREMIUM_USERNAME) {
+                  player.setHash("");
+                  return this.playerRepository.update(player).thenRun(() -> {
+                    this.plugin.removePlayerFromCache(username);
+                    ((Player) source).disconnect(this.successful);
+                  });
+                }
+
+                source.sendMessage(this.notPremium);
+                return CompletableFuture.completedFuture(null);
+              });
             } else {
-              source.sendMessage(this.notPremium);
+              source.sendMessage(this.wrongPassword);
             }
-          } else {
-            source.sendMessage(this.wrongPassword);
-          }
+
+            return CompletableFuture.completedFuture(null);
+          }, this.plugin.getHashingExecutor()).exceptionally(e -> {
+            if (HashingExecutor.isBusy(e)) {
+              source.sendMessage(this.serverBusy);
+            } else {
+              source.sendMessage(this.errorOccurred);
+              LimboAuth.getLogger().error("Unable to switch " + username + " to premium.", e);
+            }
+
+            return null;
+          });
 
           return;
         }
@@ -17,8 +17,6 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
@@ -28,14 +26,14 @@ import dev.samstevens.totp.secret.DefaultSecretGenerator;
 import dev.samstevens.totp.secret.SecretGenerator;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.sql.SQLException;
 import java.text.MessageFormat;
+import java.util.concurrent.CompletableFuture;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.hash.HashingExecutor;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.event.ClickEvent;
 
@@ -43,10 +41,12 @@ public class TotpCommand implements SimpleCommand {
 
   private final SecretGenerator secretGenerator = new DefaultSecretGenerator();
   private final RecoveryCodeGenerator codesGenerator = new RecoveryCodeGenerator();
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final LimboAuth plugin;
+  private final PlayerRepository playerRepository;
 
   private final Component notPlayer;
   private final Component usage;
+  private final Component serverBusy;
   private final boolean needPassword;
   private final Component notRegistered;
   private final Component wrongPassword;
@@ -63,12 +63,14 @@ public class TotpCommand implements SimpleCommand {
   private final Component wrong;
   private final Component crackedCommand;
 
-  public TotpCommand(Dao<RegisteredPlayer, String> playerDao) {
-    this.playerDao = playerDao;
+  public TotpCommand(LimboAuth plugin, PlayerRepository playerRepository) {
+    this.plugin = plugin;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.notPlayer = serializer.deserialize(Settings.IMP.MAIN.STRINGS.NOT_PLAYER);
     this.usage = serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOTP_USAGE);
+    this.serverBusy = serializer.deserialize(Settings.IMP.MAIN.STRINGS.SERVER_BUSY);
     this.needPassword = Settings.IMP.MAIN.TOTP_NEED_PASSWORD;
     this.notRegistered = serializer.deserialize(Settings.IMP.MAIN.STRINGS.NOT_REGISTERED);
     this.wrongPassword = serializer.deserialize(Settings.IMP.MAIN.STRINGS.WRONG_PASSWORD);
@@ -98,80 +100,76 @@ public class TotpCommand implements SimpleCommand {
       } else {
         String username = ((Player) source).getUsername();
 
-        RegisteredPlayer playerInfo;
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder;
         if (args[0].equalsIgnoreCase("enable")) {
           if (this.needPassword ? args.length == 2 : args.length == 1) {
-            playerInfo = AuthSessionHandler.fetchInfo(this.playerDao, username);
-            if (playerInfo == null) {
-              source.sendMessage(this.notRegistered);
-              return;
-            } else if (playerInfo.getHash().isEmpty()) {
-              source.sendMessage(this.crackedCommand);
-              return;
-            } else if (this.needPassword && !AuthSessionHandler.checkPassword(args[1], playerInfo, this.playerDao)) {
-              source.sendMessage(this.wrongPassword);
-              return;
-            }
-
-            if (!playerInfo.getTotpToken().isEmpty()) {
-              source.sendMessage(this.alreadyEnabled);
-              return;
-            }
-
-            String secret = this.secretGenerator.generate();
-            try {
-              updateBuilder = this.playerDao.updateBuilder();
-              updateBuilder.where().eq(RegisteredPlayer.NICKNAME_FIELD, username);
-              updateBuilder.updateColumnValue(RegisteredPlayer.TOTP_TOKEN_FIELD, secret);
-              updateBuilder.update();
-            } catch (SQLException e) {
-              source.sendMessage(this.errorOccurred);
-              throw new SQLRuntimeException(e);
-            }
-            source.sendMessage(this.successful);
-
-            QrData data = new QrData.Builder()
-                .label(username)
-                .secret(secret)
-                .issuer(this.issuer)
-                .build();
-            String qrUrl = this.qrGeneratorUrl.replace("{data}", URLEncoder.encode(data.getUri(), StandardCharsets.UTF_8));
-            source.sendMessage(this.qr.clickEvent(ClickEvent.openUrl(qrUrl)));
-
-            Serializer serializer = LimboAuth.getSerializer();
-            source.sendMessage(serializer.deserialize(MessageFormat.format(this.token, secret))
-                .clickEvent(ClickEvent.copyToClipboard(secret)));
-            String codes = String.join(", ", this.codesGenerator.generateCodes(this.recoveryCodesAmount));
-            source.sendMessage(serializer.deserialize(MessageFormat.format(this.recovery, codes))
-                .clickEvent(ClickEvent.copyToClipboard(codes)));
+            this.playerRepository.fetchByNickname(username).thenComposeAsync(playerInfo -> {
+              if (playerInfo == null) {
+                source.sendMessage(this.notRegistered);
+                return CompletableFuture.completedFuture(null);
+              } else if (playerInfo.getHash().isEmpty()) {
+                source.sendMessage(this.crackedCommand);
+                return CompletableFuture.completedFuture(null);
+              } else if (this.needPassword && !AuthSessionHandler.checkPassword(args[1], playerInfo, this.playerRepository)) {
+                source.sendMessage(this.wrongPassword);
+                return CompletableFuture.completedFuture(null);
+              }
+
+              if (!playerInfo.getTotpToken().isEmpty()) {
+                source.sendMessage(this.alreadyEnabled);
+                return CompletableFuture.completedFuture(null);
+              }
+
+              String secret = this.secretGenerator.generate();
+              return this.playerRepository.updateTotpToken(username, secret).thenRun(() -> {
+                source.sendMessage(this.successful);
+
+                QrData data = new QrData.Builder()
+                    .label(username)
+                    .secret(secret)
+                    .issuer(this.issuer)
+                    .build();
+                String qrUrl = this.qrGeneratorUrl.replace("{data}", URLEncoder.encode(data.getUri(), StandardCharsets.UTF_8));
+                source.sendMessage(this.qr.clickEvent(ClickEvent.openUrl(qrUrl)));
+
+                Serializer serializer = LimboAuth.getSerializer();
+                source.sendMessage(serializer.deserialize(MessageFormat.format(this.token, secret))
+                    .clickEvent(ClickEvent.copyToClipboard(secret)));
+                String codes = String.join(", ", this.codesGenerator.generateCodes(this.recoveryCodesAmount));
+                source.sendMessage(serializer.deserialize(MessageFormat.format(this.recovery, codes))
+                    .clickEvent(ClickEvent.copyToClipboard(codes)));
+              });
+            }, this.plugin.getHashingExecutor()).exceptionally(e -> {
+              if (HashingExecutor.isBusy(e)) {
+                source.sendMessage(this.serverBusy);
+              } else {
+                source.sendMessage(this.errorOccurred);
+                LimboAuth.getLogger().error("Unable to enable 2FA for " + username + ".", e);
+              }
+
+              return null;
+            });
           } else {
             source.sendMessage(this.usage);
           }
         } else if (args[0].equalsIgnoreCase("disable")) {
           if (args.length == 2) {
-            playerInfo = AuthSessionHandler.fetchInfo(this.playerDao, username);
-
-            if (playerInfo == null) {
-              source.sendMessage(this.notRegistered);
-              return;
-            }
-
-            if (AuthSessionHandler.getTotpCodeVerifier().isValidCode(playerInfo.getTotpToken(), args[1])) {
-              try {
-                updateBuilder = this.playerDao.updateBuilder();
-                updateBuilder.where().eq(RegisteredPlayer.NICKNAME_FIELD, username);
-                updateBuilder.updateColumnValue(RegisteredPlayer.TOTP_TOKEN_FIELD, "");
-                updateBuilder.update();
-
-                source.sendMessage(this.disabled);
-              } catch (SQLException e) {
-                source.sendMessage(this.errorOccurred);
-                throw new SQLRuntimeException(e);
+            this.playerRepository.fetchByNickname(username).thenCompose(playerInfo -> {
+              if (playerInfo == null) {
+                source.sendMessage(this.notRegistered);
+                return CompletableFuture.completedFuture(null);
               }
-            } else {
-              source.sendMessage(this.wrong);
-            }
+
+              if (AuthSessionHandler.getTotpCodeVerifier().isValidCode(playerInfo.getTotpToken(), args[1])) {
+                return this.playerRepository.updateTotpToken(username, "").thenRun(() -> source.sendMessage(this.disabled));
+              } else {
+                source.sendMessage(this.wrong);
+                return CompletableFuture.completedFuture(null);
+              }
+            }).exceptionally(e -> {
+              source.sendMessage(this.errorOccurred);
+              LimboAuth.getLogger().error("Unable to disable 2FA for " + username + ".", e);
+              return null;
+            });
           } else {
             source.sendMessage(this.usage);
           }
@@ -17,27 +17,25 @@
 
 package net.elytrium.limboauth.command;
 
-import com.j256.ormlite.dao.Dao;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
-import java.sql.SQLException;
-import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
 import net.elytrium.limboauth.event.AuthUnregisterEvent;
 import net.elytrium.limboauth.handler.AuthSessionHandler;
-import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
+import net.elytrium.limboauth.hash.HashingExecutor;
 import net.kyori.adventure.text.Component;
 
 public class UnregisterCommand implements SimpleCommand {
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerRepository playerRepository;
 
   private final String confirmKeyword;
   private final Component notPlayer;
@@ -46,11 +44,12 @@ public class UnregisterCommand implements SimpleCommand {
   private final Component errorOccurred;
   private final Component wrongPassword;
   private final Component usage;
+  private final Component serverBusy;
   private final Component crackedCommand;
 
-  public UnregisterCommand(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao) {
+  public UnregisterCommand(LimboAuth plugin, PlayerRepository playerRepository) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
+    this.playerRepository = playerRepository;
 
     Serializer serializer = LimboAuth.getSerializer();
     this.confirmKeyword = Settings.IMP.MAIN.CONFIRM_KEYWORD;
@@ -60,6 +59,7 @@ public class UnregisterCommand implements SimpleCommand {
     this.errorOccurred = serializer.deserialize(Settings.IMP.MAIN.STRINGS.ERROR_OCCURRED);
     this.wrongPassword = serializer.deserialize(Settings.IMP.MAIN.STRINGS.WRONG_PASSWORD);
     this.usage = serializer.deserialize(Settings.IMP.MAIN.STRINGS.UNREGISTER_USAGE);
+    this.serverBusy = serializer.deserialize(Settings.IMP.MAIN.STRINGS.SERVER_BUSY);
     this.crackedCommand = serializer.deserialize(Settings.IMP.MAIN.STRINGS.CRACKED_COMMAND);
   }
 
@@ -73,24 +73,32 @@ public class UnregisterCommand implements SimpleCommand {
         if (this.confirmKeyword.equalsIgnoreCase(args[1])) {
           String username = ((Player) source).getUsername();
           UUID uuid = ((Player) source).getUniqueId();
-          RegisteredPlayer player = AuthSessionHandler.fetchInfo(this.playerDao, username);
-          if (player == null) {
-            source.sendMessage(this.notRegistered);
-          } else if (player.getHash().isEmpty()) {
-            source.sendMessage(this.crackedCommand);
-          } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerDao)) {
-            try {
+          this.playerRepository.fetchByNickname(username).thenComposeAsync(player -> {
+            if (player == null) {
+              source.sendMessage(this.notRegistered);
+            } else if (player.getHash().isEmpty()) {
+              source.sendMessage(this.crackedCommand);
+            } else if (AuthSessionHandler.checkPassword(args[0], player, this.playerRepository)) {
               this.plugin.getServer().getEventManager().fireAndForget(new AuthUnregisterEvent(username));
-              this.playerDao.deleteById(uuid.toString());
-              this.plugin.removePlayerFromCache(username);
-              ((Player) source).disconnect(this.successful);
-            } catch (SQLException e) {
+              return this.playerRepository.delete(uuid).thenRun(() -> {
+                this.plugin.removePlayerFromCache(username);
+                ((Player) source).disconnect(this.successful);
+              });
+            } else {
+              source.sendMessage(this.wrongPassword);
+            }
+
+            return CompletableFuture.completedFuture(null);
+          }, this.plugin.getHashingExecutor()).exceptionally(e -> {
+            if (HashingExecutor.isBusy(e)) {
+              source.sendMessage(this.serverBusy);
+            } else {
               source.sendMessage(this.errorOccurred);
-              throw new SQLRuntimeException(e);
+              LimboAuth.getLogger().error("Unable to unregister " + username + ".", e);
             }
-          } else {
-            source.sendMessage(this.wrongPassword);
-          }
+
+            return null;
+          });
 
           return;
         }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the amount of accounts registered from one address during the valid time.
+ * The accounts are counted with a single COUNT query and the recent counts are cached. Every registration reserves a slot
+ * until the account is saved, so a burst of concurrent registrations from this proxy can't exceed the limit.
+ * The registrations from the other proxies become visible after the cache expires.
+ */
+public class IpLimiter {
+
+  private final PlayerRepository playerRepository;
+  private final int maxRegistrations;
+  private final long validTime;
+  private final Cache<String, Long> counts;
+  private final Map<String, Integer> reservations = new ConcurrentHashMap<>();
+
+  /**
+   * @param validTime Time in milliseconds during which the registration is counted, 0 to count all of them.
+   * @param cacheTime Time in milliseconds during which the count is cached, 0 to disable caching.
+   */
+  public IpLimiter(PlayerRepository playerRepository, int maxRegistrations, long validTime, long cacheTime, long cacheSize) {
+    this.playerRepository = playerRepository;
+    this.maxRegistrations = maxRegistrations;
+    this.validTime = validTime;
+    this.counts = CacheBuilder.newBuilder()
+        .maximumSize(cacheTime > 0 ? cacheSize : 0)
+        .expireAfterWrite(Math.max(1, cacheTime), TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Completes with true if the address may register one more account. Doesn't reserve anything, used to kick the player early.
+   */
+  public CompletableFuture<Boolean> canRegister(String ip) {
+    return this.count(ip).thenApply(count -> count + this.reservations.getOrDefault(ip, 0) < this.maxRegistrations);
+  }
+
+  /**
+   * Reserves a registration for the address, completes with false if the limit has been reached.
+   * The reservation must be released with {@link #release(String, boolean)} once the account is saved or the registration has failed.
+   */
+  public CompletableFuture<Boolean> reserve(String ip) {
+    return this.count(ip).thenApply(count -> {
+      boolean[] reserved = new boolean[1];
+      this.reservations.compute(ip, (key, pending) -> {
+        int current = pending == null ? 0 : pending;
+        if (count + current >= this.maxRegistrations) {
+          return pending;
+        }
+
+        reserved[0] = true;
+        return current + 1;
+      });
+
+      return reserved[0];
+    });
+  }
+
+  public void release(String ip, boolean registered) {
+    if (registered) {
+      // Count the account before dropping the reservation, so it is never missed.
+      this.counts.asMap().computeIfPresent(ip, (key, count) -> count + 1);
+    }
+
+    this.reservations.computeIfPresent(ip, (key, pending) -> pending == 1 ? null : pending - 1);
+  }
+
+  private CompletableFuture<Long> count(String ip) {
+    Long cachedCount = this.counts.getIfPresent(ip);
+    if (cachedCount != null) {
+      return CompletableFuture.completedFuture(cachedCount);
+    }
+
+    long registeredSince = this.validTime > 0 ? System.currentTimeMillis() - this.validTime : 0;
+    return this.playerRepository.countByIp(ip, registeredSince).thenApply(count -> {
+      // Don't overwrite the count that was incremented by a registration during the query.
+      Long previous = this.counts.asMap().putIfAbsent(ip, count);
+      return previous == null ? count : previous;
+    });
+  }
+
+  /**
+   * Blanks the addresses of the expired registrations, so the IP index stays small. Does nothing if the registrations never expire.
+   */
+  public CompletableFuture<Integer> clearExpired() {
+    if (this.validTime <= 0) {
+      return CompletableFuture.completedFuture(0);
+    }
+
+    return this.playerRepository.clearExpiredIps(System.currentTimeMillis() - this.validTime);
+  }
+
+  public long getCachedCounts() {
+    return this.counts.size();
+  }
+}
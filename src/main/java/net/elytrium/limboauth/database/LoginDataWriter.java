@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.metrics.MetricsRegistry;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Write-behind queue for the LOGINIP and LOGINDATE columns.
+ * Only the latest login of every account is kept, pending updates are written with JDBC batches in a single transaction.
+ */
+public class LoginDataWriter {
+
+  private final Map<String, LoginData> pendingUpdates = new ConcurrentHashMap<>();
+  private final List<Consumer<Collection<String>>> flushListeners = new CopyOnWriteArrayList<>();
+  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerCache cache;
+  private final int batchSize;
+  private final String updateSql;
+
+  public LoginDataWriter(Dao<RegisteredPlayer, String> playerDao, PlayerCache cache, int batchSize) {
+    this.playerDao = playerDao;
+    this.cache = cache;
+    this.batchSize = Math.max(1, batchSize);
+
+    DatabaseType databaseType = playerDao.getConnectionSource().getDatabaseType();
+    StringBuilder sql = new StringBuilder("UPDATE ");
+    databaseType.appendEscapedEntityName(sql, playerDao.getTableName());
+    sql.append(" SET ");
+    databaseType.appendEscapedEntityName(sql, RegisteredPlayer.LOGIN_IP_FIELD);
+    sql.append(" = ?, ");
+    databaseType.appendEscapedEntityName(sql, RegisteredPlayer.LOGIN_DATE_FIELD);
+    sql.append(" = ? WHERE ");
+    databaseType.appendEscapedEntityName(sql, RegisteredPlayer.UUID_FIELD);
+    sql.append(" = ?");
+    this.updateSql = sql.toString();
+  }
+
+  /**
+   * Queues the update, replacing the pending one of the same account.
+   *
+   * @return true if the batch size has been reached and the queue should be flushed
+   */
+  public boolean add(String uuid, String loginIp, long loginDate) {
+    this.pendingUpdates.put(uuid, new LoginData(loginIp, loginDate));
+    return this.pendingUpdates.size() >= this.batchSize;
+  }
+
+  /**
+   * Writes every pending update. If the write fails, the updates are put back in the queue unless they were replaced by the newer ones.
+   * Must be called on the {@link PlayerRepository} executor, or after it has been stopped: the file databases have a single connection,
+   * and the statements of the other threads would be committed or rolled back with this transaction.
+   */
+  public synchronized void flush() throws SQLException {
+    if (this.pendingUpdates.isEmpty()) {
+      return;
+    }
+
+    long startTime = System.nanoTime();
+    String tableName = this.playerDao.getTableName();
+    ConnectionSource connectionSource = this.playerDao.getConnectionSource();
+    DatabaseConnection databaseConnection = connectionSource.getReadWriteConnection(tableName);
+    try {
+      Connection connection = databaseConnection.getUnderlyingConnection();
+      boolean autoCommit = connection.getAutoCommit();
+      Map<String, LoginData> batch = new HashMap<>();
+      try (PreparedStatement statement = connection.prepareStatement(this.updateSql)) {
+        connection.setAutoCommit(false);
+        for (String uuid : this.pendingUpdates.keySet()) {
+          LoginData loginData = this.pendingUpdates.remove(uuid);
+          if (loginData == null) {
+            continue;
+          }
+
+          batch.put(uuid, loginData);
+          statement.setString(1, loginData.loginIp);
+          statement.setLong(2, loginData.loginDate);
+          statement.setString(3, uuid);
+          statement.addBatch();
+
+          if (batch.size() >= this.batchSize) {
+            this.executeBatch(connection, statement, batch);
+          }
+        }
+
+        if (!batch.isEmpty()) {
+          this.executeBatch(connection, statement, batch);
+        }
+
+        LimboAuth.getMetrics().record(MetricsRegistry.Stage.UPDATE_LOGIN_DATA, startTime);
+      } catch (SQLException e) {
+        connection.rollback();
+        batch.forEach(this.pendingUpdates::putIfAbsent);
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    } finally {
+      connectionSource.releaseConnection(databaseConnection);
+    }
+  }
+
+  private void executeBatch(Connection connection, PreparedStatement statement, Map<String, LoginData> batch) throws SQLException {
+    statement.executeBatch();
+    connection.commit();
+    this.cache.invalidateUuids(batch.keySet());
+    this.flushListeners.forEach(listener -> listener.accept(batch.keySet()));
+    batch.clear();
+  }
+
+  /**
+   * Adds the listener of the written updates, it receives the UUIDs of the accounts right after every committed batch.
+   */
+  public void addFlushListener(Consumer<Collection<String>> listener) {
+    this.flushListeners.add(listener);
+  }
+
+  public void removeFlushListener(Consumer<Collection<String>> listener) {
+    this.flushListeners.remove(listener);
+  }
+
+  public int getPendingUpdates() {
+    return this.pendingUpdates.size();
+  }
+
+  private static class LoginData {
+
+    private final String loginIp;
+    private final long loginDate;
+
+    private LoginData(String loginIp, long loginDate) {
+      this.loginIp = loginIp;
+      this.loginDate = loginDate;
+    }
+  }
+}
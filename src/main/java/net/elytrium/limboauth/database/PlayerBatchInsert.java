@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * INSERT statement with every column of the players table, for the JDBC batches of the bulk copies.
+ */
+public class PlayerBatchInsert {
+
+  private static final String[] COLUMNS = {
+      RegisteredPlayer.UUID_FIELD,
+      RegisteredPlayer.NICKNAME_FIELD,
+      RegisteredPlayer.LOWERCASE_NICKNAME_FIELD,
+      RegisteredPlayer.HASH_FIELD,
+      RegisteredPlayer.IP_FIELD,
+      RegisteredPlayer.UUID_TYPE_FIELD,
+      RegisteredPlayer.TOTP_TOKEN_FIELD,
+      RegisteredPlayer.REG_DATE_FIELD,
+      RegisteredPlayer.LOGIN_IP_FIELD,
+      RegisteredPlayer.LOGIN_DATE_FIELD,
+      RegisteredPlayer.TOKEN_ISSUED_AT_FIELD
+  };
+
+  private final String sql;
+
+  public PlayerBatchInsert(Dao<RegisteredPlayer, String> playerDao) {
+    DatabaseType databaseType = playerDao.getConnectionSource().getDatabaseType();
+    StringBuilder sql = new StringBuilder("INSERT INTO ");
+    databaseType.appendEscapedEntityName(sql, playerDao.getTableName());
+    sql.append(" (");
+    for (int i = 0; i < COLUMNS.length; ++i) {
+      if (i != 0) {
+        sql.append(", ");
+      }
+
+      databaseType.appendEscapedEntityName(sql, COLUMNS[i]);
+    }
+
+    sql.append(") VALUES (").append(String.join(", ", Collections.nCopies(COLUMNS.length, "?"))).append(')');
+    this.sql = sql.toString();
+  }
+
+  public String getSql() {
+    return this.sql;
+  }
+
+  /**
+   * Binds the account to the statement prepared from {@link #getSql()} and adds it to the batch.
+   */
+  public void addBatch(PreparedStatement statement, RegisteredPlayer player) throws SQLException {
+    statement.setString(1, player.getUuid());
+    statement.setString(2, player.getNickname());
+    statement.setString(3, player.getLowercaseNickname());
+    statement.setString(4, player.getHash());
+    statement.setString(5, player.getIP());
+    statement.setInt(6, player.getUuidType());
+    statement.setString(7, player.getTotpToken());
+    // The getters of the dates return Long.MIN_VALUE instead of NULL, so the nullable values are bound.
+    setNullableLong(statement, 8, player.getNullableRegDate());
+    statement.setString(9, player.getLoginIp());
+    setNullableLong(statement, 10, player.getNullableLoginDate());
+    setNullableLong(statement, 11, player.getNullableTokenIssuedAt());
+    statement.addBatch();
+  }
+
+  private static void setNullableLong(PreparedStatement statement, int index, @Nullable Long value) throws SQLException {
+    if (value == null) {
+      statement.setNull(index, Types.BIGINT);
+    } else {
+      statement.setLong(index, value);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Read-through cache of {@link RegisteredPlayer} snapshots, indexed by UUID and by lowercase nickname.
+ * Missing accounts are cached too, so the unregistered players don't hit the database on every lookup.
+ * Callers always receive their own copy, so they can modify it without affecting the cache.
+ * The snapshots are linked to the keys of the other index, so the invalidations remove the exact keys instead of scanning the caches.
+ */
+public class PlayerCache {
+
+  private final Cache<String, Optional<RegisteredPlayer>> uuidIndex;
+  private final Cache<String, Optional<RegisteredPlayer>> nicknameIndex;
+
+  // Incremented on every invalidation, so the queries which were started before the write don't put stale data in the cache.
+  private long version;
+  private final List<BiConsumer<String, String>> invalidationListeners = new CopyOnWriteArrayList<>();
+  // Lowercase nickname -> keys of the UUID index whose snapshots have this nickname, guarded by this.
+  private final Map<String, Set<String>> uuidsByNickname = new HashMap<>();
+  // UUID -> keys of the nickname index whose snapshots have this UUID (the old nicknames of the account), guarded by this.
+  private final Map<String, Set<String>> nicknamesByUuid = new HashMap<>();
+
+  public PlayerCache(long maxSize, long expireAfterWrite) {
+    this.uuidIndex = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .<String, Optional<RegisteredPlayer>>removalListener(this::onUuidRemoval)
+        .build();
+    this.nicknameIndex = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .<String, Optional<RegisteredPlayer>>removalListener(this::onNicknameRemoval)
+        .build();
+  }
+
+  public CompletableFuture<RegisteredPlayer> fetchByUuid(String uuid, Supplier<CompletableFuture<RegisteredPlayer>> loader) {
+    return this.fetch(this.uuidIndex, uuid, loader);
+  }
+
+  public CompletableFuture<RegisteredPlayer> fetchByNickname(String lowercaseNickname, Supplier<CompletableFuture<RegisteredPlayer>> loader) {
+    return this.fetch(this.nicknameIndex, lowercaseNickname, loader);
+  }
+
+  private CompletableFuture<RegisteredPlayer> fetch(Cache<String, Optional<RegisteredPlayer>> index, String key,
+      Supplier<CompletableFuture<RegisteredPlayer>> loader) {
+    Optional<RegisteredPlayer> cached = index.getIfPresent(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached.map(RegisteredPlayer::new).orElse(null));
+    }
+
+    long startVersion = this.getVersion();
+    return loader.get().thenApply(player -> {
+      this.put(startVersion, index, key, player);
+      return player;
+    });
+  }
+
+  private synchronized void put(long startVersion, Cache<String, Optional<RegisteredPlayer>> index, String key, @Nullable RegisteredPlayer player) {
+    if (this.version != startVersion) {
+      return;
+    }
+
+    if (player == null) {
+      index.put(key, Optional.empty());
+    } else {
+      Optional<RegisteredPlayer> snapshot = Optional.of(new RegisteredPlayer(player));
+      if (index == this.nicknameIndex) {
+        this.putByNickname(key, snapshot);
+        // The oldest account with this nickname is not always the one that has been found by UUID, so the UUID index is the only one to fill.
+        if (!player.getUuid().isEmpty()) {
+          this.putByUuid(player.getUuid(), snapshot);
+        }
+      } else {
+        this.putByUuid(key, snapshot);
+      }
+    }
+  }
+
+  // The entry is put before the link, so the removal listener of the replaced entry sees the new one and keeps the link.
+  private void putByUuid(String uuid, Optional<RegisteredPlayer> snapshot) {
+    this.uuidIndex.put(uuid, snapshot);
+    String lowercaseNickname = snapshot.get().getLowercaseNickname();
+    if (lowercaseNickname != null) {
+      link(this.uuidsByNickname, lowercaseNickname, uuid);
+    }
+  }
+
+  private void putByNickname(String lowercaseNickname, Optional<RegisteredPlayer> snapshot) {
+    this.nicknameIndex.put(lowercaseNickname, snapshot);
+    String uuid = snapshot.get().getUuid();
+    if (uuid != null && !uuid.isEmpty()) {
+      link(this.nicknamesByUuid, uuid, lowercaseNickname);
+    }
+  }
+
+  /**
+   * Unlinks the removed snapshot unless the key has already been cached again with the same link.
+   * Guava runs the listeners outside of its locks, on the thread that has triggered the removal or the cleanup.
+   */
+  private synchronized void onUuidRemoval(RemovalNotification<String, Optional<RegisteredPlayer>> notification) {
+    Optional<RegisteredPlayer> snapshot = notification.getValue();
+    if (snapshot == null || snapshot.isEmpty() || snapshot.get().getLowercaseNickname() == null) {
+      return;
+    }
+
+    String lowercaseNickname = snapshot.get().getLowercaseNickname();
+    Optional<RegisteredPlayer> current = this.uuidIndex.asMap().get(notification.getKey());
+    if (current == null || current.isEmpty() || !lowercaseNickname.equals(current.get().getLowercaseNickname())) {
+      unlink(this.uuidsByNickname, lowercaseNickname, notification.getKey());
+    }
+  }
+
+  private synchronized void onNicknameRemoval(RemovalNotification<String, Optional<RegisteredPlayer>> notification) {
+    Optional<RegisteredPlayer> snapshot = notification.getValue();
+    if (snapshot == null || snapshot.isEmpty() || snapshot.get().getUuid() == null) {
+      return;
+    }
+
+    String uuid = snapshot.get().getUuid();
+    Optional<RegisteredPlayer> current = this.nicknameIndex.asMap().get(notification.getKey());
+    if (current == null || current.isEmpty() || !uuid.equals(current.get().getUuid())) {
+      unlink(this.nicknamesByUuid, uuid, notification.getKey());
+    }
+  }
+
+  private static void link(Map<String, Set<String>> links, String from, String to) {
+    links.computeIfAbsent(from, key -> new HashSet<>()).add(to);
+  }
+
+  private static void unlink(Map<String, Set<String>> links, String from, String to) {
+    Set<String> keys = links.get(from);
+    if (keys != null && keys.remove(to) && keys.isEmpty()) {
+      links.remove(from);
+    }
+  }
+
+  public void invalidate(RegisteredPlayer player) {
+    this.invalidate(player.getUuid(), player.getLowercaseNickname());
+  }
+
+  /**
+   * Drops every snapshot of the account from both indexes and notifies the {@link #addInvalidationListener(BiConsumer) listeners}.
+   * Any argument may be null if it is unknown.
+   */
+  public void invalidate(@Nullable String uuid, @Nullable String lowercaseNickname) {
+    this.invalidateLocally(uuid, lowercaseNickname);
+    this.invalidationListeners.forEach(listener -> listener.accept(uuid, lowercaseNickname));
+  }
+
+  /**
+   * Same as {@link #invalidate(String, String)}, but without notifying the listeners, e.g. for the invalidations received from the other proxies.
+   */
+  public synchronized void invalidateLocally(@Nullable String uuid, @Nullable String lowercaseNickname) {
+    ++this.version;
+
+    // The nickname could have been changed, so the snapshots cached under the other keys are found through the links.
+    Set<String> uuids = new HashSet<>();
+    Set<String> nicknames = new HashSet<>();
+    if (uuid != null) {
+      uuids.add(uuid);
+      nicknames.addAll(this.nicknamesByUuid.getOrDefault(uuid, Set.of()));
+    }
+
+    if (lowercaseNickname != null) {
+      nicknames.add(lowercaseNickname);
+      uuids.addAll(this.uuidsByNickname.getOrDefault(lowercaseNickname, Set.of()));
+    }
+
+    this.uuidIndex.invalidateAll(uuids);
+    this.nicknameIndex.invalidateAll(nicknames);
+  }
+
+  /**
+   * Drops the snapshots of many accounts at once.
+   */
+  public synchronized void invalidateUuids(Collection<String> uuids) {
+    ++this.version;
+
+    Set<String> nicknames = new HashSet<>();
+    for (String uuid : uuids) {
+      nicknames.addAll(this.nicknamesByUuid.getOrDefault(uuid, Set.of()));
+    }
+
+    this.uuidIndex.invalidateAll(uuids);
+    this.nicknameIndex.invalidateAll(nicknames);
+  }
+
+  /**
+   * Adds the listener of the account invalidations, it receives the UUID and the lowercase nickname, any of which may be null.
+   * The batched login data updates are not reported.
+   */
+  public void addInvalidationListener(BiConsumer<String, String> invalidationListener) {
+    this.invalidationListeners.add(invalidationListener);
+  }
+
+  public void removeInvalidationListener(BiConsumer<String, String> invalidationListener) {
+    this.invalidationListeners.remove(invalidationListener);
+  }
+
+  public synchronized void invalidateAll() {
+    ++this.version;
+    this.uuidIndex.invalidateAll();
+    this.nicknameIndex.invalidateAll();
+    this.uuidsByNickname.clear();
+    this.nicknamesByUuid.clear();
+  }
+
+  private synchronized long getVersion() {
+    return this.version;
+  }
+
+  public long getHitCount() {
+    return this.uuidIndex.stats().hitCount() + this.nicknameIndex.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return this.uuidIndex.stats().missCount() + this.nicknameIndex.stats().missCount();
+  }
+
+  public long getSize() {
+    return this.uuidIndex.size() + this.nicknameIndex.size();
+  }
+
+  public CacheStats getUuidIndexStats() {
+    return this.uuidIndex.stats();
+  }
+
+  public CacheStats getNicknameIndexStats() {
+    return this.nicknameIndex.stats();
+  }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.stmt.Where;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.jfr.DatabaseQueryEvent;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.SQLRuntimeException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Asynchronous access to the players table.
+ * All queries are executed on a bounded executor, so a slow database doesn't stall Netty event loops or the Velocity event executor.
+ * Futures are completed on the database threads, heavy callbacks should be moved to another executor.
+ * Lookups by UUID and nickname are served from the {@link PlayerCache} when possible, every write invalidates it.
+ */
+public class PlayerRepository {
+
+  private final Dao<RegisteredPlayer, String> playerDao;
+  private final PlayerCache cache;
+  private final ThreadPoolExecutor executor;
+  private final LoginDataWriter loginDataWriter;
+  private final AtomicBoolean loginDataFlushScheduled = new AtomicBoolean();
+  private final ThreadLocal<PlayerStatements> statements;
+  // The registered accounts are counted as the last database count plus the changes made since it was started.
+  private final AtomicLong registeredChanges = new AtomicLong();
+  private volatile long registeredOffset = Long.MIN_VALUE;
+
+  public PlayerRepository(Dao<RegisteredPlayer, String> playerDao, PlayerCache cache, int threads, int queueSize, int loginDataBatchSize) {
+    this.playerDao = playerDao;
+    this.cache = cache;
+    this.loginDataWriter = new LoginDataWriter(playerDao, cache, loginDataBatchSize);
+    this.statements = ThreadLocal.withInitial(() -> {
+      try {
+        return new PlayerStatements(playerDao);
+      } catch (SQLException e) {
+        throw new SQLRuntimeException(e);
+      }
+    });
+
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize), runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth database thread #" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  public CompletableFuture<RegisteredPlayer> fetchByUuid(UUID uuid) {
+    String uuidString = uuid.toString();
+    return this.cache.fetchByUuid(uuidString,
+        () -> this.supply("fetchByUuid", () -> this.statements.get().fetchByUuid(uuidString)));
+  }
+
+  /**
+   * Returns the oldest account registered with this nickname, ignoring the case.
+   */
+  public CompletableFuture<RegisteredPlayer> fetchByNickname(String nickname) {
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    return this.cache.fetchByNickname(lowercaseNickname,
+        () -> this.supply("fetchByNickname", () -> this.statements.get().fetchByNickname(lowercaseNickname)));
+  }
+
+  public CompletableFuture<List<RegisteredPlayer>> fetchByIp(String ip) {
+    return this.supply("fetchByIp", () -> this.playerDao.queryForEq(RegisteredPlayer.IP_FIELD, ip));
+  }
+
+  /**
+   * Counts the accounts registered from the address since the given time, 0 to count all of them.
+   */
+  public CompletableFuture<Long> countByIp(String ip, long registeredSince) {
+    return this.supply("countByIp", () -> {
+      Where<RegisteredPlayer, String> where = this.playerDao.queryBuilder().where().eq(RegisteredPlayer.IP_FIELD, ip);
+      if (registeredSince > 0) {
+        where.and().ge(RegisteredPlayer.REG_DATE_FIELD, registeredSince);
+      }
+
+      return where.countOf();
+    });
+  }
+
+  /**
+   * Blanks the registration address of every account registered before the given time with a single statement.
+   * The cache is not invalidated: the cached snapshots may keep the old address, but the IP limit counts by the registration date anyway.
+   */
+  public CompletableFuture<Integer> clearExpiredIps(long registeredBefore) {
+    return this.supply("clearExpiredIps", () -> {
+      UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
+      updateBuilder.updateColumnValue(RegisteredPlayer.IP_FIELD, "");
+      updateBuilder.where().lt(RegisteredPlayer.REG_DATE_FIELD, registeredBefore).and().ne(RegisteredPlayer.IP_FIELD, "");
+      return updateBuilder.update();
+    });
+  }
+
+  /**
+   * Returns up to {@code limit} accounts with the UUID greater than the given one, ordered by the UUID.
+   * Iterates over the whole table with the keyset pagination, {@code null} starts from the beginning.
+   */
+  public CompletableFuture<List<RegisteredPlayer>> fetchPage(@Nullable String afterUuid, long limit) {
+    return this.fetchPage(afterUuid, null, null, limit);
+  }
+
+  /**
+   * Same as {@link #fetchPage(String, long)}, but only returns the accounts with the UUID in [{@code fromUuid}, {@code beforeUuid}),
+   * so the table can be split into ranges that are iterated in parallel. {@code fromUuid} is only used for the first page.
+   */
+  public CompletableFuture<List<RegisteredPlayer>> fetchPage(@Nullable String afterUuid, @Nullable String fromUuid, @Nullable String beforeUuid,
+      long limit) {
+    return this.supply("fetchPage", () -> pageQuery(this.playerDao, afterUuid, fromUuid, beforeUuid, limit).query());
+  }
+
+  /**
+   * Builds the keyset pagination query of {@link #fetchPage(String, String, String, long)} for any players table, e.g. on another database.
+   * The missing bounds are not added to the query at all, so the first page has no lower bound and can't skip any UUID, even the empty one.
+   */
+  public static QueryBuilder<RegisteredPlayer, String> pageQuery(Dao<RegisteredPlayer, String> playerDao, @Nullable String afterUuid,
+      @Nullable String fromUuid, @Nullable String beforeUuid, long limit) throws SQLException {
+    QueryBuilder<RegisteredPlayer, String> queryBuilder = playerDao.queryBuilder()
+        .orderBy(RegisteredPlayer.UUID_FIELD, true)
+        .limit(limit);
+    if (afterUuid == null && fromUuid == null && beforeUuid == null) {
+      return queryBuilder;
+    }
+
+    Where<RegisteredPlayer, String> where = queryBuilder.where();
+    if (afterUuid != null || fromUuid != null) {
+      if (afterUuid != null) {
+        where.gt(RegisteredPlayer.UUID_FIELD, afterUuid);
+      } else {
+        where.ge(RegisteredPlayer.UUID_FIELD, fromUuid);
+      }
+
+      if (beforeUuid != null) {
+        where.and();
+      }
+    }
+
+    if (beforeUuid != null) {
+      where.lt(RegisteredPlayer.UUID_FIELD, beforeUuid);
+    }
+
+    return queryBuilder;
+  }
+
+  public CompletableFuture<Long> countAll() {
+    return this.supply("countAll", this.playerDao::countOf);
+  }
+
+  /**
+   * Returns the amount of the registered accounts without querying the database, -1 if it hasn't been counted yet.
+   * It is updated by the writes of this repository and may drift if the table is modified by someone else,
+   * e.g. another proxy of the cluster, until the next {@link #reconcileRegisteredPlayers() reconciliation}.
+   */
+  public long getRegisteredPlayers() {
+    long offset = this.registeredOffset;
+    return offset == Long.MIN_VALUE ? -1 : Math.max(0, offset + this.registeredChanges.get());
+  }
+
+  /**
+   * Replaces the in-memory amount of the registered accounts with the database count.
+   * The writes that are committed while the table is being counted may be counted twice until the next reconciliation.
+   */
+  public CompletableFuture<Long> reconcileRegisteredPlayers() {
+    return this.supply("reconcileRegisteredPlayers", () -> {
+      long changes = this.registeredChanges.get();
+      long count = this.playerDao.countOf();
+      this.registeredOffset = count - changes;
+      return count;
+    });
+  }
+
+  /**
+   * Accounts for the accounts created or deleted bypassing this repository, e.g. by the importer.
+   */
+  public void adjustRegisteredPlayers(long delta) {
+    this.registeredChanges.addAndGet(delta);
+  }
+
+  public CompletableFuture<Void> create(RegisteredPlayer player) {
+    return this.run("create", () -> {
+      this.adjustRegisteredPlayers(this.playerDao.create(player));
+      this.cache.invalidate(player);
+    });
+  }
+
+  public CompletableFuture<Void> update(RegisteredPlayer player) {
+    return this.run("update", () -> {
+      this.playerDao.update(player);
+      this.cache.invalidate(player);
+    });
+  }
+
+  public CompletableFuture<Void> updateHash(UUID uuid, String hash) {
+    return this.updateColumn("updateHash", RegisteredPlayer.UUID_FIELD, uuid.toString(), RegisteredPlayer.HASH_FIELD, hash);
+  }
+
+  public CompletableFuture<Void> updateHashByNickname(String nickname, String hash) {
+    return this.updateColumn("updateHashByNickname", RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname.toLowerCase(Locale.ROOT),
+        RegisteredPlayer.HASH_FIELD, hash);
+  }
+
+  /**
+   * Clears the password hash of the account with exactly the same nickname, so it will be treated as the premium one.
+   */
+  public CompletableFuture<Void> clearHashByExactNickname(String nickname) {
+    return this.updateColumn("clearHashByExactNickname", RegisteredPlayer.NICKNAME_FIELD, nickname, RegisteredPlayer.HASH_FIELD, "");
+  }
+
+  public CompletableFuture<Void> updateTotpToken(String nickname, String totpToken) {
+    return this.updateColumn("updateTotpToken", RegisteredPlayer.NICKNAME_FIELD, nickname, RegisteredPlayer.TOTP_TOKEN_FIELD, totpToken);
+  }
+
+  /**
+   * Queues the login data update, it will be written with the next {@link #flushLoginData() flush}.
+   * The queue is flushed earlier if it has reached the batch size.
+   */
+  public void updateLoginData(UUID uuid, String loginIp, long loginDate) {
+    if (this.loginDataWriter.add(uuid.toString(), loginIp, loginDate) && this.loginDataFlushScheduled.compareAndSet(false, true)) {
+      this.run("flushLoginData", () -> {
+        this.loginDataFlushScheduled.set(false);
+        this.loginDataWriter.flush();
+      }).exceptionally(e -> {
+        this.loginDataFlushScheduled.set(false);
+        LimboAuth.getLogger().error("Unable to save the login data.", e);
+        return null;
+      });
+    }
+  }
+
+  public CompletableFuture<Void> flushLoginData() {
+    return this.run("flushLoginData", this.loginDataWriter::flush);
+  }
+
+  public CompletableFuture<Void> delete(UUID uuid) {
+    return this.run("delete", () -> {
+      this.adjustRegisteredPlayers(-this.playerDao.deleteById(uuid.toString()));
+      this.cache.invalidate(uuid.toString(), null);
+    });
+  }
+
+  public CompletableFuture<Void> deleteByNickname(String nickname) {
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    return this.run("deleteByNickname", () -> {
+      DeleteBuilder<RegisteredPlayer, String> deleteBuilder = this.playerDao.deleteBuilder();
+      deleteBuilder.where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname);
+      this.adjustRegisteredPlayers(-deleteBuilder.delete());
+      this.cache.invalidate(null, lowercaseNickname);
+    });
+  }
+
+  /**
+   * Executes a custom read-only query on the database executor.
+   * Queries that modify the players should invalidate the {@link #getCache() cache} by themselves.
+   */
+  public <T> CompletableFuture<T> query(DaoFunction<T> function) {
+    return this.supply("query", () -> function.apply(this.playerDao));
+  }
+
+  /**
+   * Waits for the queued queries and writes the pending login data, the database connection may be closed after this call.
+   */
+  public void shutdown() {
+    this.executor.shutdown();
+    try {
+      if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        LimboAuth.getLogger().warn("Database executor did not finish " + this.executor.getQueue().size() + " queued queries in time.");
+        this.executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      this.executor.shutdownNow();
+    }
+
+    try {
+      this.loginDataWriter.flush();
+    } catch (SQLException e) {
+      LimboAuth.getLogger().error("Unable to save the login data of " + this.loginDataWriter.getPendingUpdates() + " players.", e);
+    }
+  }
+
+  public int getQueuedQueries() {
+    return this.executor.getQueue().size();
+  }
+
+  public int getPendingLoginUpdates() {
+    return this.loginDataWriter.getPendingUpdates();
+  }
+
+  public LoginDataWriter getLoginDataWriter() {
+    return this.loginDataWriter;
+  }
+
+  public Dao<RegisteredPlayer, String> getPlayerDao() {
+    return this.playerDao;
+  }
+
+  public PlayerCache getCache() {
+    return this.cache;
+  }
+
+  private CompletableFuture<Void> updateColumn(String method, String whereField, Object whereValue, String field, Object value) {
+    return this.run(method, () -> {
+      this.statements.get().updateColumn(whereField, whereValue, field, value);
+
+      if (whereField.equals(RegisteredPlayer.UUID_FIELD)) {
+        this.cache.invalidate(whereValue.toString(), null);
+      } else {
+        this.cache.invalidate(null, whereValue.toString().toLowerCase(Locale.ROOT));
+      }
+    });
+  }
+
+  private CompletableFuture<Void> run(String method, SqlRunnable runnable) {
+    return this.supply(method, () -> {
+      runnable.run();
+      return null;
+    });
+  }
+
+  /**
+   * Executes a custom query on the database executor, e.g. on another table of the same database.
+   */
+  public <T> CompletableFuture<T> supply(SqlSupplier<T> supplier) {
+    return this.supply("supply", supplier);
+  }
+
+  private <T> CompletableFuture<T> supply(String method, SqlSupplier<T> supplier) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    long queuedAt = System.nanoTime();
+    try {
+      this.executor.execute(() -> {
+        DatabaseQueryEvent event = new DatabaseQueryEvent();
+        long queueTime = event.isEnabled() ? System.nanoTime() - queuedAt : 0;
+        event.begin();
+        try {
+          T result = supplier.get();
+          commitQueryEvent(event, method, queueTime, result, true);
+          future.complete(result);
+        } catch (SQLException e) {
+          commitQueryEvent(event, method, queueTime, null, false);
+          future.completeExceptionally(new SQLRuntimeException(e));
+        } catch (Throwable e) {
+          commitQueryEvent(event, method, queueTime, null, false);
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+
+    return future;
+  }
+
+  private static void commitQueryEvent(DatabaseQueryEvent event, String method, long queueTime, @Nullable Object result, boolean succeeded) {
+    event.end();
+    if (event.shouldCommit()) {
+      long rows;
+      if (result instanceof Collection) {
+        rows = ((Collection<?>) result).size();
+      } else if (result instanceof Integer) {
+        rows = (Integer) result;
+      } else {
+        rows = result == null ? (succeeded ? 0 : -1) : 1;
+      }
+
+      event.setMethod(method);
+      event.setRows(rows);
+      event.setQueueTime(queueTime);
+      event.setSucceeded(succeeded);
+      event.commit();
+    }
+  }
+
+  public interface DaoFunction<T> {
+
+    T apply(Dao<RegisteredPlayer, String> playerDao) throws SQLException;
+  }
+
+  public interface SqlSupplier<T> {
+
+    T get() throws SQLException;
+  }
+
+  private interface SqlRunnable {
+
+    void run() throws SQLException;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.PreparedUpdate;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Pre-built statements of the hot {@link PlayerRepository} queries with {@link SelectArg} placeholders,
+ * so ORMLite doesn't build the SQL on every call and the driver can reuse its parsed statements.
+ * The placeholders are mutable, so an instance must not be shared between threads.
+ */
+public class PlayerStatements {
+
+  private final Dao<RegisteredPlayer, String> playerDao;
+  private final SelectArg uuidArg = new SelectArg();
+  private final PreparedQuery<RegisteredPlayer> fetchByUuid;
+  private final SelectArg lowercaseNicknameArg = new SelectArg();
+  private final PreparedQuery<RegisteredPlayer> fetchByNickname;
+  private final Map<String, ColumnUpdate> columnUpdates = new HashMap<>();
+
+  public PlayerStatements(Dao<RegisteredPlayer, String> playerDao) throws SQLException {
+    this.playerDao = playerDao;
+
+    QueryBuilder<RegisteredPlayer, String> uuidQuery = playerDao.queryBuilder();
+    uuidQuery.where().eq(RegisteredPlayer.UUID_FIELD, this.uuidArg);
+    this.fetchByUuid = uuidQuery.limit(1L).prepare();
+
+    QueryBuilder<RegisteredPlayer, String> nicknameQuery = playerDao.queryBuilder();
+    nicknameQuery.orderBy(RegisteredPlayer.REG_DATE_FIELD, true).where().eq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, this.lowercaseNicknameArg);
+    this.fetchByNickname = nicknameQuery.limit(1L).prepare();
+  }
+
+  public RegisteredPlayer fetchByUuid(String uuid) throws SQLException {
+    this.uuidArg.setValue(uuid);
+    return this.playerDao.queryForFirst(this.fetchByUuid);
+  }
+
+  /**
+   * Returns the oldest account registered with this nickname.
+   */
+  public RegisteredPlayer fetchByNickname(String lowercaseNickname) throws SQLException {
+    this.lowercaseNicknameArg.setValue(lowercaseNickname);
+    return this.playerDao.queryForFirst(this.fetchByNickname);
+  }
+
+  /**
+   * Sets the column of the accounts matching the where column. The statement of every column pair is prepared on the first use.
+   */
+  public int updateColumn(String whereField, Object whereValue, String field, Object value) throws SQLException {
+    String key = whereField + ' ' + field;
+    ColumnUpdate columnUpdate = this.columnUpdates.get(key);
+    if (columnUpdate == null) {
+      columnUpdate = new ColumnUpdate(this.playerDao, whereField, field);
+      this.columnUpdates.put(key, columnUpdate);
+    }
+
+    columnUpdate.whereArg.setValue(whereValue);
+    columnUpdate.valueArg.setValue(value);
+    return this.playerDao.update(columnUpdate.statement);
+  }
+
+  private static class ColumnUpdate {
+
+    private final SelectArg whereArg = new SelectArg();
+    private final SelectArg valueArg = new SelectArg();
+    private final PreparedUpdate<RegisteredPlayer> statement;
+
+    private ColumnUpdate(Dao<RegisteredPlayer, String> playerDao, String whereField, String field) throws SQLException {
+      UpdateBuilder<RegisteredPlayer, String> updateBuilder = playerDao.updateBuilder();
+      updateBuilder.updateColumnValue(field, this.valueArg);
+      updateBuilder.where().eq(whereField, this.whereArg);
+      this.statement = updateBuilder.prepare();
+    }
+  }
+}
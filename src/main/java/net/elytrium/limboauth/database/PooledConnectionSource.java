@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.jdbc.db.DatabaseTypeUtils;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.Settings;
+
+/**
+ * Bounded connection pool for the network databases (MySQL, MariaDB, PostgreSQL).
+ * Unlike {@link com.j256.ormlite.jdbc.JdbcSingleConnectionSource}, the DAO calls from different threads don't have to wait for each other.
+ */
+public class PooledConnectionSource implements ConnectionSource {
+
+  private static final long HOUSEKEEPING_PERIOD = TimeUnit.SECONDS.toMillis(30);
+  // Connections that were returned to the pool recently are not validated again.
+  private static final long ALIVE_BYPASS_WINDOW = 500;
+
+  private final Deque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+  private final Map<DatabaseConnection, PooledConnection> borrowedConnections = new ConcurrentHashMap<>();
+  private final ThreadLocal<SpecialConnection> specialConnection = new ThreadLocal<>();
+  private final AtomicInteger totalConnections = new AtomicInteger();
+
+  private final DatabaseType databaseType;
+  private final ConnectionFactory connectionFactory;
+  private final Semaphore permits;
+  private final ScheduledExecutorService housekeeper;
+
+  private final int minSize;
+  private final int maxSize;
+  private final long connectionTimeout;
+  private final boolean validateOnBorrow;
+  private final int validationTimeout;
+  private final long maxLifetime;
+  private final long leakDetectionThreshold;
+
+  private volatile boolean open = true;
+
+  public PooledConnectionSource(String url, ConnectionFactory connectionFactory) throws SQLException {
+    Settings.DATABASE.POOL poolConfig = Settings.IMP.DATABASE.POOL;
+    this.databaseType = DatabaseTypeUtils.createDatabaseType(url);
+    this.connectionFactory = connectionFactory;
+    this.maxSize = Math.max(1, poolConfig.MAX_SIZE);
+    this.minSize = Math.max(0, Math.min(poolConfig.MIN_SIZE, this.maxSize));
+    this.connectionTimeout = poolConfig.CONNECTION_TIMEOUT;
+    this.validateOnBorrow = poolConfig.VALIDATE_ON_BORROW;
+    this.validationTimeout = poolConfig.VALIDATION_TIMEOUT;
+    this.maxLifetime = poolConfig.MAX_LIFETIME;
+    this.leakDetectionThreshold = poolConfig.LEAK_DETECTION_THRESHOLD;
+    this.permits = new Semaphore(this.maxSize, true);
+
+    // Fail fast if the database is unreachable or the credentials are wrong.
+    try {
+      this.fillPool();
+    } catch (SQLException | RuntimeException e) {
+      // Nobody can close the pool that failed to construct, so the connections opened before the failure are closed here.
+      this.open = false;
+      PooledConnection connection;
+      while ((connection = this.idleConnections.pollFirst()) != null) {
+        this.closeConnection(connection);
+      }
+
+      throw e;
+    }
+
+    this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth connection pool housekeeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    long period = this.leakDetectionThreshold > 0 ? Math.min(HOUSEKEEPING_PERIOD, this.leakDetectionThreshold) : HOUSEKEEPING_PERIOD;
+    this.housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+    return this.getReadWriteConnection(tableName);
+  }
+
+  @Override
+  public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+    DatabaseConnection special = this.getSpecialConnection(tableName);
+    if (special != null) {
+      return special;
+    }
+
+    if (!this.open) {
+      throw new SQLException("Connection pool is closed");
+    }
+
+    long deadline = System.currentTimeMillis() + this.connectionTimeout;
+    try {
+      if (!this.permits.tryAcquire(this.connectionTimeout, TimeUnit.MILLISECONDS)) {
+        throw new SQLException("Timed out after " + this.connectionTimeout + "ms while waiting for a free database connection"
+            + " (" + this.borrowedConnections.size() + "/" + this.maxSize + " in use)");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a free database connection", e);
+    }
+
+    try {
+      PooledConnection connection = this.takeConnection(deadline);
+      connection.borrowedAt = System.currentTimeMillis();
+      connection.borrowTrace = this.leakDetectionThreshold > 0 ? new Exception("Connection was borrowed here") : null;
+      connection.leakReported = false;
+      this.borrowedConnections.put(connection.connection, connection);
+      return connection.connection;
+    } catch (SQLException | RuntimeException e) {
+      this.permits.release();
+      throw e;
+    }
+  }
+
+  private PooledConnection takeConnection(long deadline) throws SQLException {
+    while (true) {
+      PooledConnection idle = this.idleConnections.pollFirst();
+      if (idle != null) {
+        if (this.isUsable(idle, true)) {
+          return idle;
+        }
+
+        this.closeConnection(idle);
+        continue;
+      }
+
+      if (this.totalConnections.incrementAndGet() <= this.maxSize) {
+        try {
+          return this.createConnection();
+        } catch (SQLException | RuntimeException e) {
+          this.totalConnections.decrementAndGet();
+          throw e;
+        }
+      }
+
+      // Another connection is being closed or returned right now.
+      this.totalConnections.decrementAndGet();
+      if (System.currentTimeMillis() > deadline) {
+        throw new SQLException("Timed out after " + this.connectionTimeout + "ms while waiting for a free database connection");
+      }
+
+      Thread.yield();
+    }
+  }
+
+  @Override
+  public void releaseConnection(DatabaseConnection connection) throws SQLException {
+    SpecialConnection special = this.specialConnection.get();
+    if (special != null && special.connection == connection) {
+      return;
+    }
+
+    PooledConnection pooledConnection = this.borrowedConnections.remove(connection);
+    if (pooledConnection == null) {
+      LimboAuth.getLogger().warn("Tried to release a database connection that does not belong to the pool.");
+      return;
+    }
+
+    pooledConnection.lastUsedAt = System.currentTimeMillis();
+    pooledConnection.borrowTrace = null;
+    try {
+      if (this.open && this.isUsable(pooledConnection, false)) {
+        this.idleConnections.offerFirst(pooledConnection);
+      } else {
+        this.closeConnection(pooledConnection);
+      }
+    } finally {
+      this.permits.release();
+    }
+  }
+
+  @Override
+  public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+    SpecialConnection special = this.specialConnection.get();
+    if (special == null) {
+      this.specialConnection.set(new SpecialConnection(connection));
+      return true;
+    } else if (special.connection == connection) {
+      ++special.nestedCount;
+      return false;
+    } else {
+      throw new SQLException("Trying to save a special connection while another one is already saved in this thread");
+    }
+  }
+
+  @Override
+  public void clearSpecialConnection(DatabaseConnection connection) {
+    SpecialConnection special = this.specialConnection.get();
+    if (special == null || special.connection != connection) {
+      LimboAuth.getLogger().warn("Tried to clear a special database connection that was not saved.");
+      return;
+    }
+
+    if (--special.nestedCount == 0) {
+      this.specialConnection.remove();
+    }
+  }
+
+  @Override
+  public DatabaseConnection getSpecialConnection(String tableName) {
+    SpecialConnection special = this.specialConnection.get();
+    return special == null ? null : special.connection;
+  }
+
+  @Override
+  public void close() {
+    this.open = false;
+    this.housekeeper.shutdownNow();
+
+    PooledConnection connection;
+    while ((connection = this.idleConnections.pollFirst()) != null) {
+      this.closeConnection(connection);
+    }
+
+    // Borrowed connections will be closed after they are released.
+  }
+
+  @Override
+  public void closeQuietly() {
+    this.close();
+  }
+
+  @Override
+  public DatabaseType getDatabaseType() {
+    return this.databaseType;
+  }
+
+  @Override
+  public boolean isOpen(String tableName) {
+    return this.open;
+  }
+
+  @Override
+  public boolean isSingleConnection(String tableName) {
+    return false;
+  }
+
+  public int getActiveConnections() {
+    return this.borrowedConnections.size();
+  }
+
+  public int getIdleConnections() {
+    return this.idleConnections.size();
+  }
+
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  private boolean isUsable(PooledConnection connection, boolean borrowing) {
+    long currentTime = System.currentTimeMillis();
+    if (this.maxLifetime > 0 && currentTime - connection.createdAt > this.maxLifetime) {
+      return false;
+    }
+
+    try {
+      Connection jdbcConnection = connection.connection.getInternalConnection();
+      if (jdbcConnection.isClosed()) {
+        return false;
+      }
+
+      if (borrowing && this.validateOnBorrow && currentTime - connection.lastUsedAt > ALIVE_BYPASS_WINDOW) {
+        return jdbcConnection.isValid(this.validationTimeout);
+      }
+
+      return true;
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private PooledConnection createConnection() throws SQLException {
+    return new PooledConnection(new JdbcDatabaseConnection(this.connectionFactory.create()));
+  }
+
+  private void closeConnection(PooledConnection connection) {
+    this.totalConnections.decrementAndGet();
+    connection.connection.closeQuietly();
+  }
+
+  private void fillPool() throws SQLException {
+    while (this.open && this.totalConnections.get() < this.minSize) {
+      if (this.totalConnections.incrementAndGet() > this.minSize) {
+        this.totalConnections.decrementAndGet();
+        return;
+      }
+
+      try {
+        this.idleConnections.offerLast(this.createConnection());
+      } catch (SQLException | RuntimeException e) {
+        this.totalConnections.decrementAndGet();
+        throw e;
+      }
+    }
+  }
+
+  private void housekeep() {
+    try {
+      for (PooledConnection connection : this.idleConnections) {
+        if (!this.isUsable(connection, false) && this.idleConnections.remove(connection)) {
+          this.closeConnection(connection);
+        }
+      }
+
+      this.fillPool();
+
+      if (this.leakDetectionThreshold > 0) {
+        long currentTime = System.currentTimeMillis();
+        this.borrowedConnections.values().forEach(connection -> {
+          if (!connection.leakReported && currentTime - connection.borrowedAt > this.leakDetectionThreshold) {
+            connection.leakReported = true;
+            LimboAuth.getLogger().warn("Database connection was borrowed " + (currentTime - connection.borrowedAt)
+                + "ms ago and wasn't returned yet, possible connection leak detected.", connection.borrowTrace);
+          }
+        });
+      }
+    } catch (Throwable e) {
+      LimboAuth.getLogger().error("Unable to maintain the database connection pool.", e);
+    }
+  }
+
+  public interface ConnectionFactory {
+
+    Connection create() throws SQLException;
+  }
+
+  private static class PooledConnection {
+
+    private final JdbcDatabaseConnection connection;
+    private final long createdAt = System.currentTimeMillis();
+
+    private volatile long lastUsedAt = this.createdAt;
+    private volatile long borrowedAt;
+    private volatile Exception borrowTrace;
+    private volatile boolean leakReported;
+
+    private PooledConnection(JdbcDatabaseConnection connection) {
+      this.connection = connection;
+    }
+  }
+
+  private static class SpecialConnection {
+
+    private final DatabaseConnection connection;
+    private int nestedCount = 1;
+
+    private SpecialConnection(DatabaseConnection connection) {
+      this.connection = connection;
+    }
+  }
+}
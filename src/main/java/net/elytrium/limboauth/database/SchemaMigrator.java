@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableInfo;
+import com.j256.ormlite.table.TableUtils;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.dependencies.DatabaseLibrary;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.SchemaVersion;
+
+/**
+ * Keeps the players table up to date: adds the missing columns, applies the versioned migrations
+ * and makes sure that the secondary indexes used by the lookups exist.
+ * The applied version is stored in the {@link SchemaVersion} table, one row per migrated table.
+ */
+public class SchemaMigrator {
+
+  private static final List<Index> INDEXES = List.of(
+      // REGDATE is included, because the oldest account with the nickname is looked up.
+      new Index("AUTH_LOWERCASENICKNAME_IDX", RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, RegisteredPlayer.REG_DATE_FIELD),
+      new Index("AUTH_NICKNAME_IDX", RegisteredPlayer.NICKNAME_FIELD),
+      new Index("AUTH_IP_IDX", RegisteredPlayer.IP_FIELD)
+  );
+  // Created by the v1 migration, UUID is the primary key, so the lookups by it are already indexed.
+  private static final List<String> DROPPED_INDEXES = List.of("AUTH_UUID_TYPE_IDX");
+
+  private static final List<Migration> MIGRATIONS = List.of(
+      new Migration(1, "secondary indexes", (playerDao, databaseLibrary) -> createIndexes(playerDao)),
+      new Migration(2, "redundant UUID index", SchemaMigrator::dropIndexes)
+  );
+
+  public static final int SCHEMA_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+
+  private final Dao<RegisteredPlayer, String> playerDao;
+  private final DatabaseLibrary databaseLibrary;
+  private final String database;
+
+  public SchemaMigrator(Dao<RegisteredPlayer, String> playerDao, DatabaseLibrary databaseLibrary, String database) {
+    this.playerDao = playerDao;
+    this.databaseLibrary = databaseLibrary;
+    this.database = database;
+  }
+
+  public void migrate() throws SQLException {
+    addMissingColumns(this.playerDao, this.databaseLibrary, this.database);
+
+    ConnectionSource connectionSource = this.playerDao.getConnectionSource();
+    TableUtils.createTableIfNotExists(connectionSource, SchemaVersion.class);
+    Dao<SchemaVersion, String> versionDao = DaoManager.createDao(connectionSource, SchemaVersion.class);
+
+    String tableName = this.playerDao.getTableName();
+    SchemaVersion schemaVersion = versionDao.queryForId(tableName);
+    int appliedVersion = schemaVersion == null ? 0 : schemaVersion.getVersion();
+    if (appliedVersion > SCHEMA_VERSION) {
+      LimboAuth.getLogger().warn("The " + tableName + " table schema (v" + appliedVersion + ") is newer than the supported one (v"
+          + SCHEMA_VERSION + "), was the plugin downgraded?");
+    }
+
+    for (Migration migration : MIGRATIONS) {
+      if (migration.version <= appliedVersion) {
+        continue;
+      }
+
+      LimboAuth.getLogger().info("Migrating the " + tableName + " table to v" + migration.version + " (" + migration.description + ")...");
+      migration.action.apply(this.playerDao, this.databaseLibrary);
+
+      if (schemaVersion == null) {
+        schemaVersion = new SchemaVersion(tableName, migration.version, System.currentTimeMillis());
+        versionDao.create(schemaVersion);
+      } else {
+        schemaVersion.setVersion(migration.version);
+        schemaVersion.setAppliedAt(System.currentTimeMillis());
+        versionDao.update(schemaVersion);
+      }
+    }
+
+    if (appliedVersion >= 1) {
+      // The indexes could have been dropped manually, they are checked on every start.
+      List<Index> missingIndexes = findMissingIndexes(this.playerDao);
+      if (!missingIndexes.isEmpty()) {
+        LimboAuth.getLogger().warn("Recreating missing indexes of the " + tableName + " table: " + missingIndexes);
+        createIndexes(this.playerDao, missingIndexes);
+      }
+    }
+  }
+
+  private static void createIndexes(Dao<RegisteredPlayer, String> playerDao) throws SQLException {
+    createIndexes(playerDao, findMissingIndexes(playerDao));
+  }
+
+  private static void createIndexes(Dao<RegisteredPlayer, String> playerDao, List<Index> indexes) throws SQLException {
+    DatabaseType databaseType = playerDao.getConnectionSource().getDatabaseType();
+    for (Index index : indexes) {
+      StringBuilder builder = new StringBuilder("CREATE INDEX ");
+      databaseType.appendEscapedEntityName(builder, index.name);
+      builder.append(" ON ");
+      databaseType.appendEscapedEntityName(builder, playerDao.getTableName());
+      builder.append(" (");
+      for (int i = 0; i < index.columns.length; ++i) {
+        if (i != 0) {
+          builder.append(", ");
+        }
+
+        databaseType.appendEscapedEntityName(builder, index.columns[i]);
+      }
+
+      builder.append(')');
+      playerDao.executeRawNoArgs(builder.toString());
+    }
+  }
+
+  private static void dropIndexes(Dao<RegisteredPlayer, String> playerDao, DatabaseLibrary databaseLibrary) throws SQLException {
+    DatabaseType databaseType = playerDao.getConnectionSource().getDatabaseType();
+    Map<String, Map<Integer, String>> existingIndexes = readIndexes(playerDao);
+    for (String index : DROPPED_INDEXES) {
+      if (!existingIndexes.containsKey(index)) {
+        continue;
+      }
+
+      StringBuilder builder = new StringBuilder("DROP INDEX ");
+      databaseType.appendEscapedEntityName(builder, index);
+      if (databaseLibrary == DatabaseLibrary.MYSQL || databaseLibrary == DatabaseLibrary.MARIADB) {
+        // The MySQL indexes belong to the table.
+        builder.append(" ON ");
+        databaseType.appendEscapedEntityName(builder, playerDao.getTableName());
+      }
+
+      playerDao.executeRawNoArgs(builder.toString());
+    }
+  }
+
+  /**
+   * Uses the JDBC metadata, so the check works the same way on every backend. An index is considered present
+   * if any index of the table starts with the same columns, e.g. one created by the server owner.
+   */
+  private static List<Index> findMissingIndexes(Dao<RegisteredPlayer, String> playerDao) throws SQLException {
+    Map<String, Map<Integer, String>> existingIndexes = readIndexes(playerDao);
+    List<Index> missingIndexes = new ArrayList<>();
+    for (Index index : INDEXES) {
+      if (existingIndexes.containsKey(index.name)) {
+        continue;
+      }
+
+      boolean covered = existingIndexes.values().stream().anyMatch(columns -> index.isCoveredBy(new ArrayList<>(columns.values())));
+      if (!covered) {
+        missingIndexes.add(index);
+      }
+    }
+
+    return missingIndexes;
+  }
+
+  /**
+   * Reads the columns of every index of the table, by the case-insensitive index name.
+   */
+  private static Map<String, Map<Integer, String>> readIndexes(Dao<RegisteredPlayer, String> playerDao) throws SQLException {
+    String tableName = playerDao.getTableName();
+    ConnectionSource connectionSource = playerDao.getConnectionSource();
+    DatabaseConnection databaseConnection = connectionSource.getReadOnlyConnection(tableName);
+    Map<String, Map<Integer, String>> existingIndexes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    try {
+      Connection connection = databaseConnection.getUnderlyingConnection();
+      DatabaseMetaData metaData = connection.getMetaData();
+      try (ResultSet resultSet = metaData.getIndexInfo(connection.getCatalog(), null, tableName, false, true)) {
+        while (resultSet.next()) {
+          String indexName = resultSet.getString("INDEX_NAME");
+          String columnName = resultSet.getString("COLUMN_NAME");
+          if (indexName != null && columnName != null) {
+            existingIndexes.computeIfAbsent(indexName, name -> new TreeMap<>()).put((int) resultSet.getShort("ORDINAL_POSITION"), columnName);
+          }
+        }
+      }
+    } finally {
+      connectionSource.releaseConnection(databaseConnection);
+    }
+
+    return existingIndexes;
+  }
+
+  public static void addMissingColumns(Dao<?, ?> dao, DatabaseLibrary databaseLibrary, String database) throws SQLException {
+    TableInfo<?, ?> tableInfo = dao.getTableInfo();
+
+    Set<FieldType> tables = new HashSet<>();
+    Collections.addAll(tables, tableInfo.getFieldTypes());
+
+    String findSql;
+    String tableName = tableInfo.getTableName();
+    switch (databaseLibrary) {
+      case SQLITE: {
+        findSql = "SELECT name FROM PRAGMA_TABLE_INFO('" + tableName + "')";
+        break;
+      }
+      case H2_LEGACY_V1:
+      case H2: {
+        findSql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = '" + tableName + "';";
+        break;
+      }
+      case POSTGRESQL: {
+        findSql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_CATALOG = '" + database + "' AND TABLE_NAME = '" + tableName + "';";
+        break;
+      }
+      case MARIADB:
+      case MYSQL: {
+        findSql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = '" + database + "' AND TABLE_NAME = '" + tableName + "';";
+        break;
+      }
+      default: {
+        throw new SQLException("Unsupported database type: " + databaseLibrary);
+      }
+    }
+
+    try {
+      // Closed explicitly, as the close() of the raw results is declared to throw any Exception, and -Xlint:try warns about it.
+      GenericRawResults<String[]> queryResult = dao.queryRaw(findSql);
+      try {
+        queryResult.forEach(result -> tables.removeIf(table -> table.getColumnName().equalsIgnoreCase(result[0])));
+      } finally {
+        queryResult.close();
+      }
+
+      DatabaseType databaseType = dao.getConnectionSource().getDatabaseType();
+      for (FieldType table : tables) {
+        StringBuilder builder = new StringBuilder("ALTER TABLE ");
+        if (databaseLibrary == DatabaseLibrary.POSTGRESQL) {
+          builder.append('"');
+        }
+        builder.append(tableName);
+        if (databaseLibrary == DatabaseLibrary.POSTGRESQL) {
+          builder.append('"');
+        }
+        builder.append(" ADD ");
+        String columnDefinition = table.getColumnDefinition();
+        if (columnDefinition == null) {
+          List<String> dummy = List.of();
+          databaseType.appendColumnArg(table.getTableName(), builder, table, dummy, dummy, dummy, dummy);
+        } else {
+          databaseType.appendEscapedEntityName(builder, table.getColumnName());
+          builder.append(" ").append(columnDefinition).append(" ");
+        }
+
+        dao.executeRawNoArgs(builder.toString());
+      }
+    } catch (SQLException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SQLException(e);
+    }
+  }
+
+  private static class Index {
+
+    private final String name;
+    private final String[] columns;
+
+    private Index(String name, String... columns) {
+      this.name = name;
+      this.columns = columns;
+    }
+
+    private boolean isCoveredBy(List<String> indexColumns) {
+      if (indexColumns.size() < this.columns.length) {
+        return false;
+      }
+
+      for (int i = 0; i < this.columns.length; ++i) {
+        if (!this.columns[i].equalsIgnoreCase(indexColumns.get(i))) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return this.name + " (" + String.join(", ", this.columns).toUpperCase(Locale.ROOT) + ")";
+    }
+  }
+
+  private static class Migration {
+
+    private final int version;
+    private final String description;
+    private final MigrationAction action;
+
+    private Migration(int version, String description, MigrationAction action) {
+      this.version = version;
+      this.description = description;
+      this.action = action;
+    }
+  }
+
+  private interface MigrationAction {
+
+    void apply(Dao<RegisteredPlayer, String> playerDao, DatabaseLibrary databaseLibrary) throws SQLException;
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.database;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Copies the players table to another database while the plugin keeps using the current one.
+ * The table is split into UUID ranges that are copied in parallel with the keyset pagination.
+ * The accounts changed during the copy are tracked through the {@link PlayerCache} invalidations and the {@link LoginDataWriter} flushes,
+ * and copied again,
+ * then the row counts and checksums of both tables are compared. They are taken by iterating over the whole tables without the pagination,
+ * so the rows missed by the pagination or ordered differently by the target database are noticed. The caller switches the database only if they match,
+ * stopping the source repository and copying the last changes with {@link #finish()} in between.
+ */
+public class StorageMigrator {
+
+  // The ranges are split by the first character of the UUID: (-inf, "1"), ["1", "2"), ..., ["f", +inf).
+  // They are half-open, so every UUID falls into exactly one of them whatever the collation of the source database is,
+  // the bounds only spread the accounts between the ranges.
+  private static final String[] RANGE_BOUNDS = {"1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"};
+  private static final int MAX_VERIFY_ATTEMPTS = 3;
+  private static final HashFunction CHECKSUM_FUNCTION = Hashing.murmur3_128();
+
+  private final PlayerRepository source;
+  private final Dao<RegisteredPlayer, String> targetDao;
+  private final PlayerBatchInsert targetInsert;
+  private final String deleteByUuidSql;
+  private final String deleteByNicknameSql;
+  private final int batchSize;
+  private final int threads;
+  private final Set<String> changedUuids = ConcurrentHashMap.newKeySet();
+  private final Set<String> changedNicknames = ConcurrentHashMap.newKeySet();
+  private final BiConsumer<String, String> changeListener = (uuid, lowercaseNickname) -> {
+    if (uuid != null) {
+      this.changedUuids.add(uuid);
+    }
+
+    if (lowercaseNickname != null) {
+      this.changedNicknames.add(lowercaseNickname);
+    }
+  };
+  private final Consumer<Collection<String>> loginDataListener = this.changedUuids::addAll;
+  private final AtomicLong copied = new AtomicLong();
+
+  /**
+   * @param threads Amount of ranges copied at the same time, should be 1 if the target database has a single connection.
+   */
+  public StorageMigrator(PlayerRepository source, Dao<RegisteredPlayer, String> targetDao, int batchSize, int threads) {
+    this.source = source;
+    this.targetDao = targetDao;
+    this.targetInsert = new PlayerBatchInsert(targetDao);
+    this.deleteByUuidSql = this.deleteSql(RegisteredPlayer.UUID_FIELD);
+    this.deleteByNicknameSql = this.deleteSql(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD);
+    this.batchSize = Math.max(1, batchSize);
+    this.threads = Math.max(1, threads);
+  }
+
+  private String deleteSql(String column) {
+    DatabaseType databaseType = this.targetDao.getConnectionSource().getDatabaseType();
+    StringBuilder sql = new StringBuilder("DELETE FROM ");
+    databaseType.appendEscapedEntityName(sql, this.targetDao.getTableName());
+    sql.append(" WHERE ");
+    databaseType.appendEscapedEntityName(sql, column);
+    return sql.append(" = ?").toString();
+  }
+
+  /**
+   * Copies and verifies the accounts, blocking the current thread. The changes are tracked until {@link #close()}.
+   * The last changes are copied again by {@link #copyChanged()} right before switching the database.
+   *
+   * @param listener       Receives the status messages, including the progress every {@code reportInterval} milliseconds.
+   * @param reportInterval Interval between the progress reports in milliseconds.
+   * @throws IllegalStateException if the target table is not empty or the accounts still differ after the verification
+   */
+  public void migrate(Consumer<String> listener, long reportInterval) throws Exception {
+    this.source.getCache().addInvalidationListener(this.changeListener);
+    this.source.getLoginDataWriter().addFlushListener(this.loginDataListener);
+
+    long targetCount = this.targetDao.countOf();
+    if (targetCount != 0) {
+      throw new IllegalStateException("The target table already has " + targetCount + " accounts, the migration needs an empty one");
+    }
+
+    List<Range> ranges = new ArrayList<>(RANGE_BOUNDS.length + 1);
+    for (int i = 0; i <= RANGE_BOUNDS.length; ++i) {
+      ranges.add(new Range(i == 0 ? null : RANGE_BOUNDS[i - 1], i == RANGE_BOUNDS.length ? null : RANGE_BOUNDS[i]));
+    }
+
+    long total = this.source.countAll().join();
+    listener.accept("Copying " + total + " accounts with " + this.threads + " threads...");
+    this.runRanges(ranges, range -> {
+      this.copyRange(range);
+      return true;
+    }, () -> listener.accept("Copied " + this.copied.get() + "/" + total + " accounts..."), reportInterval);
+
+    for (int attempt = 1; ; ++attempt) {
+      listener.accept("Copying the accounts changed during the migration...");
+      this.copyChanged();
+
+      listener.accept("Comparing the row counts and checksums of the tables...");
+      // The source table is read on the repository executor, as the file databases share a single connection between all the queries.
+      Checksum sourceChecksum = this.source.query(StorageMigrator::checksum).join();
+      Checksum targetChecksum = checksum(this.targetDao);
+      if (sourceChecksum.equals(targetChecksum)) {
+        return;
+      }
+
+      // The accounts could have been changed during the verification, they are copied again and checked once more.
+      if (attempt == MAX_VERIFY_ATTEMPTS) {
+        throw new IllegalStateException("The tables differ after " + attempt + " attempts: " + sourceChecksum.count + " source accounts, "
+            + targetChecksum.count + " target accounts");
+      }
+    }
+  }
+
+  /**
+   * Copies again the accounts changed since the previous call.
+   */
+  public void copyChanged() throws SQLException {
+    this.copyChanged(false);
+  }
+
+  /**
+   * Copies the last changes after the source repository has been {@link PlayerRepository#shutdown() shut down},
+   * which also writes its pending login data. The source table is read directly, as the repository executor doesn't accept the queries anymore.
+   */
+  public void finish() throws SQLException {
+    this.copyChanged(true);
+  }
+
+  private void copyChanged(boolean sourceStopped) throws SQLException {
+    for (String uuid : drain(this.changedUuids)) {
+      List<RegisteredPlayer> accounts = this.querySource(sourceStopped, playerDao -> playerDao.queryForEq(RegisteredPlayer.UUID_FIELD, uuid));
+      this.replace(this.deleteByUuidSql, uuid, accounts);
+    }
+
+    for (String lowercaseNickname : drain(this.changedNicknames)) {
+      List<RegisteredPlayer> accounts = this.querySource(sourceStopped,
+          playerDao -> playerDao.queryForEq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, lowercaseNickname));
+      this.replace(this.deleteByNicknameSql, lowercaseNickname, accounts);
+    }
+  }
+
+  private <T> T querySource(boolean sourceStopped, PlayerRepository.DaoFunction<T> function) throws SQLException {
+    return sourceStopped ? function.apply(this.source.getPlayerDao()) : this.source.query(function).join();
+  }
+
+  /**
+   * Stops tracking the changes.
+   */
+  public void close() {
+    this.source.getCache().removeInvalidationListener(this.changeListener);
+    this.source.getLoginDataWriter().removeFlushListener(this.loginDataListener);
+  }
+
+  private void copyRange(Range range) throws SQLException {
+    String afterUuid = null;
+    while (true) {
+      List<RegisteredPlayer> page = this.source.fetchPage(afterUuid, range.fromUuid, range.beforeUuid, this.batchSize).join();
+      this.inTransaction(connection -> {
+        try (PreparedStatement statement = connection.prepareStatement(this.targetInsert.getSql())) {
+          for (RegisteredPlayer player : page) {
+            this.targetInsert.addBatch(statement, player);
+          }
+
+          if (!page.isEmpty()) {
+            statement.executeBatch();
+          }
+        }
+      });
+
+      this.copied.addAndGet(page.size());
+      if (page.size() < this.batchSize) {
+        return;
+      }
+
+      afterUuid = page.get(page.size() - 1).getUuid();
+    }
+  }
+
+  private void replace(String deleteSql, String key, List<RegisteredPlayer> accounts) throws SQLException {
+    this.inTransaction(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(deleteSql)) {
+        statement.setString(1, key);
+        statement.executeUpdate();
+      }
+
+      // The account could have been renamed, so it is also removed by the UUID.
+      try (PreparedStatement statement = connection.prepareStatement(this.deleteByUuidSql)) {
+        for (RegisteredPlayer player : accounts) {
+          statement.setString(1, player.getUuid());
+          statement.addBatch();
+        }
+
+        if (!accounts.isEmpty()) {
+          statement.executeBatch();
+        }
+      }
+
+      try (PreparedStatement statement = connection.prepareStatement(this.targetInsert.getSql())) {
+        for (RegisteredPlayer player : accounts) {
+          this.targetInsert.addBatch(statement, player);
+        }
+
+        if (!accounts.isEmpty()) {
+          statement.executeBatch();
+        }
+      }
+    });
+  }
+
+  private static Checksum checksum(Dao<RegisteredPlayer, String> playerDao) throws SQLException {
+    Checksum checksum = new Checksum();
+    CloseableIterator<RegisteredPlayer> iterator = playerDao.iterator(playerDao.queryBuilder()
+        .selectColumns(RegisteredPlayer.UUID_FIELD, RegisteredPlayer.NICKNAME_FIELD, RegisteredPlayer.HASH_FIELD, RegisteredPlayer.TOTP_TOKEN_FIELD,
+            RegisteredPlayer.UUID_TYPE_FIELD, RegisteredPlayer.REG_DATE_FIELD)
+        .prepare());
+    try {
+      iterator.forEachRemaining(checksum::add);
+    } finally {
+      iterator.closeQuietly();
+    }
+
+    return checksum;
+  }
+
+  private void inTransaction(SqlConsumer<Connection> action) throws SQLException {
+    ConnectionSource connectionSource = this.targetDao.getConnectionSource();
+    DatabaseConnection databaseConnection = connectionSource.getReadWriteConnection(this.targetDao.getTableName());
+    try {
+      Connection connection = databaseConnection.getUnderlyingConnection();
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        action.accept(connection);
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    } finally {
+      connectionSource.releaseConnection(databaseConnection);
+    }
+  }
+
+  private <T> List<T> runRanges(List<Range> ranges, RangeTask<T> task, Runnable progressReporter, long reportInterval) throws Exception {
+    AtomicInteger threadCounter = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, ranges.size()), runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth storage migration thread #" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      List<Future<T>> futures = new ArrayList<>(ranges.size());
+      for (Range range : ranges) {
+        futures.add(executor.submit(() -> task.run(range)));
+      }
+
+      List<T> results = new ArrayList<>(ranges.size());
+      for (Future<T> future : futures) {
+        while (true) {
+          try {
+            results.add(future.get(reportInterval, TimeUnit.MILLISECONDS));
+            break;
+          } catch (TimeoutException e) {
+            progressReporter.run();
+          }
+        }
+      }
+
+      return results;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+
+      throw e;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<String> drain(Set<String> set) {
+    List<String> values = new ArrayList<>();
+    for (Iterator<String> iterator = set.iterator(); iterator.hasNext(); ) {
+      values.add(iterator.next());
+      iterator.remove();
+    }
+
+    return values;
+  }
+
+  /**
+   * Order-independent checksum of the authentication data, the login IPs and dates are excluded as they are updated constantly.
+   */
+  private static class Checksum {
+
+    private long count;
+    private long sum;
+
+    private void add(RegisteredPlayer player) {
+      Hasher hasher = CHECKSUM_FUNCTION.newHasher();
+      putString(hasher, player.getUuid());
+      putString(hasher, player.getNickname());
+      putString(hasher, player.getHash());
+      putString(hasher, player.getTotpToken());
+      hasher.putInt(player.getUuidType());
+      putLong(hasher, player.getNullableRegDate());
+      ++this.count;
+      this.sum += hasher.hash().asLong();
+    }
+
+    private static void putString(Hasher hasher, @Nullable String value) {
+      hasher.putString(String.valueOf(value), StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+
+    private static void putLong(Hasher hasher, @Nullable Long value) {
+      if (value == null) {
+        hasher.putByte((byte) 0);
+      } else {
+        hasher.putByte((byte) 1).putLong(value);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Checksum)) {
+        return false;
+      }
+
+      Checksum checksum = (Checksum) o;
+      return this.count == checksum.count && this.sum == checksum.sum;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(this.count * 31 + this.sum);
+    }
+  }
+
+  private static class Range {
+
+    private final String fromUuid;
+    private final String beforeUuid;
+
+    private Range(@Nullable String fromUuid, @Nullable String beforeUuid) {
+      this.fromUuid = fromUuid;
+      this.beforeUuid = beforeUuid;
+    }
+
+    @Override
+    public String toString() {
+      return (this.fromUuid == null ? "(-inf" : "[" + this.fromUuid) + ", " + (this.beforeUuid == null ? "+inf" : this.beforeUuid) + ")";
+    }
+  }
+
+  private interface RangeTask<T> {
+
+    T run(Range range) throws Exception;
+  }
+
+  private interface SqlConsumer<T> {
+
+    void accept(T value) throws SQLException;
+  }
+}
@@ -31,16 +31,21 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import net.elytrium.limboauth.database.PooledConnectionSource;
 
 public enum DatabaseLibrary {
   H2_LEGACY_V1(
       BaseLibrary.H2_V1,
+          false,
           (classLoader, dir, jdbc, user, password) -> fromDriver(classLoader.loadClass("org.h2.Driver"), jdbc, null, null, false),
           (dir, hostname, database) -> "jdbc:h2:" + dir + "/limboauth"
   ),
   H2(
       BaseLibrary.H2_V2,
+          false,
           (classLoader, dir, jdbc, user, password) -> {
             Connection modernConnection = fromDriver(classLoader.loadClass("org.h2.Driver"), jdbc, null, null, true);
 
@@ -67,35 +72,55 @@ public enum DatabaseLibrary {
   ),
   MYSQL(
       BaseLibrary.MYSQL,
+          true,
           (classLoader, dir, jdbc, user, password)
-              -> fromDriver(classLoader.loadClass("com.mysql.cj.jdbc.NonRegisteringDriver"), jdbc, user, password, true),
+              -> fromDriver(classLoader.loadClass("com.mysql.cj.jdbc.NonRegisteringDriver"), jdbc, user, password, true, Map.of(
+                  "useServerPrepStmts", "true",
+                  "cachePrepStmts", "true",
+                  "prepStmtCacheSize", "64",
+                  "prepStmtCacheSqlLimit", "2048"
+              )),
           (dir, hostname, database) ->
               "jdbc:mysql://" + hostname + "/" + database
   ),
   MARIADB(
       BaseLibrary.MARIADB,
+          true,
           (classLoader, dir, jdbc, user, password)
-              -> fromDriver(classLoader.loadClass("org.mariadb.jdbc.Driver"), jdbc, user, password, true),
+              -> fromDriver(classLoader.loadClass("org.mariadb.jdbc.Driver"), jdbc, user, password, true, Map.of(
+                  "useServerPrepStmts", "true",
+                  "cachePrepStmts", "true",
+                  "prepStmtCacheSize", "64"
+              )),
           (dir, hostname, database) ->
               "jdbc:mariadb://" + hostname + "/" + database
   ),
   POSTGRESQL(
       BaseLibrary.POSTGRESQL,
-          (classLoader, dir, jdbc, user, password) -> fromDriver(classLoader.loadClass("org.postgresql.Driver"), jdbc, user, password, true),
+          true,
+          (classLoader, dir, jdbc, user, password) -> fromDriver(classLoader.loadClass("org.postgresql.Driver"), jdbc, user, password, true, Map.of(
+              // Use the server-side prepared statement from the first execution instead of the fifth one.
+              "prepareThreshold", "1"
+          )),
           (dir, hostname, database) -> "jdbc:postgresql://" + hostname + "/" + database
   ),
   SQLITE(
       BaseLibrary.SQLITE,
+          false,
           (classLoader, dir, jdbc, user, password) -> fromDriver(classLoader.loadClass("org.sqlite.JDBC"), jdbc, user, password, true),
           (dir, hostname, database) -> "jdbc:sqlite:" + dir + "/limboauth.db"
   );
 
+  private static final Map<Class<?>, Driver> DRIVERS = new HashMap<>();
+
   private final BaseLibrary baseLibrary;
+  private final boolean pooled;
   private final DatabaseConnector connector;
   private final DatabaseStringGetter stringGetter;
 
-  DatabaseLibrary(BaseLibrary baseLibrary, DatabaseConnector connector, DatabaseStringGetter stringGetter) {
+  DatabaseLibrary(BaseLibrary baseLibrary, boolean pooled, DatabaseConnector connector, DatabaseStringGetter stringGetter) {
     this.baseLibrary = baseLibrary;
+    this.pooled = pooled;
     this.connector = connector;
     this.stringGetter = stringGetter;
   }
@@ -128,14 +153,36 @@ public enum DatabaseLibrary {
     addPath.setAccessible(true);
     addPath.invoke(currentClassLoader, Path.of(baseLibraryURL.toURI()));
 
-    return new JdbcSingleConnectionSource(jdbc, this.connect(currentClassLoader, dir, jdbc, user, password));
+    if (this.pooled) {
+      return new PooledConnectionSource(jdbc, () -> {
+        try {
+          return this.connect(currentClassLoader, dir, jdbc, user, password);
+        } catch (ReflectiveOperationException | IOException e) {
+          throw new SQLException(e);
+        }
+      });
+    } else {
+      // File-based databases don't benefit from concurrent connections, so we keep a single writer for them.
+      return new JdbcSingleConnectionSource(jdbc, this.connect(currentClassLoader, dir, jdbc, user, password));
+    }
+  }
+
+  public boolean isPooled() {
+    return this.pooled;
   }
 
   private static Connection fromDriver(Class<?> connectionClass, String jdbc, String user, String password, boolean register)
       throws ReflectiveOperationException, SQLException {
-    Constructor<?> legacyConstructor = connectionClass.getConstructor();
+    return fromDriver(connectionClass, jdbc, user, password, register, Map.of());
+  }
 
+  /**
+   * @param properties Default driver properties, e.g. the statement cache settings. The JDBC URL parameters take precedence over them.
+   */
+  private static Connection fromDriver(Class<?> connectionClass, String jdbc, String user, String password, boolean register,
+      Map<String, String> properties) throws ReflectiveOperationException, SQLException {
     Properties info = new Properties();
+    info.putAll(properties);
     if (user != null) {
       info.put("user", user);
     }
@@ -144,11 +191,21 @@ public enum DatabaseLibrary {
       info.put("password", password);
     }
 
-    Object driver = legacyConstructor.newInstance();
-
-    DriverManager.deregisterDriver((Driver) driver);
-    if (register) {
-      DriverManager.registerDriver((Driver) driver);
+    Driver driver;
+    // Reuse the driver instance, otherwise every pooled connection would register one more driver in the DriverManager.
+    synchronized (DRIVERS) {
+      driver = DRIVERS.get(connectionClass);
+      if (driver == null) {
+        Constructor<?> legacyConstructor = connectionClass.getConstructor();
+        driver = (Driver) legacyConstructor.newInstance();
+
+        DriverManager.deregisterDriver(driver);
+        if (register) {
+          DriverManager.registerDriver(driver);
+        }
+
+        DRIVERS.put(connectionClass, driver);
+      }
     }
 
     Method connect = connectionClass.getDeclaredMethod("connect", String.class, Properties.class);
@@ -32,18 +32,23 @@ import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.*;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.limboapi.api.Limbo;
 import net.elytrium.limboapi.api.LimboSessionHandler;
 import net.elytrium.limboapi.api.player.LimboPlayer;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.IpLimiter;
+import net.elytrium.limboauth.database.PlayerRepository;
 import net.elytrium.limboauth.event.PostAuthorizationEvent;
 import net.elytrium.limboauth.event.PostRegisterEvent;
 import net.elytrium.limboauth.event.TaskEvent;
+import net.elytrium.limboauth.hash.HashingExecutor;
+import net.elytrium.limboauth.jfr.HashVerificationEvent;
+import net.elytrium.limboauth.jfr.LimboSessionEvent;
+import net.elytrium.limboauth.metrics.MetricsRegistry;
 import net.elytrium.limboauth.migration.MigrationHash;
 import net.elytrium.limboauth.model.RegisteredPlayer;
 import net.elytrium.limboauth.model.SQLRuntimeException;
@@ -59,10 +64,10 @@ public class AuthSessionHandler implements LimboSessionHandler {
   private static final BCrypt.Verifyer HASH_VERIFIER = BCrypt.verifyer();
   private static final BCrypt.Hasher HASHER = BCrypt.withDefaults();
 
-  private static BossBar.Color bossbarColor;
-  private static BossBar.Overlay bossbarOverlay;
+  private static Component[] bossBarNames;
   private static Component ipLimitKick;
   private static Component databaseErrorKick;
+  private static Component serverBusy;
   private static String wrongNicknameCaseKick;
 
   private static Component timesUp;
@@ -90,33 +95,37 @@ public class AuthSessionHandler implements LimboSessionHandler {
   private static Title loginSuccessfulTitle;
   @Nullable
   private static MigrationHash migrationHash;
+  private static ChatCommandTable commandTable;
 
-  private final Dao<RegisteredPlayer, String> playerDao;
   private final Player proxyPlayer;
   private final LimboAuth plugin;
 
   private final long joinTime = System.currentTimeMillis();
-  private final BossBar bossBar = BossBar.bossBar(
-      Component.empty(),
-      1.0F,
-      bossbarColor,
-      bossbarOverlay
-  );
+  private final ChatCommandTable.Tokens tokens = new ChatCommandTable.Tokens();
+  private final LimboSessionEvent sessionEvent = new LimboSessionEvent();
   private final boolean loginOnlyByMod = Settings.IMP.MAIN.MOD.ENABLED && Settings.IMP.MAIN.MOD.LOGIN_ONLY_BY_MOD;
 
   @Nullable
   private RegisteredPlayer playerInfo;
 
-  private ScheduledFuture<?> authMainTask;
+  private AuthSessionTicker.Entry tickerEntry;
 
   private LimboPlayer player;
   private int attempts = Settings.IMP.MAIN.LOGIN_ATTEMPTS;
   private boolean totpState;
   private String tempPassword;
   private boolean tokenReceived;
+  // Mod session token received before the spawn checks were finished.
+  private long[] pendingToken;
+  private boolean awaitingDatabase = true;
+  // Only one password of the player is checked at a time, the other attempts are ignored until the result is known.
+  private boolean awaitingHash;
+  private boolean disconnected;
 
-  public AuthSessionHandler(Dao<RegisteredPlayer, String> playerDao, Player proxyPlayer, LimboAuth plugin, @Nullable RegisteredPlayer playerInfo) {
-    this.playerDao = playerDao;
+  /**
+   * The player repository is looked up from the plugin every time, so the session survives the reloads that replace it.
+   */
+  public AuthSessionHandler(Player proxyPlayer, LimboAuth plugin, @Nullable RegisteredPlayer playerInfo) {
     this.proxyPlayer = proxyPlayer;
     this.plugin = plugin;
     this.playerInfo = playerInfo;
@@ -125,6 +134,8 @@ public class AuthSessionHandler implements LimboSessionHandler {
   @Override
   public void onSpawn(Limbo server, LimboPlayer player) {
     this.player = player;
+    this.sessionEvent.begin();
+    this.sessionEvent.setRegistration(this.playerInfo == null);
 
     if (Settings.IMP.MAIN.DISABLE_FALLING) {
       this.player.disableFalling();
@@ -133,104 +144,114 @@ public class AuthSessionHandler implements LimboSessionHandler {
     }
 
     Serializer serializer = LimboAuth.getSerializer();
-
-    try {
-      List<RegisteredPlayer> playerList = playerDao.queryForEq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, this.proxyPlayer.getUsername().toLowerCase(Locale.ROOT));
-      if (playerList != null && !playerList.isEmpty()) {
-        playerList = new ArrayList<>(playerList);
-        playerList.sort(Comparator.comparingLong(RegisteredPlayer::getRegDate));
-        if (!this.proxyPlayer.getUsername().equals(playerList.get(0).getNickname())) {
-          this.proxyPlayer.disconnect(serializer.deserialize(
-                  MessageFormat.format(wrongNicknameCaseKick, playerList.get(0).getNickname(), this.proxyPlayer.getUsername()))
-          );
-          return;
-        }
-      }
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
-    }
-    if (this.playerInfo == null) {
-      try {
-        String ip = this.proxyPlayer.getRemoteAddress().getAddress().getHostAddress();
-        List<RegisteredPlayer> alreadyRegistered = this.playerDao.queryForEq(RegisteredPlayer.IP_FIELD, ip);
-        if (alreadyRegistered != null) {
-          int sizeOfValidRegistrations = alreadyRegistered.size();
-          if (Settings.IMP.MAIN.IP_LIMIT_VALID_TIME > 0) {
-            for (RegisteredPlayer registeredPlayer : alreadyRegistered.stream()
-                .filter(registeredPlayer -> registeredPlayer.getRegDate() < System.currentTimeMillis() - Settings.IMP.MAIN.IP_LIMIT_VALID_TIME)
-                .collect(Collectors.toList())) {
-              registeredPlayer.setIP("");
-              this.playerDao.update(registeredPlayer);
-              --sizeOfValidRegistrations;
-            }
+    this.plugin.getPlayerRepository().fetchByNickname(this.proxyPlayer.getUsername())
+        .thenCompose(oldestPlayer -> {
+          if (oldestPlayer != null && !this.proxyPlayer.getUsername().equals(oldestPlayer.getNickname())) {
+            this.proxyPlayer.disconnect(serializer.deserialize(
+                MessageFormat.format(wrongNicknameCaseKick, oldestPlayer.getNickname(), this.proxyPlayer.getUsername()))
+            );
+            return CompletableFuture.completedFuture(false);
           }
 
-          if (sizeOfValidRegistrations >= Settings.IMP.MAIN.IP_LIMIT_REGISTRATIONS) {
-            this.proxyPlayer.disconnect(ipLimitKick);
-            return;
+          return this.playerInfo == null ? this.checkIpLimit() : CompletableFuture.completedFuture(true);
+        })
+        .whenCompleteAsync((allowed, e) -> {
+          if (e != null) {
+            LimboAuth.getLogger().error("Unable to check the account of " + this.proxyPlayer.getUsername() + ".", e);
+            this.proxyPlayer.disconnect(databaseErrorKick);
+          } else if (allowed && !this.disconnected && this.proxyPlayer.isActive()) {
+            this.startAuth();
           }
-        }
-      } catch (SQLException e) {
-        this.proxyPlayer.disconnect(databaseErrorKick);
-        throw new SQLRuntimeException(e);
-      }
-    }
-    boolean bossBarEnabled = !this.loginOnlyByMod && Settings.IMP.MAIN.ENABLE_BOSSBAR;
-    int authTime = Settings.IMP.MAIN.AUTH_TIME;
-    float multiplier = 1000.0F / authTime;
-    this.authMainTask = this.player.getScheduledExecutor().scheduleWithFixedDelay(() -> {
-      if (System.currentTimeMillis() - this.joinTime > authTime) {
-        this.proxyPlayer.disconnect(timesUp);
-      } else {
-        if (bossBarEnabled) {
-          float secondsLeft = (authTime - (System.currentTimeMillis() - this.joinTime)) / 1000.0F;
-          this.bossBar.name(serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.BOSSBAR, (int) secondsLeft)));
-          // It's possible, that the progress value can overcome 1, e.g. 1.0000001.
-          this.bossBar.progress(Math.min(1.0F, secondsLeft * multiplier));
-        }
+        }, this.player.getScheduledExecutor());
+  }
+
+  private CompletableFuture<Boolean> checkIpLimit() {
+    String ip = this.proxyPlayer.getRemoteAddress().getAddress().getHostAddress();
+    return this.plugin.getIpLimiter().canRegister(ip).thenApply(allowed -> {
+      if (!allowed) {
+        this.proxyPlayer.disconnect(ipLimitKick);
       }
-    }, 0, 1, TimeUnit.SECONDS);
 
-    if (bossBarEnabled) {
-      this.proxyPlayer.showBossBar(this.bossBar);
+      return allowed;
+    });
+  }
+
+  private void startAuth() {
+    this.awaitingDatabase = false;
+
+    this.tickerEntry = this.plugin.getAuthSessionTicker().register(this, this.joinTime);
+    BossBar bossBar = this.tickerEntry.getBossBar();
+    if (bossBar != null) {
+      this.proxyPlayer.showBossBar(bossBar);
     }
 
-    if (!this.loginOnlyByMod) {
+    if (this.pendingToken != null) {
+      this.checkToken(this.pendingToken[0], this.pendingToken[1]);
+      this.pendingToken = null;
+    } else if (!this.loginOnlyByMod) {
       this.sendMessage(true);
     }
   }
 
   @Override
   public void onChat(String message) {
-    if (this.loginOnlyByMod) {
+    if (this.loginOnlyByMod || this.awaitingDatabase || this.awaitingHash) {
       return;
     }
 
-    String[] args = message.split(" ");
-    if (args.length != 0 && this.checkArgsLength(args.length)) {
-      Command command = Command.parse(args[0]);
-      if (command == Command.REGISTER && !this.totpState && this.playerInfo == null) {
-        String password = args[1];
+    ChatCommandTable.Tokens args = this.tokens;
+    ChatCommandTable.Command command = commandTable.parse(message, args);
+    if (command != ChatCommandTable.Command.INVALID && this.checkArgsLength(args.getCount())) {
+      if (command == ChatCommandTable.Command.REGISTER && !this.totpState && this.playerInfo == null) {
+        String password = args.get(1);
         if (this.checkPasswordsRepeat(args) && this.checkPasswordLength(password) && this.checkPasswordStrength(password)) {
           this.saveTempPassword(password);
-          RegisteredPlayer registeredPlayer = new RegisteredPlayer(this.proxyPlayer, plugin.getUuidTypeFromPlayer(this.proxyPlayer)).setPassword(password);
-
-          try {
-            this.playerDao.create(registeredPlayer);
-            this.playerInfo = registeredPlayer;
-          } catch (SQLException e) {
-            this.proxyPlayer.disconnect(databaseErrorKick);
-            throw new SQLRuntimeException(e);
-          }
 
-          this.proxyPlayer.sendMessage(registerSuccessful);
-          if (registerSuccessfulTitle != null) {
-            this.proxyPlayer.showTitle(registerSuccessfulTitle);
-          }
-
-          this.plugin.getServer().getEventManager()
-              .fire(new PostRegisterEvent(this::finishAuth, this.player, this.playerInfo, this.tempPassword))
-              .thenAcceptAsync(this::finishAuth);
+          String ip = this.proxyPlayer.getRemoteAddress().getAddress().getHostAddress();
+          IpLimiter ipLimiter = this.plugin.getIpLimiter();
+          this.awaitingDatabase = true;
+          ipLimiter.reserve(ip)
+              .thenCompose(reserved -> {
+                if (!reserved) {
+                  return CompletableFuture.<RegisteredPlayer>completedFuture(null);
+                }
+
+                return this.plugin.getHashingExecutor()
+                    .supply(() -> new RegisteredPlayer(this.proxyPlayer, this.plugin.getUuidTypeFromPlayer(this.proxyPlayer)).setPassword(password))
+                    .thenCompose(registeredPlayer -> this.plugin.getPlayerRepository().create(registeredPlayer).thenApply(v -> registeredPlayer))
+                    // The account exists even if the player has left, so it counts towards the limit anyway.
+                    .whenComplete((registeredPlayer, e) -> ipLimiter.release(ip, e == null));
+              })
+              .whenCompleteAsync((registeredPlayer, e) -> {
+                this.awaitingDatabase = false;
+                if (this.disconnected) {
+                  // The player has left in the meantime.
+                  return;
+                } else if (e != null) {
+                  if (HashingExecutor.isBusy(e)) {
+                    this.proxyPlayer.sendMessage(serverBusy);
+                  } else {
+                    LimboAuth.getLogger().error("Unable to register " + this.proxyPlayer.getUsername() + ".", e);
+                    this.proxyPlayer.disconnect(databaseErrorKick);
+                  }
+
+                  return;
+                } else if (registeredPlayer == null) {
+                  // Other accounts have been registered from this address since the player has joined.
+                  this.proxyPlayer.disconnect(ipLimitKick);
+                  return;
+                }
+
+                this.playerInfo = registeredPlayer;
+                this.proxyPlayer.sendMessage(registerSuccessful);
+                if (registerSuccessfulTitle != null) {
+                  this.proxyPlayer.showTitle(registerSuccessfulTitle);
+                }
+
+                this.plugin.getServer().getEventManager()
+                    .fire(new PostRegisterEvent(this::finishAuth, this.player, this.playerInfo, this.tempPassword))
+                    .thenAcceptAsync(this::finishAuth);
+              }, this.player.getScheduledExecutor());
         }
 
         // {@code return} placed here (not above), because
@@ -238,27 +259,45 @@ public class AuthSessionHandler implements LimboSessionHandler {
         // invoking Player#sendMessage that sends its own message in case if the return value is false.
         // If we don't place {@code return} here, an another message (AuthSessionHandler#sendMessage) will be sent.
         return;
-      } else if (command == Command.LOGIN && !this.totpState && this.playerInfo != null) {
-        String password = args[1];
+      } else if (command == ChatCommandTable.Command.LOGIN && !this.totpState && this.playerInfo != null) {
+        String password = args.get(1);
         this.saveTempPassword(password);
 
-        if (password.length() > 0 && checkPassword(password, this.playerInfo, this.playerDao)) {
-          if (this.playerInfo.getTotpToken().isEmpty()) {
-            this.finishLogin();
+        if (password.length() == 0) {
+          this.onWrongPassword();
+          return;
+        }
+
+        RegisteredPlayer playerInfo = this.playerInfo;
+        this.awaitingHash = true;
+        PlayerRepository playerRepository = this.plugin.getPlayerRepository();
+        this.plugin.getHashingExecutor().supply(() -> checkPassword(password, playerInfo, playerRepository)).whenCompleteAsync((correct, e) -> {
+          this.awaitingHash = false;
+          if (this.disconnected) {
+            // The player has left or has been authorized with the mod token in the meantime.
+            return;
+          } else if (e != null) {
+            if (HashingExecutor.isBusy(e)) {
+              this.proxyPlayer.sendMessage(serverBusy);
+            } else {
+              LimboAuth.getLogger().error("Unable to check the password of " + this.proxyPlayer.getUsername() + ".", e);
+              this.proxyPlayer.disconnect(databaseErrorKick);
+            }
+          } else if (correct) {
+            if (this.playerInfo.getTotpToken().isEmpty()) {
+              this.finishLogin();
+            } else {
+              this.totpState = true;
+              this.sendMessage(true);
+            }
           } else {
-            this.totpState = true;
-            this.sendMessage(true);
+            this.onWrongPassword();
           }
-        } else if (--this.attempts != 0) {
-          this.proxyPlayer.sendMessage(loginWrongPassword[this.attempts - 1]);
-          this.checkBruteforceAttempts();
-        } else {
-          this.proxyPlayer.disconnect(loginWrongPasswordKick);
-        }
+        }, this.player.getScheduledExecutor());
 
         return;
-      } else if (command == Command.TOTP && this.totpState && this.playerInfo != null) {
-        if (TOTP_CODE_VERIFIER.isValidCode(this.playerInfo.getTotpToken(), args[1])) {
+      } else if (command == ChatCommandTable.Command.TOTP && this.totpState && this.playerInfo != null) {
+        if (TOTP_CODE_VERIFIER.isValidCode(this.playerInfo.getTotpToken(), args.get(1))) {
           this.finishLogin();
           return;
         } else {
@@ -306,31 +345,43 @@ public class AuthSessionHandler implements LimboSessionHandler {
         long issueTime = data.readLong();
         long hash = data.readLong();
 
-        if (this.playerInfo.getTokenIssuedAt() > issueTime) {
-          this.proxyPlayer.sendMessage(sessionExpired);
+        if (this.awaitingDatabase) {
+          this.pendingToken = new long[] {issueTime, hash};
           return;
         }
 
-        byte[] lowercaseNicknameSerialized = this.playerInfo.getLowercaseNickname().getBytes(StandardCharsets.UTF_8);
-        long correctHash = SipHasher.init(Settings.IMP.MAIN.MOD.VERIFY_KEY)
-            .update(lowercaseNicknameSerialized)
-            .update(Longs.toByteArray(issueTime))
-            .digest();
+        this.checkToken(issueTime, hash);
+      }
+    }
+  }
 
-        if (hash != correctHash) {
-          this.checkBruteforceAttempts();
-          this.proxyPlayer.sendMessage(sessionExpired);
-          return;
-        }
+  private void onWrongPassword() {
+    if (--this.attempts != 0) {
+      this.proxyPlayer.sendMessage(loginWrongPassword[this.attempts - 1]);
+      this.checkBruteforceAttempts();
+    } else {
+      this.proxyPlayer.disconnect(loginWrongPasswordKick);
+    }
+  }
 
-        this.finishAuth();
-      }
+  private void checkToken(long issueTime, long hash) {
+    if (this.playerInfo.getTokenIssuedAt() > issueTime) {
+      this.proxyPlayer.sendMessage(sessionExpired);
+      return;
+    }
+
+    if (hash != genTokenHash(this.playerInfo.getLowercaseNickname(), issueTime)) {
+      this.checkBruteforceAttempts();
+      this.proxyPlayer.sendMessage(sessionExpired);
+      return;
     }
+
+    this.finishAuth();
   }
 
   private void checkBruteforceAttempts() {
     this.plugin.incrementBruteforceAttempts(this.proxyPlayer.getRemoteAddress().getAddress());
-    if (this.plugin.getBruteforceAttempts(this.proxyPlayer.getRemoteAddress().getAddress()) >= Settings.IMP.MAIN.BRUTEFORCE_MAX_ATTEMPTS) {
+    if (this.plugin.isBruteforceBlocked(this.proxyPlayer.getRemoteAddress().getAddress())) {
       this.proxyPlayer.disconnect(loginWrongPasswordKick);
     }
   }
@@ -341,11 +392,29 @@ public class AuthSessionHandler implements LimboSessionHandler {
 
   @Override
   public void onDisconnect() {
-    if (this.authMainTask != null) {
-      this.authMainTask.cancel(true);
+    this.disconnected = true;
+    this.plugin.getAdmissionController().release(this.proxyPlayer.getUniqueId(), this.proxyPlayer);
+    LimboAuth.getMetrics().get(MetricsRegistry.Stage.LIMBO_TIME).record(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis() - this.joinTime));
+    this.sessionEvent.end();
+    if (this.sessionEvent.shouldCommit()) {
+      this.sessionEvent.setUsername(this.proxyPlayer.getUsername());
+      this.sessionEvent.commit();
+    }
+    if (this.tickerEntry != null) {
+      this.tickerEntry.cancel();
+
+      BossBar bossBar = this.tickerEntry.getBossBar();
+      if (bossBar != null) {
+        this.proxyPlayer.hideBossBar(bossBar);
+      }
     }
+  }
 
-    this.proxyPlayer.hideBossBar(this.bossBar);
+  /**
+   * Called by the {@link AuthSessionTicker} when the auth time is up.
+   */
+  void onTimeout() {
+    this.proxyPlayer.disconnect(timesUp);
   }
 
   private void sendMessage(boolean sendTitle) {
@@ -375,8 +444,8 @@ public class AuthSessionHandler implements LimboSessionHandler {
     }
   }
 
-  private boolean checkPasswordsRepeat(String[] args) {
-    if (!Settings.IMP.MAIN.REGISTER_NEED_REPEAT_PASSWORD || args[1].equals(args[2])) {
+  private boolean checkPasswordsRepeat(ChatCommandTable.Tokens args) {
+    if (!Settings.IMP.MAIN.REGISTER_NEED_REPEAT_PASSWORD || args.get(1).equals(args.get(2))) {
       return true;
     } else {
       this.proxyPlayer.sendMessage(registerDifferentPasswords);
@@ -398,7 +467,7 @@ public class AuthSessionHandler implements LimboSessionHandler {
   }
 
   private boolean checkPasswordStrength(String password) {
-    if (Settings.IMP.MAIN.CHECK_PASSWORD_STRENGTH && this.plugin.getUnsafePasswords().contains(password)) {
+    if (Settings.IMP.MAIN.CHECK_PASSWORD_STRENGTH && this.plugin.getUnsafePasswordStore().contains(password)) {
       this.proxyPlayer.sendMessage(registerPasswordUnsafe);
       return false;
     } else {
@@ -435,24 +504,26 @@ public class AuthSessionHandler implements LimboSessionHandler {
       this.proxyPlayer.clearTitle();
     }
 
-    try {
-      this.plugin.updateLoginData(this.proxyPlayer);
-    } catch (SQLException e) {
-      throw new SQLRuntimeException(e);
-    } catch (Throwable e) {
-      e.printStackTrace();
-    }
+    this.plugin.updateLoginData(this.proxyPlayer);
 
     this.plugin.cacheAuthUser(this.proxyPlayer);
+    this.sessionEvent.setAuthenticated(true);
     this.player.disconnect();
   }
 
   public static void reload() {
+    // Twice the maximum password length, so the slightly longer passwords still get the "too long" message instead of being ignored.
+    commandTable = new ChatCommandTable(Settings.IMP.MAIN.REGISTER_COMMAND, Settings.IMP.MAIN.LOGIN_COMMAND, Settings.IMP.MAIN.TOTP_COMMAND,
+        Settings.IMP.MAIN.MAX_PASSWORD_LENGTH * 2);
     Serializer serializer = LimboAuth.getSerializer();
-    bossbarColor = Settings.IMP.MAIN.BOSSBAR_COLOR;
-    bossbarOverlay = Settings.IMP.MAIN.BOSSBAR_OVERLAY;
+    int authSeconds = (Settings.IMP.MAIN.AUTH_TIME + 999) / 1000;
+    bossBarNames = new Component[authSeconds + 1];
+    for (int i = 0; i <= authSeconds; ++i) {
+      bossBarNames[i] = serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.BOSSBAR, i));
+    }
     ipLimitKick = serializer.deserialize(Settings.IMP.MAIN.STRINGS.IP_LIMIT_KICK);
     databaseErrorKick = serializer.deserialize(Settings.IMP.MAIN.STRINGS.DATABASE_ERROR_KICK);
+    serverBusy = serializer.deserialize(Settings.IMP.MAIN.STRINGS.SERVER_BUSY);
     wrongNicknameCaseKick = Settings.IMP.MAIN.STRINGS.WRONG_NICKNAME_CASE_KICK;
     timesUp = serializer.deserialize(Settings.IMP.MAIN.STRINGS.TIMES_UP);
     registerSuccessful = serializer.deserialize(Settings.IMP.MAIN.STRINGS.REGISTER_SUCCESSFUL);
@@ -523,28 +594,80 @@ public class AuthSessionHandler implements LimboSessionHandler {
     migrationHash = Settings.IMP.MAIN.MIGRATION_HASH;
   }
 
+  public static boolean checkPassword(String password, RegisteredPlayer player, PlayerRepository playerRepository) {
+    return checkPassword(password, player, () -> playerRepository.update(player).exceptionally(e -> {
+      LimboAuth.getLogger().error("Unable to save the migrated password hash of " + player.getNickname() + ".", e);
+      return null;
+    }));
+  }
+
+  /**
+   * Use {@link #checkPassword(String, RegisteredPlayer, PlayerRepository)}
+   */
+  @Deprecated()
   public static boolean checkPassword(String password, RegisteredPlayer player, Dao<RegisteredPlayer, String> playerDao) {
+    return checkPassword(password, player, () -> {
+      try {
+        playerDao.update(player);
+      } catch (SQLException e) {
+        throw new SQLRuntimeException(e);
+      }
+    });
+  }
+
+  private static boolean checkPassword(String password, RegisteredPlayer player, Runnable migratedHashSaver) {
+    HashVerificationEvent event = new HashVerificationEvent();
+    event.begin();
+    long startTime = System.nanoTime();
     String hash = player.getHash();
     boolean isCorrect = HASH_VERIFIER.verify(
         password.getBytes(StandardCharsets.UTF_8),
         hash.replace("BCRYPT$", "$2a$").getBytes(StandardCharsets.UTF_8)
     ).verified;
 
+    MigrationHash usedMigrationHash = null;
     if (!isCorrect && migrationHash != null) {
+      usedMigrationHash = migrationHash;
       isCorrect = migrationHash.checkPassword(hash, password);
       if (isCorrect) {
         player.setPassword(password);
-        try {
-          playerDao.update(player);
-        } catch (SQLException e) {
-          throw new SQLRuntimeException(e);
-        }
+        migratedHashSaver.run();
       }
     }
 
+    LimboAuth.getMetrics().record(MetricsRegistry.Stage.PASSWORD_VERIFY, startTime);
+    event.end();
+    if (event.shouldCommit()) {
+      event.setAlgorithm(usedMigrationHash == null ? "BCRYPT" : usedMigrationHash.name());
+      event.setCost(usedMigrationHash == null ? getBcryptCost(hash) : -1);
+      event.setVerified(isCorrect);
+      event.commit();
+    }
+
     return isCorrect;
   }
 
+  /**
+   * Parses the cost of the "$2a$10$..." or "BCRYPT$10$..." hash, -1 if it is malformed.
+   */
+  private static int getBcryptCost(String hash) {
+    int end = hash.lastIndexOf('$');
+    int start = end > 0 ? hash.lastIndexOf('$', end - 1) : -1;
+    if (start == -1) {
+      return -1;
+    }
+
+    try {
+      return Integer.parseInt(hash.substring(start + 1, end));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Use {@link PlayerRepository#fetchByUuid(UUID)}
+   */
+  @Deprecated()
   public static RegisteredPlayer fetchInfo(Dao<RegisteredPlayer, String> playerDao, UUID uuid) {
     try {
       List<RegisteredPlayer> playerList = playerDao.queryForEq(RegisteredPlayer.UUID_FIELD, uuid.toString());
@@ -554,6 +677,10 @@ public class AuthSessionHandler implements LimboSessionHandler {
     }
   }
 
+  /**
+   * Use {@link PlayerRepository#fetchByNickname(String)}
+   */
+  @Deprecated()
   public static RegisteredPlayer fetchInfo(Dao<RegisteredPlayer, String> playerDao, String nickname) {
     try {
       List<RegisteredPlayer> playerList = playerDao.queryForEq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, nickname.toLowerCase(Locale.ROOT));
@@ -572,27 +699,21 @@ public class AuthSessionHandler implements LimboSessionHandler {
     return HASHER.hashToString(Settings.IMP.MAIN.BCRYPT_COST, password.toCharArray());
   }
 
-  public static CodeVerifier getTotpCodeVerifier() {
-    return TOTP_CODE_VERIFIER;
+  /**
+   * Signs the session token issued to the client-side mod, see {@link LimboAuth#updateLoginData(Player)}.
+   */
+  public static long genTokenHash(String lowercaseNickname, long issueTime) {
+    return SipHasher.init(Settings.IMP.MAIN.MOD.VERIFY_KEY)
+        .update(lowercaseNickname.getBytes(StandardCharsets.UTF_8))
+        .update(Longs.toByteArray(issueTime))
+        .digest();
   }
 
-  private enum Command {
-
-    INVALID,
-    REGISTER,
-    LOGIN,
-    TOTP;
-
-    static Command parse(String command) {
-      if (Settings.IMP.MAIN.REGISTER_COMMAND.contains(command)) {
-        return Command.REGISTER;
-      } else if (Settings.IMP.MAIN.LOGIN_COMMAND.contains(command)) {
-        return Command.LOGIN;
-      } else if (Settings.IMP.MAIN.TOTP_COMMAND.contains(command)) {
-        return Command.TOTP;
-      } else {
-        return Command.INVALID;
-      }
-    }
+  static Component[] getBossBarNames() {
+    return bossBarNames;
+  }
+
+  public static CodeVerifier getTotpCodeVerifier() {
+    return TOTP_CODE_VERIFIER;
   }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.handler;
+
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.elytrium.limboauth.LimboAuth;
+import net.kyori.adventure.bossbar.BossBar;
+import net.kyori.adventure.text.Component;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Hashed timer wheel that owns every pending {@link AuthSessionHandler}, ticking once per second.
+ * The sessions are bucketed by their deadline, so the timeouts are found without scanning all the players,
+ * and the sessions of one bucket always have the same amount of seconds left, so they share one boss bar.
+ */
+public class AuthSessionTicker {
+
+  private static final long TICK_MILLIS = 1000;
+  // The sessions are never registered less than two ticks before their deadline, so they can't land in the bucket that is being expired.
+  private static final int MIN_TICKS_LEFT = 2;
+
+  private final Bucket[] wheel;
+  private final int authTime;
+  private final int authTicks;
+  private final boolean bossBarEnabled;
+  private final Component[] bossBarNames;
+  private final AtomicInteger sessions = new AtomicInteger();
+
+  private volatile long currentTick;
+  private volatile boolean retired;
+  private ScheduledTask task;
+
+  public AuthSessionTicker(int authTime, boolean bossBarEnabled, BossBar.Color bossBarColor, BossBar.Overlay bossBarOverlay) {
+    this.authTime = authTime;
+    this.authTicks = Math.max(MIN_TICKS_LEFT, (int) ((authTime + TICK_MILLIS - 1) / TICK_MILLIS));
+    this.bossBarEnabled = bossBarEnabled;
+    this.bossBarNames = AuthSessionHandler.getBossBarNames();
+
+    this.wheel = new Bucket[this.authTicks + MIN_TICKS_LEFT];
+    for (int i = 0; i < this.wheel.length; ++i) {
+      this.wheel[i] = new Bucket(bossBarEnabled ? BossBar.bossBar(Component.empty(), 1.0F, bossBarColor, bossBarOverlay) : null);
+    }
+  }
+
+  public void schedule(LimboAuth plugin) {
+    this.task = plugin.getServer().getScheduler()
+        .buildTask(plugin, this::tick)
+        .repeat(TICK_MILLIS, TimeUnit.MILLISECONDS)
+        .schedule();
+  }
+
+  /**
+   * Stops the ticker after the last session registered in it is finished, the new sessions should use another ticker.
+   */
+  public void retire() {
+    this.retired = true;
+  }
+
+  /**
+   * Adds the session to the wheel, it will be timed out after the auth time has passed since the join time.
+   */
+  public Entry register(AuthSessionHandler session, long joinTime) {
+    long millisLeft = this.authTime - (System.currentTimeMillis() - joinTime);
+    int ticksLeft = (int) Math.min(this.authTicks, Math.max(MIN_TICKS_LEFT, (millisLeft + TICK_MILLIS - 1) / TICK_MILLIS));
+    long deadline = this.currentTick + ticksLeft;
+
+    Bucket bucket = this.wheel[(int) (deadline % this.wheel.length)];
+    bucket.deadline = deadline;
+    bucket.sessions.add(session);
+    this.sessions.incrementAndGet();
+    if (this.bossBarEnabled) {
+      this.updateBossBar(bucket, this.currentTick);
+    }
+
+    return new Entry(bucket, session);
+  }
+
+  private synchronized void tick() {
+    try {
+      long tick = ++this.currentTick;
+      Bucket expired = this.wheel[(int) (tick % this.wheel.length)];
+      for (AuthSessionHandler session : expired.sessions) {
+        if (expired.sessions.remove(session)) {
+          this.sessions.decrementAndGet();
+          session.onTimeout();
+        }
+      }
+
+      if (this.bossBarEnabled) {
+        for (Bucket bucket : this.wheel) {
+          if (!bucket.sessions.isEmpty()) {
+            this.updateBossBar(bucket, tick);
+          }
+        }
+      }
+
+      if (this.retired && this.sessions.get() == 0) {
+        this.task.cancel();
+      }
+    } catch (Throwable e) {
+      LimboAuth.getLogger().error("Unable to tick the auth sessions.", e);
+    }
+  }
+
+  private void updateBossBar(Bucket bucket, long tick) {
+    int secondsLeft = (int) Math.max(0, Math.min(this.authTicks, bucket.deadline - tick));
+    bucket.bossBar.name(this.bossBarNames[Math.min(secondsLeft, this.bossBarNames.length - 1)]);
+    // It's possible, that the progress value can overcome 1, e.g. 1.0000001.
+    bucket.bossBar.progress(Math.min(1.0F, secondsLeft * TICK_MILLIS / (float) this.authTime));
+  }
+
+  public int getSessions() {
+    return this.sessions.get();
+  }
+
+  public class Entry {
+
+    private final Bucket bucket;
+    private final AuthSessionHandler session;
+
+    private Entry(Bucket bucket, AuthSessionHandler session) {
+      this.bucket = bucket;
+      this.session = session;
+    }
+
+    public void cancel() {
+      if (this.bucket.sessions.remove(this.session)) {
+        AuthSessionTicker.this.sessions.decrementAndGet();
+      }
+    }
+
+    @Nullable
+    public BossBar getBossBar() {
+      return this.bucket.bossBar;
+    }
+  }
+
+  private static class Bucket {
+
+    private final Set<AuthSessionHandler> sessions = ConcurrentHashMap.newKeySet();
+    @Nullable
+    private final BossBar bossBar;
+    private volatile long deadline;
+
+    private Bucket(@Nullable BossBar bossBar) {
+      this.bossBar = bossBar;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.handler;
+
+import java.util.List;
+
+/**
+ * Command aliases of the auth limbo compiled into an open addressing hash table. The aliases are looked up
+ * directly in the chat message, so the spam that doesn't start with an alias is rejected without any allocation.
+ * The messages are split by single spaces with the trailing ones ignored, the same way as {@code message.split(" ")}.
+ */
+public class ChatCommandTable {
+
+  // The register command with the repeated password has the most arguments.
+  private static final int MAX_TOKENS = 3;
+
+  private final String[] aliases;
+  private final Command[] commands;
+  private final int mask;
+  private final int maxAliasLength;
+  private final int maxMessageLength;
+
+  /**
+   * @param maxArgumentLength Arguments longer than this are never valid, the longer messages are rejected before parsing.
+   */
+  public ChatCommandTable(List<String> registerAliases, List<String> loginAliases, List<String> totpAliases, int maxArgumentLength) {
+    int capacity = Integer.highestOneBit(Math.max(1, (registerAliases.size() + loginAliases.size() + totpAliases.size()) * 2 - 1)) << 1;
+    this.aliases = new String[capacity];
+    this.commands = new Command[capacity];
+    this.mask = capacity - 1;
+
+    // The first command wins if the alias is duplicated, the same as the previous List.contains chain did.
+    int maxAliasLength = 0;
+    maxAliasLength = Math.max(maxAliasLength, this.putAll(registerAliases, Command.REGISTER));
+    maxAliasLength = Math.max(maxAliasLength, this.putAll(loginAliases, Command.LOGIN));
+    maxAliasLength = Math.max(maxAliasLength, this.putAll(totpAliases, Command.TOTP));
+    this.maxAliasLength = maxAliasLength;
+    this.maxMessageLength = maxAliasLength + (MAX_TOKENS - 1) * (maxArgumentLength + 1);
+  }
+
+  private int putAll(List<String> aliases, Command command) {
+    int maxLength = 0;
+    for (String alias : aliases) {
+      int index = mix(alias.hashCode()) & this.mask;
+      while (this.aliases[index] != null && !this.aliases[index].equals(alias)) {
+        index = (index + 1) & this.mask;
+      }
+
+      if (this.aliases[index] == null) {
+        this.aliases[index] = alias;
+        this.commands[index] = command;
+        maxLength = Math.max(maxLength, alias.length());
+      }
+    }
+
+    return maxLength;
+  }
+
+  /**
+   * Parses the message into the reusable tokens holder.
+   *
+   * @return the command, or {@link Command#INVALID} if the message is not a command with up to three tokens
+   */
+  public Command parse(String message, Tokens tokens) {
+    tokens.count = 0;
+    int length = message.length();
+    if (length > this.maxMessageLength) {
+      return Command.INVALID;
+    }
+
+    // Trailing spaces are ignored, like the trailing empty strings of String#split.
+    while (length > 0 && message.charAt(length - 1) == ' ') {
+      --length;
+    }
+
+    int aliasEnd = 0;
+    int hash = 0;
+    while (aliasEnd < length) {
+      char character = message.charAt(aliasEnd);
+      if (character == ' ') {
+        break;
+      }
+
+      if (aliasEnd == this.maxAliasLength) {
+        return Command.INVALID;
+      }
+
+      hash = 31 * hash + character;
+      ++aliasEnd;
+    }
+
+    Command command = this.lookup(message, aliasEnd, hash);
+    if (command == Command.INVALID) {
+      return Command.INVALID;
+    }
+
+    int start = 0;
+    int count = 0;
+    for (int i = aliasEnd; i <= length; ++i) {
+      if (i == length || message.charAt(i) == ' ') {
+        if (count == MAX_TOKENS) {
+          tokens.count = 0;
+          return Command.INVALID;
+        }
+
+        tokens.starts[count] = start;
+        tokens.ends[count] = i;
+        ++count;
+        start = i + 1;
+      }
+    }
+
+    tokens.message = message;
+    tokens.count = count;
+    return command;
+  }
+
+  private Command lookup(String message, int aliasLength, int hash) {
+    int index = mix(hash) & this.mask;
+    String alias;
+    while ((alias = this.aliases[index]) != null) {
+      if (alias.length() == aliasLength && message.regionMatches(0, alias, 0, aliasLength)) {
+        return this.commands[index];
+      }
+
+      index = (index + 1) & this.mask;
+    }
+
+    return Command.INVALID;
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  public enum Command {
+    INVALID,
+    REGISTER,
+    LOGIN,
+    TOTP
+  }
+
+  /**
+   * Bounds of the parsed tokens, the first one is the alias. The strings are created only when they are requested.
+   */
+  public static class Tokens {
+
+    private final int[] starts = new int[MAX_TOKENS];
+    private final int[] ends = new int[MAX_TOKENS];
+    private String message;
+    private int count;
+
+    public int getCount() {
+      return this.count;
+    }
+
+    public String get(int index) {
+      if (index >= this.count) {
+        throw new IndexOutOfBoundsException("Token " + index + " of " + this.count);
+      }
+
+      return this.message.substring(this.starts[index], this.ends[index]);
+    }
+  }
+}
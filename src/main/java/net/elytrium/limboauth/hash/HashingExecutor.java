@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.hash;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executor for the password hashing and checking, so BCrypt doesn't run on the Netty event loops.
+ * The queue is bounded and the new tasks are rejected when it is full, use {@link #isBusy(Throwable)} to tell the player to retry later.
+ */
+public class HashingExecutor extends ThreadPoolExecutor {
+
+  public HashingExecutor(int threads, int queueSize) {
+    super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), new ThreadFactory(), new AbortPolicy());
+    this.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Creates the executor that uses the given share of the available processors, but at least one thread.
+   */
+  public static HashingExecutor ofCoresShare(double share, int queueSize) {
+    return new HashingExecutor(Math.max(1, (int) Math.round(Runtime.getRuntime().availableProcessors() * share)), queueSize);
+  }
+
+  public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+    try {
+      return CompletableFuture.supplyAsync(supplier, this);
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Checks if the future has been failed because the executor was saturated.
+   */
+  public static boolean isBusy(Throwable throwable) {
+    while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+      throwable = throwable.getCause();
+    }
+
+    return throwable instanceof RejectedExecutionException;
+  }
+
+  private static class ThreadFactory implements java.util.concurrent.ThreadFactory {
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "LimboAuth hashing thread #" + this.threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
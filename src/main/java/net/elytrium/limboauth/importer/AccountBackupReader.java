@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Reads the backups written by {@link AccountBackupWriter}, only the current record is kept in the memory.
+ * The position is the amount of read records, the progress is tracked in compressed bytes.
+ */
+public class AccountBackupReader implements ImportSource {
+
+  private static final int BUFFER_SIZE = 65536;
+  // Way larger than any valid record, protects from allocating huge arrays when reading a corrupted file.
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+  private final DataInputStream input;
+  private final long total;
+  private final int version;
+  private byte[] recordBuffer = new byte[256];
+  private long position;
+  private boolean finished;
+
+  public AccountBackupReader(Path file, long position) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.total = this.channel.size();
+    try {
+      InputStream inputStream = new GZIPInputStream(Channels.newInputStream(this.channel), BUFFER_SIZE);
+      this.input = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+      if (this.input.readInt() != AccountBackupWriter.MAGIC) {
+        throw new IOException("Not a LimboAuth backup: " + file);
+      }
+
+      this.version = this.input.readUnsignedByte();
+      if (this.version > AccountBackupWriter.VERSION) {
+        throw new IOException("The backup format v" + this.version + " is newer than the supported one (v" + AccountBackupWriter.VERSION + ")");
+      }
+
+      while (this.position < position && this.skip()) {
+        ++this.position;
+      }
+    } catch (IOException | RuntimeException e) {
+      this.channel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public RegisteredPlayer next() throws IOException {
+    int length = this.readLength();
+    if (length == 0) {
+      return null;
+    }
+
+    this.readRecord(length);
+    ++this.position;
+
+    // Unknown trailing fields of the newer versions are ignored.
+    DataInputStream record = new DataInputStream(new ByteArrayInputStream(this.recordBuffer, 0, length));
+    String uuid = readString(record);
+    String nickname = readString(record);
+    if (uuid == null || nickname == null) {
+      throw new IOException("Malformed record " + this.position);
+    }
+
+    RegisteredPlayer player = new RegisteredPlayer(nickname, uuid, null, 0);
+    player.setHash(readString(record));
+    player.setIP(readString(record));
+    player.setUuidType(record.readUnsignedByte());
+    player.setTotpToken(readString(record));
+    player.setRegDate(this.readLong(record));
+    player.setLoginIp(readString(record));
+    player.setLoginDate(this.readLong(record));
+    player.setTokenIssuedAt(this.readLong(record));
+    return player;
+  }
+
+  private boolean skip() throws IOException {
+    int length = this.readLength();
+    if (length == 0) {
+      return false;
+    }
+
+    this.readRecord(length);
+    return true;
+  }
+
+  private void readRecord(int length) throws IOException {
+    if (this.recordBuffer.length < length) {
+      this.recordBuffer = new byte[Math.max(length, this.recordBuffer.length * 2)];
+    }
+
+    this.input.readFully(this.recordBuffer, 0, length);
+  }
+
+  private int readLength() throws IOException {
+    if (this.finished) {
+      return 0;
+    }
+
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      if (shift > 28) {
+        throw new IOException("Malformed record length");
+      }
+
+      int part = this.input.read();
+      if (part == -1) {
+        throw new EOFException("The backup is truncated after " + this.position + " accounts");
+      }
+
+      length |= (part & 0x7F) << shift;
+      if ((part & 0x80) == 0) {
+        break;
+      }
+    }
+
+    if (length < 0 || length > MAX_RECORD_SIZE) {
+      throw new IOException("Malformed record length: " + length);
+    }
+
+    this.finished = length == 0;
+    return length;
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+  private Long readLong(DataInputStream input) throws IOException {
+    if (this.version >= 2) {
+      return input.readBoolean() ? input.readLong() : null;
+    }
+
+    // v1 didn't have the null flag and wrote the NULL dates as they were returned by the getters.
+    long value = input.readLong();
+    return value == Long.MIN_VALUE ? null : value;
+  }
+
+  @Override
+  public long getPosition() {
+    return this.position;
+  }
+
+  @Override
+  public long getProgress() {
+    try {
+      return this.channel.position();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  @Override
+  public long getTotal() {
+    return this.total;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.input.close();
+  }
+}
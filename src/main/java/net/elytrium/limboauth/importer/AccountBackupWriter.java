@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Writes the accounts to the LimboAuth backup format: a gzip stream with the {@link #MAGIC magic number} and the format version,
+ * followed by the length-prefixed account records and the zero length end marker.
+ * The length prefix lets the older readers skip the fields appended by the newer versions.
+ * Since v2 the dates are prefixed with the null flag like the strings, v1 wrote the NULL dates as {@link Long#MIN_VALUE}.
+ */
+public class AccountBackupWriter implements Closeable {
+
+  public static final int MAGIC = 0x4C41424B; // "LABK"
+  public static final int VERSION = 2;
+  public static final String EXTENSION = ".labk";
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final DataOutputStream output;
+  private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+  private final DataOutputStream record = new DataOutputStream(this.recordBuffer);
+  private long written;
+
+  public AccountBackupWriter(OutputStream outputStream) throws IOException {
+    this.output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(outputStream, BUFFER_SIZE), BUFFER_SIZE));
+    this.output.writeInt(MAGIC);
+    this.output.writeByte(VERSION);
+  }
+
+  public void write(RegisteredPlayer player) throws IOException {
+    this.recordBuffer.reset();
+    writeString(this.record, player.getUuid());
+    writeString(this.record, player.getNickname());
+    writeString(this.record, player.getHash());
+    writeString(this.record, player.getIP());
+    this.record.writeByte(player.getUuidType());
+    writeString(this.record, player.getTotpToken());
+    writeLong(this.record, player.getNullableRegDate());
+    writeString(this.record, player.getLoginIp());
+    writeLong(this.record, player.getNullableLoginDate());
+    writeLong(this.record, player.getNullableTokenIssuedAt());
+
+    writeVarInt(this.output, this.recordBuffer.size());
+    this.recordBuffer.writeTo(this.output);
+    ++this.written;
+  }
+
+  public long getWritten() {
+    return this.written;
+  }
+
+  /**
+   * Writes the end marker, without it the backup is considered truncated.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      writeVarInt(this.output, 0);
+    } finally {
+      this.output.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeUTF(value);
+    }
+  }
+
+  private static void writeLong(DataOutputStream output, Long value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeLong(value);
+    }
+  }
+
+  static void writeVarInt(DataOutputStream output, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      output.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    output.writeByte(value);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.LongConsumer;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Writes every account to a {@link AccountBackupWriter backup}. The table is read page by page ordered by the UUID,
+ * so the memory usage doesn't depend on the table size and the other queries are not blocked for the whole export.
+ */
+public class AccountExporter {
+
+  private final PlayerRepository playerRepository;
+  private final int batchSize;
+
+  public AccountExporter(PlayerRepository playerRepository, int batchSize) {
+    this.playerRepository = playerRepository;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Exports the accounts, blocking the current thread. The backup is written to a temporary file first,
+   * so the file is either complete or not created at all.
+   *
+   * @param listener       Receives the amount of exported accounts every {@code reportInterval} milliseconds.
+   * @param reportInterval Interval between the progress reports in milliseconds.
+   * @return the amount of exported accounts
+   */
+  public long export(Path file, LongConsumer listener, long reportInterval) throws IOException {
+    Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+    long nextReport = System.currentTimeMillis() + reportInterval;
+    long exported;
+    try (OutputStream outputStream = Files.newOutputStream(temporaryFile); AccountBackupWriter writer = new AccountBackupWriter(outputStream)) {
+      String lastUuid = null;
+      while (true) {
+        List<RegisteredPlayer> page = this.playerRepository.fetchPage(lastUuid, this.batchSize).join();
+        for (RegisteredPlayer player : page) {
+          writer.write(player);
+        }
+
+        if (page.size() < this.batchSize) {
+          break;
+        }
+
+        lastUuid = page.get(page.size() - 1).getUuid();
+        long currentTime = System.currentTimeMillis();
+        if (currentTime >= nextReport) {
+          nextReport = currentTime + reportInterval;
+          listener.accept(writer.getWritten());
+        }
+      }
+
+      exported = writer.getWritten();
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temporaryFile);
+      throw e;
+    }
+
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return exported;
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import net.elytrium.limboauth.database.PlayerBatchInsert;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.SQLRuntimeException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Copies the accounts from an {@link ImportSource} in chunks, every chunk is written in a single transaction with a JDBC batch.
+ * At most one chunk is kept in the memory. After every committed chunk the source position is saved to the checkpoint file,
+ * so the interrupted import of the same source continues from there. The already registered nicknames and UUIDs are skipped.
+ */
+public class AccountImporter {
+
+  private static final String SOURCE_KEY = "source";
+  private static final String POSITION_KEY = "position";
+  private static final String IMPORTED_KEY = "imported";
+  private static final String SKIPPED_KEY = "skipped";
+
+  private final PlayerRepository playerRepository;
+  private final Pattern nicknamePattern;
+  private final Path checkpointFile;
+  private final int batchSize;
+  private final PlayerBatchInsert batchInsert;
+  private final String selectByNicknamesSql;
+  private final String selectByUuidsSql;
+  private volatile boolean stopped;
+
+  /**
+   * @param nicknamePattern Pattern of the valid nicknames, null to import every nickname, e.g. when restoring a backup.
+   */
+  public AccountImporter(PlayerRepository playerRepository, @Nullable Pattern nicknamePattern, Path checkpointFile, int batchSize) {
+    this.playerRepository = playerRepository;
+    this.nicknamePattern = nicknamePattern;
+    this.checkpointFile = checkpointFile;
+    this.batchSize = Math.max(1, batchSize);
+
+    Dao<RegisteredPlayer, String> playerDao = playerRepository.getPlayerDao();
+    DatabaseType databaseType = playerDao.getConnectionSource().getDatabaseType();
+    this.batchInsert = new PlayerBatchInsert(playerDao);
+    this.selectByNicknamesSql = this.selectSql(databaseType, playerDao.getTableName(), RegisteredPlayer.LOWERCASE_NICKNAME_FIELD);
+    this.selectByUuidsSql = this.selectSql(databaseType, playerDao.getTableName(), RegisteredPlayer.UUID_FIELD);
+  }
+
+  private String selectSql(DatabaseType databaseType, String tableName, String column) {
+    StringBuilder sql = new StringBuilder("SELECT ");
+    databaseType.appendEscapedEntityName(sql, column);
+    sql.append(" FROM ");
+    databaseType.appendEscapedEntityName(sql, tableName);
+    sql.append(" WHERE ");
+    databaseType.appendEscapedEntityName(sql, column);
+    // The IN list is appended for every chunk, its size is bounded by the batch size.
+    return sql.append(" IN (").toString();
+  }
+
+  /**
+   * Imports every account of the source, blocking the current thread.
+   *
+   * @param sourceId         Identifier of the source, the checkpoint is only used if it was saved for the same source.
+   * @param opener           Opens the source at the given position.
+   * @param listener         Receives the progress every {@code reportInterval} milliseconds and after the end of the import.
+   * @param reportInterval   Interval between the progress reports in milliseconds.
+   */
+  public ImportProgress run(String sourceId, SourceOpener opener, Consumer<ImportProgress> listener, long reportInterval) throws Exception {
+    Properties checkpoint = this.loadCheckpoint(sourceId);
+    long imported = Long.parseLong(checkpoint.getProperty(IMPORTED_KEY, "0"));
+    long skipped = Long.parseLong(checkpoint.getProperty(SKIPPED_KEY, "0"));
+    long processed = 0;
+    long startTime = System.currentTimeMillis();
+    long nextReport = startTime + reportInterval;
+
+    List<RegisteredPlayer> chunk = new ArrayList<>(this.batchSize);
+    try (ImportSource source = opener.open(Long.parseLong(checkpoint.getProperty(POSITION_KEY, "0")))) {
+      while (!this.stopped) {
+        RegisteredPlayer player = source.next();
+        if (player != null) {
+          ++processed;
+          if (this.nicknamePattern == null || this.nicknamePattern.matcher(player.getNickname()).matches()) {
+            chunk.add(player);
+          } else {
+            ++skipped;
+          }
+        }
+
+        if (chunk.size() >= this.batchSize || (player == null && !chunk.isEmpty())) {
+          int written = this.write(chunk);
+          this.playerRepository.adjustRegisteredPlayers(written);
+          imported += written;
+          skipped += chunk.size() - written;
+          chunk.clear();
+
+          checkpoint.setProperty(POSITION_KEY, Long.toString(source.getPosition()));
+          checkpoint.setProperty(IMPORTED_KEY, Long.toString(imported));
+          checkpoint.setProperty(SKIPPED_KEY, Long.toString(skipped));
+          this.saveCheckpoint(checkpoint);
+        }
+
+        if (player == null) {
+          break;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        if (currentTime >= nextReport) {
+          nextReport = currentTime + reportInterval;
+          listener.accept(new ImportProgress(imported, skipped, processed, source.getProgress(), source.getTotal(), currentTime - startTime, false));
+        }
+      }
+
+      // The already imported accounts could have been cached as the unregistered ones.
+      this.playerRepository.getCache().invalidateAll();
+      ImportProgress progress = new ImportProgress(imported, skipped, processed, source.getProgress(), source.getTotal(),
+          System.currentTimeMillis() - startTime, !this.stopped);
+      if (!this.stopped) {
+        Files.deleteIfExists(this.checkpointFile);
+      }
+
+      listener.accept(progress);
+      return progress;
+    }
+  }
+
+  /**
+   * Stops the import after the current chunk, the checkpoint is kept, so the import can be resumed later.
+   */
+  public void stop() {
+    this.stopped = true;
+  }
+
+  public boolean isStopped() {
+    return this.stopped;
+  }
+
+  private int write(List<RegisteredPlayer> chunk) throws SQLException {
+    try {
+      // Through the database executor, because the file-based databases share a single connection.
+      return this.playerRepository.supply(() -> this.writeChunk(chunk)).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof SQLRuntimeException && e.getCause().getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause().getCause();
+      }
+
+      throw e;
+    }
+  }
+
+  private int writeChunk(List<RegisteredPlayer> chunk) throws SQLException {
+    Dao<RegisteredPlayer, String> playerDao = this.playerRepository.getPlayerDao();
+    ConnectionSource connectionSource = playerDao.getConnectionSource();
+    DatabaseConnection databaseConnection = connectionSource.getReadWriteConnection(playerDao.getTableName());
+    try {
+      Connection connection = databaseConnection.getUnderlyingConnection();
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        List<String> nicknames = new ArrayList<>(chunk.size());
+        List<String> uuids = new ArrayList<>(chunk.size());
+        for (RegisteredPlayer player : chunk) {
+          nicknames.add(player.getLowercaseNickname());
+          uuids.add(player.getUuid());
+        }
+
+        Set<String> existingNicknames = this.selectExisting(connection, this.selectByNicknamesSql, nicknames);
+        Set<String> existingUuids = this.selectExisting(connection, this.selectByUuidsSql, uuids);
+
+        int written = 0;
+        try (PreparedStatement statement = connection.prepareStatement(this.batchInsert.getSql())) {
+          for (RegisteredPlayer player : chunk) {
+            // Also skips the duplicates inside the chunk.
+            if (!existingNicknames.add(player.getLowercaseNickname()) || !existingUuids.add(player.getUuid())) {
+              continue;
+            }
+
+            this.batchInsert.addBatch(statement, player);
+            ++written;
+          }
+
+          if (written != 0) {
+            statement.executeBatch();
+          }
+        }
+
+        connection.commit();
+        return written;
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    } finally {
+      connectionSource.releaseConnection(databaseConnection);
+    }
+  }
+
+  private Set<String> selectExisting(Connection connection, String sql, List<String> values) throws SQLException {
+    String inSql = sql + String.join(", ", Collections.nCopies(values.size(), "?")) + ")";
+    Set<String> existing = new HashSet<>();
+    try (PreparedStatement statement = connection.prepareStatement(inSql)) {
+      for (int i = 0; i < values.size(); ++i) {
+        statement.setString(i + 1, values.get(i));
+      }
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          existing.add(resultSet.getString(1));
+        }
+      }
+    }
+
+    return existing;
+  }
+
+  private Properties loadCheckpoint(String sourceId) throws IOException {
+    Properties checkpoint = new Properties();
+    if (Files.exists(this.checkpointFile)) {
+      try (InputStream inputStream = Files.newInputStream(this.checkpointFile)) {
+        checkpoint.load(inputStream);
+      }
+
+      if (sourceId.equals(checkpoint.getProperty(SOURCE_KEY))) {
+        return checkpoint;
+      }
+
+      checkpoint.clear();
+    }
+
+    checkpoint.setProperty(SOURCE_KEY, sourceId);
+    return checkpoint;
+  }
+
+  private void saveCheckpoint(Properties checkpoint) throws IOException {
+    Path temporaryFile = this.checkpointFile.resolveSibling(this.checkpointFile.getFileName() + ".tmp");
+    try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+      checkpoint.store(outputStream, "LimboAuth import checkpoint, delete it to start the import from the beginning");
+    }
+
+    Files.move(temporaryFile, this.checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public interface SourceOpener {
+
+    ImportSource open(long position) throws Exception;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import com.velocitypowered.api.util.UuidUtils;
+import java.util.Date;
+import java.util.UUID;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.UUIDType;
+
+/**
+ * Converts the values read by the import sources, which can be of any type, to the {@link RegisteredPlayer} fields.
+ */
+final class AccountMapper {
+
+  // Timestamps below this value (1973 in milliseconds, 5138 in seconds) are considered to be in seconds.
+  private static final long SECONDS_THRESHOLD = 100_000_000_000L;
+
+  private AccountMapper() {
+
+  }
+
+  static RegisteredPlayer map(String nickname, String hash, String ip, Object regDate, Object loginDate, Object uuid, String totpToken) {
+    RegisteredPlayer player = new RegisteredPlayer(nickname, toUuid(nickname, uuid), ip, UUIDType.JAVA_OFFLINE);
+    player.setHash(hash == null ? "" : hash);
+    player.setTotpToken(totpToken == null ? "" : totpToken);
+
+    Long regDateMillis = toMillis(regDate);
+    Long loginDateMillis = toMillis(loginDate);
+    player.setRegDate(regDateMillis == null ? System.currentTimeMillis() : regDateMillis);
+    player.setLoginDate(loginDateMillis == null ? player.getRegDate() : loginDateMillis);
+
+    return player;
+  }
+
+  static String toUuid(String nickname, Object value) {
+    if (value instanceof UUID) {
+      return value.toString();
+    } else if (value != null) {
+      String uuid = value.toString().trim();
+      if (uuid.length() == 32) {
+        uuid = uuid.substring(0, 8) + "-" + uuid.substring(8, 12) + "-" + uuid.substring(12, 16) + "-" + uuid.substring(16, 20) + "-" + uuid.substring(20);
+      }
+
+      try {
+        return UUID.fromString(uuid).toString();
+      } catch (IllegalArgumentException e) {
+        // Fall back to the offline UUID.
+      }
+    }
+
+    return UuidUtils.generateOfflinePlayerUuid(nickname).toString();
+  }
+
+  static Long toMillis(Object value) {
+    long millis;
+    if (value instanceof Date) {
+      millis = ((Date) value).getTime();
+    } else if (value instanceof Number) {
+      millis = ((Number) value).longValue();
+    } else if (value != null && !value.toString().isBlank()) {
+      try {
+        millis = Long.parseLong(value.toString().trim());
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    } else {
+      return null;
+    }
+
+    if (millis <= 0) {
+      return null;
+    }
+
+    return millis < SECONDS_THRESHOLD ? millis * 1000 : millis;
+  }
+}
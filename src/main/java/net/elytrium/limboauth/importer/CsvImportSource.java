@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Reads comma separated values with a header line. The position is the amount of read data lines,
+ * the progress is tracked in bytes of the file.
+ */
+public class CsvImportSource implements ImportSource {
+
+  private final FileChannel channel;
+  private final BufferedReader reader;
+  private final Map<ImportFormat.Column, Integer> columns;
+  private final long total;
+  private long position;
+
+  public CsvImportSource(Path file, long position) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(this.channel), StandardCharsets.UTF_8));
+    this.total = this.channel.size();
+
+    try {
+      String header = this.reader.readLine();
+      if (header == null) {
+        throw new IllegalArgumentException("The file is empty");
+      }
+
+      // Skip the byte order mark of the files saved by the spreadsheet editors.
+      List<String> headerColumns = split(header.startsWith("\uFEFF") ? header.substring(1) : header);
+      Map<ImportFormat.Column, String> resolved = ImportFormat.CSV.resolve(headerColumns);
+      this.columns = new EnumMap<>(ImportFormat.Column.class);
+      resolved.forEach((column, name) -> this.columns.put(column, headerColumns.indexOf(name)));
+
+      while (this.position < position && this.reader.readLine() != null) {
+        ++this.position;
+      }
+    } catch (IOException | RuntimeException e) {
+      this.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public RegisteredPlayer next() throws IOException {
+    String line;
+    while ((line = this.reader.readLine()) != null) {
+      ++this.position;
+      if (line.isBlank()) {
+        continue;
+      }
+
+      List<String> values = split(line);
+      String nickname = this.get(values, ImportFormat.Column.NICKNAME);
+      if (nickname == null || nickname.isBlank()) {
+        continue;
+      }
+
+      return AccountMapper.map(nickname.trim(), this.get(values, ImportFormat.Column.HASH), this.get(values, ImportFormat.Column.IP),
+          this.get(values, ImportFormat.Column.REG_DATE), this.get(values, ImportFormat.Column.LOGIN_DATE),
+          this.get(values, ImportFormat.Column.UUID), this.get(values, ImportFormat.Column.TOTP_TOKEN));
+    }
+
+    return null;
+  }
+
+  private String get(List<String> values, ImportFormat.Column column) {
+    Integer index = this.columns.get(column);
+    if (index == null || index >= values.size()) {
+      return null;
+    }
+
+    String value = values.get(index);
+    return value.isEmpty() ? null : value;
+  }
+
+  /**
+   * Splits the line by commas, the values can be quoted with the double quotes, which are escaped by doubling them.
+   */
+  static List<String> split(String line) {
+    List<String> values = new ArrayList<>();
+    StringBuilder value = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); ++i) {
+      char character = line.charAt(i);
+      if (quoted) {
+        if (character != '"') {
+          value.append(character);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          value.append('"');
+          ++i;
+        } else {
+          quoted = false;
+        }
+      } else if (character == '"') {
+        quoted = true;
+      } else if (character == ',') {
+        values.add(value.toString());
+        value.setLength(0);
+      } else {
+        value.append(character);
+      }
+    }
+
+    values.add(value.toString());
+    return values;
+  }
+
+  @Override
+  public long getPosition() {
+    return this.position;
+  }
+
+  @Override
+  public long getProgress() {
+    try {
+      // The reader is buffered, so this is a bit ahead of the returned accounts.
+      return this.channel.position();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  @Override
+  public long getTotal() {
+    return this.total;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Account tables of the other plugins. Every column has several candidate names, because they differ between the plugin versions,
+ * the first one present in the source is used.
+ */
+public enum ImportFormat {
+  AUTHME("authme", Map.of(
+      Column.ID, List.of("id"),
+      Column.NICKNAME, List.of("realname", "username"),
+      Column.HASH, List.of("password"),
+      Column.IP, List.of("regip", "ip"),
+      Column.REG_DATE, List.of("regdate"),
+      Column.LOGIN_DATE, List.of("lastlogin"),
+      Column.TOTP_TOKEN, List.of("totp")
+  )),
+  NLOGIN("nlogin", Map.of(
+      Column.ID, List.of("ai", "id"),
+      Column.NICKNAME, List.of("last_name", "realname", "name"),
+      Column.HASH, List.of("password"),
+      Column.IP, List.of("last_ip", "address"),
+      Column.REG_DATE, List.of("creation_date"),
+      Column.LOGIN_DATE, List.of("last_seen", "lastlogin"),
+      Column.UUID, List.of("unique_id", "uniqueid")
+  )),
+  /**
+   * Comma separated values with a header, the LimboAuth column names are used, e.g. NICKNAME,HASH,IP,REGDATE,UUID.
+   */
+  CSV(null, Map.of(
+      Column.NICKNAME, List.of("nickname", "realname", "username"),
+      Column.HASH, List.of("hash", "password"),
+      Column.IP, List.of("ip"),
+      Column.REG_DATE, List.of("regdate"),
+      Column.LOGIN_DATE, List.of("logindate"),
+      Column.UUID, List.of("uuid"),
+      Column.TOTP_TOKEN, List.of("totptoken", "totp")
+  )),
+  /**
+   * Backup written by /limboauth export, it stores the accounts as they are, so there are no columns to resolve.
+   */
+  BACKUP(null, Map.of());
+
+  private final String defaultTable;
+  private final Map<Column, List<String>> candidates;
+
+  ImportFormat(String defaultTable, Map<Column, List<String>> candidates) {
+    this.defaultTable = defaultTable;
+    this.candidates = candidates;
+  }
+
+  /**
+   * Picks the column names present in the source.
+   *
+   * @throws IllegalArgumentException if the source has no ID (if required) or nickname column
+   */
+  public Map<Column, String> resolve(Collection<String> available) {
+    Map<String, String> availableNames = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    available.forEach(name -> availableNames.put(name, name));
+
+    Map<Column, String> resolved = new EnumMap<>(Column.class);
+    this.candidates.forEach((column, names) -> names.stream()
+        .filter(availableNames::containsKey)
+        .findFirst()
+        .ifPresent(name -> resolved.put(column, availableNames.get(name))));
+
+    for (Column column : this.candidates.keySet()) {
+      if (column.required && !resolved.containsKey(column)) {
+        throw new IllegalArgumentException("The source has no " + column.name().toLowerCase(Locale.ROOT) + " column, expected one of "
+            + this.candidates.get(column));
+      }
+    }
+
+    return resolved;
+  }
+
+  public String getDefaultTable() {
+    return this.defaultTable;
+  }
+
+  public enum Column {
+    ID(true),
+    NICKNAME(true),
+    HASH(false),
+    IP(false),
+    REG_DATE(false),
+    LOGIN_DATE(false),
+    UUID(false),
+    TOTP_TOKEN(false);
+
+    private final boolean required;
+
+    Column(boolean required) {
+      this.required = required;
+    }
+  }
+}
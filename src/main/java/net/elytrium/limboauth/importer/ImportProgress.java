@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+/**
+ * Snapshot of the import state, reported periodically while importing.
+ */
+public class ImportProgress {
+
+  private final long imported;
+  private final long skipped;
+  private final long processed;
+  private final long progress;
+  private final long total;
+  private final long elapsedMillis;
+  private final boolean finished;
+
+  public ImportProgress(long imported, long skipped, long processed, long progress, long total, long elapsedMillis, boolean finished) {
+    this.imported = imported;
+    this.skipped = skipped;
+    this.processed = processed;
+    this.progress = progress;
+    this.total = total;
+    this.elapsedMillis = elapsedMillis;
+    this.finished = finished;
+  }
+
+  /**
+   * Accounts written to the database, including the ones imported before the resume.
+   */
+  public long getImported() {
+    return this.imported;
+  }
+
+  /**
+   * Accounts not imported because of an invalid nickname or because they are already registered.
+   */
+  public long getSkipped() {
+    return this.skipped;
+  }
+
+  /**
+   * Done part of the import from 0 to 1, or -1 if the source size is unknown.
+   */
+  public double getFraction() {
+    if (this.finished) {
+      return 1;
+    }
+
+    return this.total <= 0 ? -1 : Math.min(1, (double) this.progress / this.total);
+  }
+
+  public long getElapsedMillis() {
+    return this.elapsedMillis;
+  }
+
+  /**
+   * Accounts read from the source per second since the start of this run.
+   */
+  public double getRate() {
+    return this.elapsedMillis == 0 ? 0 : this.processed * 1000.0 / this.elapsedMillis;
+  }
+
+  public boolean isFinished() {
+    return this.finished;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Streams the accounts of another plugin. Only the current row is kept in memory, so any amount of accounts can be imported.
+ */
+public interface ImportSource extends AutoCloseable {
+
+  /**
+   * Returns the next account, or null if there are no more. Rows without a nickname are skipped.
+   */
+  @Nullable
+  RegisteredPlayer next() throws SQLException, IOException;
+
+  /**
+   * Position after the last returned account. The source opened with this position continues from the next account.
+   */
+  long getPosition();
+
+  /**
+   * Progress in the source specific units, e.g. rows or bytes.
+   */
+  long getProgress();
+
+  /**
+   * Total amount of the progress units, -1 if it is unknown.
+   */
+  long getTotal();
+
+  @Override
+  void close() throws SQLException, IOException;
+}
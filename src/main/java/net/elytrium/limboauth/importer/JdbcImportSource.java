@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.importer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import net.elytrium.limboauth.dependencies.DatabaseLibrary;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+
+/**
+ * Reads the accounts table of another plugin with a forward-only cursor ordered by the numeric ID,
+ * the last read ID is used as the position, so the import continues with a simple range query.
+ */
+public class JdbcImportSource implements ImportSource {
+
+  private static final Pattern TABLE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_.]+");
+
+  private final Connection connection;
+  private final PreparedStatement statement;
+  private final ResultSet resultSet;
+  private final Map<ImportFormat.Column, String> columns;
+  private final long total;
+  private long position;
+  private long progress;
+
+  public JdbcImportSource(Connection connection, ImportFormat format, String table, long position, int fetchSize) throws SQLException {
+    if (!TABLE_NAME_PATTERN.matcher(table).matches()) {
+      throw new IllegalArgumentException("Invalid table name: " + table);
+    }
+
+    this.connection = connection;
+    this.position = position;
+
+    try (Statement metaStatement = connection.createStatement();
+        ResultSet metaResultSet = metaStatement.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+      ResultSetMetaData metaData = metaResultSet.getMetaData();
+      List<String> availableColumns = new ArrayList<>(metaData.getColumnCount());
+      for (int i = 1; i <= metaData.getColumnCount(); ++i) {
+        availableColumns.add(metaData.getColumnLabel(i));
+      }
+
+      this.columns = format.resolve(availableColumns);
+    }
+
+    String idColumn = this.columns.get(ImportFormat.Column.ID);
+    String countSql = "SELECT COUNT(*), SUM(CASE WHEN " + idColumn + " <= ? THEN 1 ELSE 0 END) FROM " + table;
+    try (PreparedStatement countStatement = connection.prepareStatement(countSql)) {
+      countStatement.setLong(1, position);
+      try (ResultSet countResultSet = countStatement.executeQuery()) {
+        countResultSet.next();
+        this.total = countResultSet.getLong(1);
+        this.progress = countResultSet.getLong(2);
+      }
+    }
+
+    // PostgreSQL only uses the cursor inside a transaction.
+    connection.setAutoCommit(false);
+    this.statement = connection.prepareStatement("SELECT * FROM " + table + " WHERE " + idColumn + " > ? ORDER BY " + idColumn,
+        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    // MySQL Connector/J streams the rows one by one only with Integer.MIN_VALUE, otherwise it reads the whole result into the memory.
+    String driverName = connection.getMetaData().getDriverName().toLowerCase(Locale.ROOT);
+    this.statement.setFetchSize(driverName.contains("mysql") ? Integer.MIN_VALUE : fetchSize);
+    this.statement.setLong(1, position);
+    this.resultSet = this.statement.executeQuery();
+  }
+
+  /**
+   * Connects to the source database and opens the cursor, the driver is picked from the JDBC URL and downloaded if needed.
+   */
+  public static JdbcImportSource open(Path dataDirectory, String jdbc, String user, String password, ImportFormat format, String table,
+      long position, int fetchSize) throws ReflectiveOperationException, SQLException, IOException {
+    DatabaseLibrary library;
+    if (jdbc.startsWith("jdbc:mysql:")) {
+      library = DatabaseLibrary.MYSQL;
+    } else if (jdbc.startsWith("jdbc:mariadb:")) {
+      library = DatabaseLibrary.MARIADB;
+    } else if (jdbc.startsWith("jdbc:postgresql:")) {
+      library = DatabaseLibrary.POSTGRESQL;
+    } else if (jdbc.startsWith("jdbc:sqlite:")) {
+      library = DatabaseLibrary.SQLITE;
+    } else {
+      throw new IllegalArgumentException("Unsupported JDBC URL, expected a MySQL, MariaDB, PostgreSQL or SQLite one: " + jdbc);
+    }
+
+    Connection connection = library.connect(dataDirectory, jdbc, user, password);
+    try {
+      return new JdbcImportSource(connection, format, table, position, fetchSize);
+    } catch (SQLException | RuntimeException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public RegisteredPlayer next() throws SQLException {
+    while (this.resultSet.next()) {
+      this.position = this.resultSet.getLong(this.columns.get(ImportFormat.Column.ID));
+      ++this.progress;
+
+      String nickname = this.getString(ImportFormat.Column.NICKNAME);
+      if (nickname == null || nickname.isBlank()) {
+        continue;
+      }
+
+      return AccountMapper.map(nickname.trim(), this.getString(ImportFormat.Column.HASH), this.getString(ImportFormat.Column.IP),
+          this.getObject(ImportFormat.Column.REG_DATE), this.getObject(ImportFormat.Column.LOGIN_DATE),
+          this.getObject(ImportFormat.Column.UUID), this.getString(ImportFormat.Column.TOTP_TOKEN));
+    }
+
+    return null;
+  }
+
+  private String getString(ImportFormat.Column column) throws SQLException {
+    String columnName = this.columns.get(column);
+    return columnName == null ? null : this.resultSet.getString(columnName);
+  }
+
+  private Object getObject(ImportFormat.Column column) throws SQLException {
+    String columnName = this.columns.get(column);
+    return columnName == null ? null : this.resultSet.getObject(columnName);
+  }
+
+  @Override
+  public long getPosition() {
+    return this.position;
+  }
+
+  @Override
+  public long getProgress() {
+    return this.progress;
+  }
+
+  @Override
+  public long getTotal() {
+    return this.total;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      this.resultSet.close();
+      this.statement.close();
+      this.connection.rollback();
+    } finally {
+      this.connection.close();
+    }
+  }
+}
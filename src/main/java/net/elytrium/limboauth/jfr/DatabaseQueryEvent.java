@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("net.elytrium.limboauth.DatabaseQuery")
+@Label("Database Query")
+@Category({"LimboAuth", "Database"})
+@Description("Query executed by the player repository, the duration doesn't include the time in the queue")
+@StackTrace(false)
+public class DatabaseQueryEvent extends Event {
+
+  @Label("Method")
+  @Description("PlayerRepository method that has issued the query")
+  private String method;
+
+  @Label("Rows")
+  @Description("Returned rows, or the affected ones for the bulk updates. The other writes report 0, the failed queries -1")
+  private long rows;
+
+  @Label("Queue Time")
+  @Timespan(Timespan.NANOSECONDS)
+  private long queueTime;
+
+  @Label("Succeeded")
+  private boolean succeeded;
+
+  public void setMethod(String method) {
+    this.method = method;
+  }
+
+  public void setRows(long rows) {
+    this.rows = rows;
+  }
+
+  public void setQueueTime(long queueTime) {
+    this.queueTime = queueTime;
+  }
+
+  public void setSucceeded(boolean succeeded) {
+    this.succeeded = succeeded;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.elytrium.limboauth.HashVerification")
+@Label("Password Hash Verification")
+@Category({"LimboAuth", "Authentication"})
+@StackTrace(false)
+public class HashVerificationEvent extends Event {
+
+  @Label("Algorithm")
+  @Description("BCRYPT, or the migration hash if the BCrypt verification has failed")
+  private String algorithm;
+
+  @Label("Cost")
+  @Description("BCrypt cost factor, -1 if unknown")
+  private int cost;
+
+  @Label("Verified")
+  private boolean verified;
+
+  public void setAlgorithm(String algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  public void setCost(int cost) {
+    this.cost = cost;
+  }
+
+  public void setVerified(boolean verified) {
+    this.verified = verified;
+  }
+}
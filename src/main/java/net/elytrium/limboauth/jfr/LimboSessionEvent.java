@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.elytrium.limboauth.LimboSession")
+@Label("Auth Limbo Session")
+@Category({"LimboAuth", "Authentication"})
+@Description("Time from spawning the player in the auth limbo until leaving it")
+@StackTrace(false)
+public class LimboSessionEvent extends Event {
+
+  @Label("Username")
+  private String username;
+
+  @Label("Registration")
+  @Description("Whether the player had to register instead of logging in")
+  private boolean registration;
+
+  @Label("Authenticated")
+  private boolean authenticated;
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public void setRegistration(boolean registration) {
+    this.registration = registration;
+  }
+
+  public void setAuthenticated(boolean authenticated) {
+    this.authenticated = authenticated;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.elytrium.limboauth.PreLogin")
+@Label("PreLogin Decision")
+@Category({"LimboAuth", "Authentication"})
+@Description("Decision whether the connection is authenticated in the online or offline mode")
+@StackTrace(false)
+public class PreLoginOutcomeEvent extends Event {
+
+  @Label("Username")
+  private String username;
+
+  @Label("Outcome")
+  @Description("ONLINE, OFFLINE, DENIED or DEFAULT")
+  private String outcome;
+
+  @Label("Database Checked")
+  @Description("Whether the account was fetched, because the previous online mode login from the address has failed")
+  private boolean databaseChecked;
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public void setOutcome(String outcome) {
+    this.outcome = outcome;
+  }
+
+  public void setDatabaseChecked(boolean databaseChecked) {
+    this.databaseChecked = databaseChecked;
+  }
+}
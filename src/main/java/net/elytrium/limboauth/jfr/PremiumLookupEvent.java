@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.elytrium.limboauth.PremiumLookup")
+@Label("Premium Lookup")
+@Category({"LimboAuth", "Premium"})
+@Description("HTTP request to the premium API, the bulk requests resolve several nicknames at once")
+@StackTrace(false)
+public class PremiumLookupEvent extends Event {
+
+  @Label("Nicknames")
+  private int nicknames;
+
+  @Label("Status Code")
+  @Description("HTTP status code, -1 if the request has failed")
+  private int statusCode;
+
+  @Label("Result")
+  @Description("State of the single lookup, or the amount of resolved nicknames of the bulk one")
+  private String result;
+
+  public void setNicknames(int nicknames) {
+    this.nicknames = nicknames;
+  }
+
+  public void setStatusCode(int statusCode) {
+    this.statusCode = statusCode;
+  }
+
+  public void setResult(String result) {
+    this.result = result;
+  }
+}
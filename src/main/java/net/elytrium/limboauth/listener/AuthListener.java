@@ -17,16 +17,14 @@
 
 package net.elytrium.limboauth.listener;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.UpdateBuilder;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
 import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.event.player.GameProfileRequestEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.proxy.InboundConnection;
 import com.velocitypowered.api.util.UuidUtils;
 import com.velocitypowered.proxy.connection.MinecraftConnection;
@@ -37,24 +35,23 @@ import com.velocitypowered.proxy.protocol.packet.ServerLogin;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
-import net.elytrium.commons.kyori.serialization.Serializer;
 import net.elytrium.commons.utils.reflection.ReflectionException;
 import net.elytrium.limboapi.api.event.LoginLimboRegisterEvent;
 import net.elytrium.limboauth.LimboAuth;
 import net.elytrium.limboauth.Settings;
 import net.elytrium.limboauth.floodgate.FloodgateApiHolder;
-import net.elytrium.limboauth.handler.AuthSessionHandler;
+import net.elytrium.limboauth.jfr.PreLoginOutcomeEvent;
+import net.elytrium.limboauth.metrics.MetricsRegistry;
 import net.elytrium.limboauth.model.RegisteredPlayer;
-import net.elytrium.limboauth.model.SQLRuntimeException;
 import net.elytrium.limboauth.model.UUIDType;
 import net.kyori.adventure.text.Component;
 
@@ -65,23 +62,59 @@ public class AuthListener {
   private static final MethodHandle LOGIN_FIELD;
 
   private final LimboAuth plugin;
-  private final Dao<RegisteredPlayer, String> playerDao;
   private final FloodgateApiHolder floodgateApi;
+  private final LoginFailureTracker loginFailureTracker;
 
-  private final Cache<String, String> loginFailurePlayers = CacheBuilder
-          .newBuilder()
-          .expireAfterWrite(Duration.of(20, ChronoUnit.SECONDS))
-          .build();
-
-
-  public AuthListener(LimboAuth plugin, Dao<RegisteredPlayer, String> playerDao, FloodgateApiHolder floodgateApi) {
+  /**
+   * The player repository is looked up from the plugin every time, as it is replaced when the database is switched.
+   */
+  public AuthListener(LimboAuth plugin, FloodgateApiHolder floodgateApi) {
     this.plugin = plugin;
-    this.playerDao = playerDao;
     this.floodgateApi = floodgateApi;
+    this.loginFailureTracker = plugin.getLoginFailureTracker();
   }
 
   @Subscribe(order = PostOrder.FIRST)
-  public void onPreLoginEvent(PreLoginEvent event) throws SQLException {
+  public EventTask onPreLoginEvent(PreLoginEvent event) {
+    PreLoginOutcomeEvent jfrEvent = new PreLoginOutcomeEvent();
+    jfrEvent.begin();
+    long startTime = System.nanoTime();
+    CompletableFuture<Void> task = this.decidePreLogin(event);
+    if (task == null) {
+      LimboAuth.getMetrics().record(MetricsRegistry.Stage.PRE_LOGIN, startTime);
+      commitPreLoginEvent(jfrEvent, event, false);
+      return null;
+    }
+
+    return EventTask.resumeWhenComplete(task.whenComplete((result, e) -> {
+      LimboAuth.getMetrics().record(MetricsRegistry.Stage.PRE_LOGIN, startTime);
+      commitPreLoginEvent(jfrEvent, event, true);
+    }));
+  }
+
+  private static void commitPreLoginEvent(PreLoginOutcomeEvent jfrEvent, PreLoginEvent event, boolean databaseChecked) {
+    jfrEvent.end();
+    if (jfrEvent.shouldCommit()) {
+      PreLoginEvent.PreLoginComponentResult result = event.getResult();
+      String outcome;
+      if (!result.isAllowed()) {
+        outcome = "DENIED";
+      } else if (result.isForceOfflineMode()) {
+        outcome = "OFFLINE";
+      } else if (result.isOnlineModeAllowed()) {
+        outcome = "ONLINE";
+      } else {
+        outcome = "DEFAULT";
+      }
+
+      jfrEvent.setUsername(event.getUsername());
+      jfrEvent.setOutcome(outcome);
+      jfrEvent.setDatabaseChecked(databaseChecked);
+      jfrEvent.commit();
+    }
+  }
+
+  private CompletableFuture<Void> decidePreLogin(PreLoginEvent event) {
     if (event.getUsername().toLowerCase().startsWith(Settings.IMP.MAIN.BEDROCK_PREFIX.toLowerCase())) {
       event.setResult(PreLoginEvent.PreLoginComponentResult.denied(plugin.getWrongNicknamePrefixKick()));
     }
@@ -91,37 +124,39 @@ public class AuthListener {
             .orElse("");
     if (virtualHostStr.contains(Settings.IMP.MAIN.OFFLINE_HOST)) {
       event.setResult(PreLoginEvent.PreLoginComponentResult.forceOfflineMode());
-      return;
+      return null;
     }
     if (Settings.IMP.MAIN.ONLY_OFFLINE_MODE) {
       event.setResult(PreLoginEvent.PreLoginComponentResult.forceOfflineMode());
     } else {
       if (!event.getUsername().startsWith("OF_")) {
 
-        String lastName = loginFailurePlayers.getIfPresent(event.getConnection().getRemoteAddress().getHostName());
+        InetAddress address = event.getConnection().getRemoteAddress().getAddress();
+        String lastName = this.loginFailureTracker.getFailedUsername(address);
 
         event.setResult(PreLoginEvent.PreLoginComponentResult.forceOnlineMode());
 
         if (lastName != null && lastName.equals(event.getUsername())) {
-          Serializer serializer = LimboAuth.getSerializer();
-          List<RegisteredPlayer> playerList = playerDao.queryForEq(RegisteredPlayer.LOWERCASE_NICKNAME_FIELD, event.getUsername().toLowerCase(Locale.ROOT));
-          if (playerList != null && playerList.size() > 0) {
-            if (playerList.get(0).getUuidType() == UUIDType.JAVA_ONLINE) {
+          return this.plugin.getPlayerRepository().fetchByNickname(event.getUsername()).handle((registeredPlayer, e) -> {
+            if (e != null) {
+              LimboAuth.getLogger().error("Unable to fetch the account of " + event.getUsername() + ".", e);
+            } else if (registeredPlayer != null && registeredPlayer.getUuidType() == UUIDType.JAVA_ONLINE) {
               event.setResult(PreLoginEvent.PreLoginComponentResult.forceOnlineMode());
-              return;
+              return null;
             }
-          }
 
-          event.setResult(PreLoginEvent.PreLoginComponentResult.forceOfflineMode());
-          // event.setResult(PreLoginEvent.PreLoginComponentResult.denied(serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.NOT_PREMIUM, event.getUsername()))));
-          loginFailurePlayers.invalidate(event.getConnection().getRemoteAddress().getHostName());
-          return;
+            event.setResult(PreLoginEvent.PreLoginComponentResult.forceOfflineMode());
+            // event.setResult(PreLoginEvent.PreLoginComponentResult.denied(serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.NOT_PREMIUM, event.getUsername()))));
+            this.loginFailureTracker.invalidate(address);
+            this.loginFailureTracker.recordOfflineFallback();
+            return null;
+          });
         }
 
         plugin.getServer().getScheduler()
                 .buildTask(plugin, () -> {
                   if (!event.getConnection().isActive()) {
-                    loginFailurePlayers.put(event.getConnection().getRemoteAddress().getHostName(), event.getUsername());
+                    this.loginFailureTracker.recordFailure(address, event.getUsername());
                     plugin.getOnlineModeNames().remove(event.getUsername());
                   }
                 })
@@ -131,6 +166,8 @@ public class AuthListener {
         event.setResult(PreLoginEvent.PreLoginComponentResult.forceOfflineMode());
       }
     }
+
+    return null;
   }
 
   // Temporarily disabled because some clients send UUID version 4 (random UUID) even if the player is cracked
@@ -156,6 +193,7 @@ public class AuthListener {
   @Subscribe
   public void onProxyDisconnect(DisconnectEvent event) {
     this.plugin.unsetForcedPreviously(event.getPlayer().getUsername());
+    this.plugin.getAdmissionController().release(event.getPlayer().getUniqueId(), event.getPlayer());
   }
 
   @Subscribe
@@ -172,14 +210,17 @@ public class AuthListener {
   }
 
   @Subscribe
-  public void onLoginLimboRegister(LoginLimboRegisterEvent event) {
-    if (this.plugin.needAuth(event.getPlayer())) {
-      event.addOnJoinCallback(() -> this.plugin.authPlayer(event.getPlayer()));
-    }
+  public EventTask onLoginLimboRegister(LoginLimboRegisterEvent event) {
+    return EventTask.resumeWhenComplete(this.plugin.checkNeedAuth(event.getPlayer()).thenAccept(needAuth -> {
+      if (needAuth) {
+        event.addOnJoinCallback(() -> this.plugin.authPlayer(event.getPlayer()));
+      }
+    }));
   }
 
   @Subscribe(order = PostOrder.EARLY)
-  public void onGameProfileRequest(GameProfileRequestEvent event) {
+  public EventTask onGameProfileRequest(GameProfileRequestEvent event) {
+    long startTime = System.nanoTime();
 
     if (!event.isOnlineMode()) {
       plugin.getOnlineModeNames().remove(event.getOriginalProfile().getName());
@@ -196,80 +237,81 @@ public class AuthListener {
       event.setGameProfile(event.getGameProfile().withName(Settings.IMP.MAIN.ONLINE_MODE_PREFIX + event.getUsername()));
     }
 
+    CompletableFuture<?> task;
     if (this.floodgateApi != null && this.floodgateApi.isFloodgateUUID(event.getGameProfile().getId())) {
-      RegisteredPlayer registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, event.getGameProfile().getId());
-      if (registeredPlayer != null) {
-        boolean needUpdate = false;
-        String currentUuid = registeredPlayer.getUuid();
+      task = this.plugin.getPlayerRepository().fetchByUuid(event.getGameProfile().getId()).thenCompose(registeredPlayer -> {
+        if (registeredPlayer != null) {
+          boolean needUpdate = false;
+          String currentUuid = registeredPlayer.getUuid();
 
-        if (!registeredPlayer.getNickname().equals(event.getGameProfile().getName())) {
-          registeredPlayer.setNickname(event.getGameProfile().getName());
+          if (!registeredPlayer.getNickname().equals(event.getGameProfile().getName())) {
+            registeredPlayer.setNickname(event.getGameProfile().getName());
 
-          needUpdate = true;
-        }
+            needUpdate = true;
+          }
 
-        if (currentUuid.isEmpty()) {
-          needUpdate = true;
-        }
+          if (currentUuid.isEmpty()) {
+            needUpdate = true;
+          }
 
-        if (needUpdate) {
-          try {
+          if (needUpdate) {
             registeredPlayer.setUuid(event.getGameProfile().getId().toString());
             registeredPlayer.setUuidType(UUIDType.BEDROCK);
-            this.playerDao.update(registeredPlayer);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
+            return this.plugin.getPlayerRepository().update(registeredPlayer);
+          } else {
+            event.setGameProfile(event.getGameProfile().withId(UUID.fromString(currentUuid)));
           }
-        } else {
-          event.setGameProfile(event.getGameProfile().withId(UUID.fromString(currentUuid)));
         }
 
-
-      }
+        return CompletableFuture.completedFuture(null);
+      });
     } else if (Settings.IMP.MAIN.SAVE_UUID) {
-      RegisteredPlayer registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, event.getGameProfile().getId());
-
-      if (registeredPlayer != null && !registeredPlayer.getUuid().isEmpty()) {
-        event.setGameProfile(event.getGameProfile().withId(UUID.fromString(registeredPlayer.getUuid())));
-        return;
-      }
-      registeredPlayer = AuthSessionHandler.fetchInfo(this.playerDao, event.getGameProfile().getId());
+      task = this.plugin.getPlayerRepository().fetchByUuid(event.getGameProfile().getId()).thenCompose(registeredPlayer -> {
+        if (registeredPlayer != null && !registeredPlayer.getUuid().isEmpty()) {
+          event.setGameProfile(event.getGameProfile().withId(UUID.fromString(registeredPlayer.getUuid())));
+          return CompletableFuture.completedFuture(null);
+        }
 
-      if (registeredPlayer != null) {
-        boolean needUpdate = false;
-        String currentUuid = registeredPlayer.getUuid();
+        if (registeredPlayer != null) {
+          boolean needUpdate = false;
+          String currentUuid = registeredPlayer.getUuid();
 
-        if (event.isOnlineMode() && !Objects.equals(registeredPlayer.getNickname(), event.getGameProfile().getName())) {
-          registeredPlayer.setNickname(event.getGameProfile().getName());
-          needUpdate = true;
-        }
+          if (event.isOnlineMode() && !Objects.equals(registeredPlayer.getNickname(), event.getGameProfile().getName())) {
+            registeredPlayer.setNickname(event.getGameProfile().getName());
+            needUpdate = true;
+          }
 
-        if (currentUuid.isEmpty()) {
-          needUpdate = true;
-        }
+          if (currentUuid.isEmpty()) {
+            needUpdate = true;
+          }
 
-        if (needUpdate) {
-          try {
+          if (needUpdate) {
             registeredPlayer.setUuid(event.getGameProfile().getId().toString());
             registeredPlayer.setUuidType(event.isOnlineMode() ? UUIDType.JAVA_ONLINE : UUIDType.JAVA_OFFLINE);
-            this.playerDao.update(registeredPlayer);
-          } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
+            return this.plugin.getPlayerRepository().update(registeredPlayer);
+          } else {
+            event.setGameProfile(event.getGameProfile().withId(UUID.fromString(currentUuid)));
           }
-        } else {
-          event.setGameProfile(event.getGameProfile().withId(UUID.fromString(currentUuid)));
         }
-      }
+
+        return CompletableFuture.completedFuture(null);
+      });
     } else if (event.isOnlineMode()) {
-      try {
-        UpdateBuilder<RegisteredPlayer, String> updateBuilder = this.playerDao.updateBuilder();
-        updateBuilder.where().eq(RegisteredPlayer.NICKNAME_FIELD, event.getUsername());
-        updateBuilder.updateColumnValue(RegisteredPlayer.HASH_FIELD, "");
-        updateBuilder.update();
-      } catch (SQLException e) {
-        throw new SQLRuntimeException(e);
-      }
+      task = this.plugin.getPlayerRepository().clearHashByExactNickname(event.getUsername());
+    } else {
+      return null;
     }
+
+    return EventTask.resumeWhenComplete(task.exceptionally(e -> {
+      LimboAuth.getLogger().error("Unable to update the account of " + event.getUsername() + ".", e);
+      return null;
+    }).thenRun(() -> LimboAuth.getMetrics().record(MetricsRegistry.Stage.PROFILE_FETCH, startTime)));
+  }
+
+  // The plugin instance itself is unregistered on every reload, so the listener is responsible for the shutdown.
+  @Subscribe(order = PostOrder.LAST)
+  public void onProxyShutdown(ProxyShutdownEvent event) {
+    this.plugin.shutdown();
   }
 
   static {
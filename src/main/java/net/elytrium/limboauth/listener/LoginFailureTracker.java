@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.listener;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Remembers the nicknames that failed to log in with the online mode, so the next attempt from the same address falls back to the offline mode.
+ * Entries are keyed by {@link InetAddress}, which compares the raw IPv4/IPv6 address bytes and never does a reverse DNS lookup.
+ */
+public class LoginFailureTracker {
+
+  private final Map<InetAddress, Failure> failures = new ConcurrentHashMap<>();
+  private final AtomicLong offlineFallbacks = new AtomicLong();
+  private final long ttl;
+
+  public LoginFailureTracker(long ttl) {
+    this.ttl = ttl;
+  }
+
+  public void recordFailure(InetAddress address, String username) {
+    this.failures.put(address, new Failure(username, System.currentTimeMillis() + this.ttl));
+  }
+
+  /**
+   * Returns the nickname that has failed to log in from this address, or null if there is none or it has expired.
+   */
+  @Nullable
+  public String getFailedUsername(InetAddress address) {
+    Failure failure = this.failures.get(address);
+    if (failure == null) {
+      return null;
+    }
+
+    if (failure.expiresAt <= System.currentTimeMillis()) {
+      this.failures.remove(address, failure);
+      return null;
+    }
+
+    return failure.username;
+  }
+
+  public void invalidate(InetAddress address) {
+    this.failures.remove(address);
+  }
+
+  public void recordOfflineFallback() {
+    this.offlineFallbacks.incrementAndGet();
+  }
+
+  public void evictExpired() {
+    long currentTime = System.currentTimeMillis();
+    this.failures.values().removeIf(failure -> failure.expiresAt <= currentTime);
+  }
+
+  public long getOfflineFallbacks() {
+    return this.offlineFallbacks.get();
+  }
+
+  public int getSize() {
+    return this.failures.size();
+  }
+
+  public long getTtl() {
+    return this.ttl;
+  }
+
+  private static class Failure {
+
+    private final String username;
+    private final long expiresAt;
+
+    private Failure(String username, long expiresAt) {
+      this.username = username;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latency histograms of every authentication stage, kept since the proxy start.
+ */
+public class MetricsRegistry {
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+  public MetricsRegistry() {
+    for (Stage stage : Stage.values()) {
+      this.histograms.put(stage, new LatencyHistogram());
+    }
+  }
+
+  public LatencyHistogram get(Stage stage) {
+    return this.histograms.get(stage);
+  }
+
+  /**
+   * Records the time passed since {@code startNanos}, a {@link System#nanoTime()} value.
+   */
+  public void record(Stage stage, long startNanos) {
+    this.histograms.get(stage).recordSince(startNanos);
+  }
+
+  /**
+   * Writes the histograms as Prometheus summaries in the text exposition format, replacing the file atomically,
+   * so it can be collected by the node_exporter textfile collector.
+   */
+  public void writePrometheus(Path path) throws IOException {
+    Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+      this.writePrometheus(writer);
+    }
+
+    Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public void writePrometheus(Writer writer) throws IOException {
+    writer.write("# HELP limboauth_stage_seconds Latency of the LimboAuth authentication stages.\n");
+    writer.write("# TYPE limboauth_stage_seconds summary\n");
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram.Snapshot snapshot = this.histograms.get(stage).snapshot();
+      String labels = "stage=\"" + stage.getMetricName() + "\"";
+      for (double quantile : QUANTILES) {
+        writer.write("limboauth_stage_seconds{" + labels + ",quantile=\"" + quantile + "\"} "
+            + toSeconds(snapshot.getValueAtQuantile(quantile)) + "\n");
+      }
+
+      writer.write("limboauth_stage_seconds_sum{" + labels + "} " + toSeconds(snapshot.getSum()) + "\n");
+      writer.write("limboauth_stage_seconds_count{" + labels + "} " + snapshot.getCount() + "\n");
+    }
+  }
+
+  private static String toSeconds(long micros) {
+    return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+  }
+
+  public enum Stage {
+
+    PRE_LOGIN("pre_login", "PreLogin decision"),
+    PROFILE_FETCH("profile_fetch", "GameProfileRequest fetch"),
+    AUTH_PLAYER("auth_player", "Account fetch before the limbo"),
+    LIMBO_TIME("limbo_time", "Time in the auth limbo"),
+    PASSWORD_VERIFY("password_verify", "Password verification"),
+    UPDATE_LOGIN_DATA("update_login_data", "Login data flush"),
+    PREMIUM_HTTP("premium_http", "Premium API request");
+
+    private final String metricName;
+    private final String displayName;
+
+    Stage(String metricName, String displayName) {
+      this.metricName = metricName;
+      this.displayName = displayName;
+    }
+
+    public String getMetricName() {
+      return this.metricName;
+    }
+
+    public String getDisplayName() {
+      return this.displayName;
+    }
+  }
+}
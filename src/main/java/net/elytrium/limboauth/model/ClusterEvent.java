@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+@DatabaseTable(tableName = "CLUSTER_EVENTS")
+public class ClusterEvent {
+
+  public static final String ID_FIELD = "ID";
+  public static final String NODE_FIELD = "NODE";
+  public static final String TYPE_FIELD = "TYPE";
+  public static final String KEY_FIELD = "EVENTKEY";
+  public static final String VALUE_FIELD = "EVENTVALUE";
+  public static final String TIME_FIELD = "EVENTTIME";
+  public static final String CREATED_FIELD = "CREATED";
+
+  @DatabaseField(generatedId = true, columnName = ID_FIELD)
+  private long id;
+
+  @DatabaseField(canBeNull = false, columnName = NODE_FIELD)
+  private String node;
+
+  @DatabaseField(canBeNull = false, columnName = TYPE_FIELD)
+  private String type;
+
+  @DatabaseField(canBeNull = false, columnName = KEY_FIELD)
+  private String key;
+
+  @DatabaseField(columnName = VALUE_FIELD)
+  private String value;
+
+  @DatabaseField(canBeNull = false, columnName = TIME_FIELD)
+  private long time;
+
+  @DatabaseField(canBeNull = false, columnName = CREATED_FIELD, index = true)
+  private long created;
+
+  public ClusterEvent(String node, String type, String key, String value, long time, long created) {
+    this.node = node;
+    this.type = type;
+    this.key = key;
+    this.value = value;
+    this.time = time;
+    this.created = created;
+  }
+
+  public ClusterEvent() {
+
+  }
+
+  public long getId() {
+    return this.id;
+  }
+
+  public String getNode() {
+    return this.node;
+  }
+
+  public String getType() {
+    return this.type;
+  }
+
+  public String getKey() {
+    return this.key;
+  }
+
+  public String getValue() {
+    return this.value;
+  }
+
+  public long getTime() {
+    return this.time;
+  }
+
+  public long getCreated() {
+    return this.created;
+  }
+}
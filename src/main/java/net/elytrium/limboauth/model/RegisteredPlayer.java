@@ -26,6 +26,7 @@ import java.util.Locale;
 import java.util.UUID;
 
 import net.elytrium.limboauth.Settings;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 @DatabaseTable(tableName = "AUTH")
 public class RegisteredPlayer {
@@ -102,6 +103,20 @@ public class RegisteredPlayer {
 
   }
 
+  public RegisteredPlayer(RegisteredPlayer player) {
+    this.uuid = player.uuid;
+    this.nickname = player.nickname;
+    this.lowercaseNickname = player.lowercaseNickname;
+    this.hash = player.hash;
+    this.ip = player.ip;
+    this.uuidType = player.uuidType;
+    this.totpToken = player.totpToken;
+    this.regDate = player.regDate;
+    this.loginIp = player.loginIp;
+    this.loginDate = player.loginDate;
+    this.tokenIssuedAt = player.tokenIssuedAt;
+  }
+
   public static String genHash(String password) {
     return HASHER.hashToString(Settings.IMP.MAIN.BCRYPT_COST, password.toCharArray());
   }
@@ -169,6 +184,14 @@ public class RegisteredPlayer {
     return this.regDate == null ? Long.MIN_VALUE : this.regDate;
   }
 
+  /**
+   * Same as {@link #getRegDate()}, but keeps the NULL of the column, e.g. for copying the account as it is.
+   */
+  @Nullable
+  public Long getNullableRegDate() {
+    return this.regDate;
+  }
+
   public RegisteredPlayer setUuid(String uuid) {
     this.uuid = uuid;
 
@@ -193,6 +216,11 @@ public class RegisteredPlayer {
     return this.loginDate == null ? Long.MIN_VALUE : this.loginDate;
   }
 
+  @Nullable
+  public Long getNullableLoginDate() {
+    return this.loginDate;
+  }
+
   public RegisteredPlayer setLoginDate(Long loginDate) {
     this.loginDate = loginDate;
 
@@ -203,6 +231,11 @@ public class RegisteredPlayer {
     return this.tokenIssuedAt == null ? Long.MIN_VALUE : this.tokenIssuedAt;
   }
 
+  @Nullable
+  public Long getNullableTokenIssuedAt() {
+    return this.tokenIssuedAt;
+  }
+
   public RegisteredPlayer setTokenIssuedAt(Long tokenIssuedAt) {
     this.tokenIssuedAt = tokenIssuedAt;
 
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+@DatabaseTable(tableName = "LIMBOAUTH_SCHEMA")
+public class SchemaVersion {
+
+  public static final String TABLE_NAME_FIELD = "TABLENAME";
+  public static final String VERSION_FIELD = "VERSION";
+  public static final String APPLIED_AT_FIELD = "APPLIEDAT";
+
+  @DatabaseField(id = true, canBeNull = false, columnName = TABLE_NAME_FIELD)
+  private String tableName;
+
+  @DatabaseField(canBeNull = false, columnName = VERSION_FIELD)
+  private int version;
+
+  @DatabaseField(columnName = APPLIED_AT_FIELD)
+  private Long appliedAt;
+
+  public SchemaVersion(String tableName, int version, long appliedAt) {
+    this.tableName = tableName;
+    this.version = version;
+    this.appliedAt = appliedAt;
+  }
+
+  public SchemaVersion() {
+
+  }
+
+  public String getTableName() {
+    return this.tableName;
+  }
+
+  public int getVersion() {
+    return this.version;
+  }
+
+  public void setVersion(int version) {
+    this.version = version;
+  }
+
+  public long getAppliedAt() {
+    return this.appliedAt == null ? 0 : this.appliedAt;
+  }
+
+  public void setAppliedAt(long appliedAt) {
+    this.appliedAt = appliedAt;
+  }
+}
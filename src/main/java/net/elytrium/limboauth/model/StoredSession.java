@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+@DatabaseTable(tableName = "SESSIONS")
+public class StoredSession {
+
+  public static final String LOWERCASE_NICKNAME_FIELD = "LOWERCASENICKNAME";
+  public static final String NICKNAME_FIELD = "NICKNAME";
+  public static final String IP_FIELD = "IP";
+  public static final String CHECK_TIME_FIELD = "CHECKTIME";
+
+  @DatabaseField(id = true, canBeNull = false, columnName = LOWERCASE_NICKNAME_FIELD)
+  private String lowercaseNickname;
+
+  @DatabaseField(canBeNull = false, columnName = NICKNAME_FIELD)
+  private String nickname;
+
+  @DatabaseField(canBeNull = false, columnName = IP_FIELD)
+  private String ip;
+
+  @DatabaseField(canBeNull = false, columnName = CHECK_TIME_FIELD, index = true)
+  private long checkTime;
+
+  public StoredSession(String lowercaseNickname, String nickname, String ip, long checkTime) {
+    this.lowercaseNickname = lowercaseNickname;
+    this.nickname = nickname;
+    this.ip = ip;
+    this.checkTime = checkTime;
+  }
+
+  public StoredSession() {
+
+  }
+
+  public String getLowercaseNickname() {
+    return this.lowercaseNickname;
+  }
+
+  public String getNickname() {
+    return this.nickname;
+  }
+
+  public String getIp() {
+    return this.ip;
+  }
+
+  public long getCheckTime() {
+    return this.checkTime;
+  }
+}
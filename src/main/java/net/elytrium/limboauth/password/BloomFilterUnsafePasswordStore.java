@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.password;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Probabilistic store, about 29 bits per password with the default false positive rate of 0.0001%.
+ * A false positive means that a random safe password is rejected as unsafe, an unsafe password is never accepted.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class BloomFilterUnsafePasswordStore implements UnsafePasswordStore {
+
+  private final BloomFilter<CharSequence> filter;
+
+  public BloomFilterUnsafePasswordStore(BloomFilter<CharSequence> filter) {
+    this.filter = filter;
+  }
+
+  public static BloomFilterUnsafePasswordStore load(Path path, double fpp) throws IOException {
+    // The file is read twice, so the filter is sized for the exact amount of passwords without keeping them in memory.
+    long count;
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      count = reader.lines().count();
+    }
+
+    BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(1, count), fpp);
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String password;
+      while ((password = reader.readLine()) != null) {
+        filter.put(password);
+      }
+    }
+
+    return new BloomFilterUnsafePasswordStore(filter);
+  }
+
+  @Override
+  public boolean contains(String password) {
+    return this.filter.mightContain(password);
+  }
+
+  @Override
+  public long size() {
+    return this.filter.approximateElementCount();
+  }
+}
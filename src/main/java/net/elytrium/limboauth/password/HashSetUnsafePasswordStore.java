@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.password;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exact in-memory store, fine for the bundled list, but takes about 100 bytes of heap per password.
+ */
+public class HashSetUnsafePasswordStore implements UnsafePasswordStore {
+
+  private final Set<String> passwords;
+
+  public HashSetUnsafePasswordStore(Set<String> passwords) {
+    this.passwords = passwords;
+  }
+
+  public static HashSetUnsafePasswordStore load(Path path) throws IOException {
+    Set<String> passwords = new HashSet<>();
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String password;
+      while ((password = reader.readLine()) != null) {
+        passwords.add(password);
+      }
+    }
+
+    return new HashSetUnsafePasswordStore(passwords);
+  }
+
+  @Override
+  public boolean contains(String password) {
+    return this.passwords.contains(password);
+  }
+
+  @Override
+  public long size() {
+    return this.passwords.size();
+  }
+
+  public Set<String> getPasswords() {
+    return Collections.unmodifiableSet(this.passwords);
+  }
+}
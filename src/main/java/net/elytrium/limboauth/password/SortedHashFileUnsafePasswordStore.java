@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.password;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Store backed by a precompiled file of the sorted 64-bit password hashes, memory-mapped and binary-searched.
+ * The file is built next to the source list once and rebuilt only when the list is modified,
+ * so the reload doesn't parse the list and the heap usage doesn't depend on its size.
+ * The false positive rate is about n / 2^64, negligible even for the huge breach lists.
+ */
+public class SortedHashFileUnsafePasswordStore implements UnsafePasswordStore {
+
+  private static final int MAGIC = 0x4C415550; // LAUP
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 2;
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final MappedByteBuffer buffer;
+  private final long count;
+
+  private SortedHashFileUnsafePasswordStore(MappedByteBuffer buffer, long count) {
+    this.buffer = buffer;
+    this.count = count;
+  }
+
+  public static SortedHashFileUnsafePasswordStore load(Path path) throws IOException {
+    Path indexPath = path.resolveSibling(path.getFileName() + ".idx");
+    long sourceModified = Files.getLastModifiedTime(path).toMillis();
+    SortedHashFileUnsafePasswordStore store = map(indexPath, sourceModified);
+    if (store == null) {
+      build(path, indexPath, sourceModified);
+      store = map(indexPath, sourceModified);
+      if (store == null) {
+        throw new IOException("Unable to read the built unsafe passwords index " + indexPath);
+      }
+    }
+
+    return store;
+  }
+
+  /**
+   * Returns null if the index doesn't exist or has been built from another version of the list.
+   */
+  private static SortedHashFileUnsafePasswordStore map(Path indexPath, long sourceModified) throws IOException {
+    if (!Files.exists(indexPath)) {
+      return null;
+    }
+
+    try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      if (fileSize < HEADER_SIZE) {
+        return null;
+      }
+
+      // The mapping stays valid after the channel is closed.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION || buffer.getLong(Integer.BYTES * 2) != sourceModified) {
+        return null;
+      }
+
+      long count = buffer.getLong(Integer.BYTES * 2 + Long.BYTES);
+      if (HEADER_SIZE + count * Long.BYTES != fileSize || count > Integer.MAX_VALUE / Long.BYTES) {
+        return null;
+      }
+
+      return new SortedHashFileUnsafePasswordStore(buffer, count);
+    }
+  }
+
+  private static void build(Path path, Path indexPath, long sourceModified) throws IOException {
+    long[] hashes = new long[1024];
+    int count = 0;
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String password;
+      while ((password = reader.readLine()) != null) {
+        if (count == hashes.length) {
+          hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+
+        hashes[count++] = hash(password);
+      }
+    }
+
+    Arrays.sort(hashes, 0, count);
+    int unique = 0;
+    for (int i = 0; i < count; ++i) {
+      if (unique == 0 || hashes[unique - 1] != hashes[i]) {
+        hashes[unique++] = hashes[i];
+      }
+    }
+
+    Path temporaryPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(sourceModified);
+      output.writeLong(unique);
+      for (int i = 0; i < unique; ++i) {
+        output.writeLong(hashes[i]);
+      }
+    }
+
+    Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static long hash(String password) {
+    return HASH_FUNCTION.hashString(password, StandardCharsets.UTF_8).asLong();
+  }
+
+  @Override
+  public boolean contains(String password) {
+    long hash = hash(password);
+    long low = 0;
+    long high = this.count - 1;
+    while (low <= high) {
+      long middle = (low + high) >>> 1;
+      // Absolute reads don't touch the buffer position, so the lookups are thread-safe.
+      long value = this.buffer.getLong((int) (HEADER_SIZE + middle * Long.BYTES));
+      if (value < hash) {
+        low = middle + 1;
+      } else if (value > hash) {
+        high = middle - 1;
+      } else {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public long size() {
+    return this.count;
+  }
+}
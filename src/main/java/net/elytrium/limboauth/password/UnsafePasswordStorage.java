@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.password;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import net.elytrium.limboauth.Settings;
+
+public enum UnsafePasswordStorage {
+  HASH_SET(HashSetUnsafePasswordStore::load),
+  BLOOM_FILTER(path -> BloomFilterUnsafePasswordStore.load(path, Settings.IMP.MAIN.UNSAFE_PASSWORDS_BLOOM_FILTER_FPP)),
+  SORTED_HASH_FILE(SortedHashFileUnsafePasswordStore::load);
+
+  private final StoreLoader loader;
+
+  UnsafePasswordStorage(StoreLoader loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * @param path Plain text file with one password per line.
+   */
+  public UnsafePasswordStore load(Path path) throws IOException {
+    return this.loader.load(path);
+  }
+
+  private interface StoreLoader {
+
+    UnsafePasswordStore load(Path path) throws IOException;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.premium;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.LimboAuth.PremiumResponse;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.model.RegisteredPlayer;
+import net.elytrium.limboauth.model.UUIDType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Classifies the nicknames by their registered accounts: {@link PremiumState#CRACKED} if any account with the nickname has a password,
+ * {@link PremiumState#PREMIUM} if none of them has, {@link PremiumState#UNKNOWN} if the nickname isn't registered.
+ * Every classification is a single aggregate query that returns one row however many accounts match, the results are cached for a short time
+ * and dropped on every change of the accounts made on this proxy. Other plugins can use it through {@link LimboAuth#getPremiumClassifier()}.
+ */
+public class PremiumClassifier {
+
+  private final PlayerRepository playerRepository;
+  private final PremiumResolver premiumResolver;
+  private final Cache<String, PremiumResponse> cache;
+  private final String classifySql;
+  // Incremented on every invalidation, so the queries which were started before the change don't cache the stale state.
+  private final AtomicLong version = new AtomicLong();
+
+  public PremiumClassifier(PlayerRepository playerRepository, PremiumResolver premiumResolver, long cacheTime, long cacheSize) {
+    this.playerRepository = playerRepository;
+    this.premiumResolver = premiumResolver;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(cacheTime > 0 ? cacheSize : 0)
+        .expireAfterWrite(Math.max(1, cacheTime), TimeUnit.MILLISECONDS)
+        .build();
+    this.classifySql = buildClassifySql(playerRepository.getPlayerDao());
+
+    playerRepository.getCache().addInvalidationListener(this::onInvalidate);
+  }
+
+  public static PremiumClassifier fromSettings(PlayerRepository playerRepository, PremiumResolver premiumResolver) {
+    return new PremiumClassifier(playerRepository, premiumResolver,
+        Settings.IMP.MAIN.PREMIUM_CLASSIFIER_CACHE_MILLIS, Settings.IMP.MAIN.PREMIUM_CACHE_SIZE);
+  }
+
+  /**
+   * Classifies the nickname by the registered accounts only, completes with {@link PremiumState#ERROR} if the query has failed.
+   */
+  public CompletableFuture<PremiumResponse> classify(String nickname) {
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    PremiumResponse cached = this.cache.getIfPresent(lowercaseNickname);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    long version = this.version.get();
+    return this.playerRepository.query(playerDao -> playerDao.queryRaw(this.classifySql, lowercaseNickname).getFirstResult()).thenApply(row -> {
+      PremiumResponse response = classify(row);
+      if (this.version.get() == version) {
+        this.cache.put(lowercaseNickname, response);
+      }
+
+      return response;
+    }).exceptionally(e -> {
+      LimboAuth.getLogger().error("Unable to check if account is premium.", e);
+      return new PremiumResponse(PremiumState.ERROR);
+    });
+  }
+
+  /**
+   * The row contains the amount of the accounts, the amount of the accounts with a password, and the UUID of an online account.
+   */
+  private static PremiumResponse classify(String[] row) {
+    if (Long.parseLong(row[0]) == 0) {
+      return new PremiumResponse(PremiumState.UNKNOWN);
+    } else if (row[1] != null && Long.parseLong(row[1]) != 0) {
+      return new PremiumResponse(PremiumState.CRACKED);
+    }
+
+    String uuid = row[2];
+    return uuid == null ? new PremiumResponse(PremiumState.PREMIUM) : new PremiumResponse(PremiumState.PREMIUM, uuid);
+  }
+
+  private static String buildClassifySql(Dao<RegisteredPlayer, String> playerDao) {
+    DatabaseType databaseType = playerDao.getConnectionSource().getDatabaseType();
+    StringBuilder builder = new StringBuilder("SELECT COUNT(*), SUM(CASE WHEN ");
+    databaseType.appendEscapedEntityName(builder, RegisteredPlayer.HASH_FIELD);
+    builder.append(" <> '' THEN 1 ELSE 0 END), MAX(CASE WHEN ");
+    databaseType.appendEscapedEntityName(builder, RegisteredPlayer.UUID_TYPE_FIELD);
+    builder.append(" = ").append(UUIDType.JAVA_ONLINE).append(" AND ");
+    databaseType.appendEscapedEntityName(builder, RegisteredPlayer.UUID_FIELD);
+    builder.append(" <> '' THEN ");
+    databaseType.appendEscapedEntityName(builder, RegisteredPlayer.UUID_FIELD);
+    builder.append(" END) FROM ");
+    databaseType.appendEscapedEntityName(builder, playerDao.getTableName());
+    builder.append(" WHERE ");
+    databaseType.appendEscapedEntityName(builder, RegisteredPlayer.LOWERCASE_NICKNAME_FIELD);
+    builder.append(" = ?");
+    return builder.toString();
+  }
+
+  /**
+   * Checks the registered accounts first, and asks the {@link PremiumResolver} only about the unregistered nicknames.
+   * Rate limits and errors are resolved with the ON_RATE_LIMIT_PREMIUM and ON_SERVER_ERROR_PREMIUM settings.
+   */
+  public CompletableFuture<Boolean> isPremium(String nickname) {
+    return this.classify(nickname).thenCompose(response -> {
+      switch (response.getState()) {
+        case PREMIUM: {
+          return CompletableFuture.completedFuture(true);
+        }
+        case CRACKED: {
+          return CompletableFuture.completedFuture(false);
+        }
+        case UNKNOWN: {
+          return this.premiumResolver.resolve(nickname).thenApply(PremiumClassifier::isPremium);
+        }
+        default: {
+          return CompletableFuture.completedFuture(Settings.IMP.MAIN.ON_SERVER_ERROR_PREMIUM);
+        }
+      }
+    });
+  }
+
+  private static boolean isPremium(PremiumResponse response) {
+    switch (response.getState()) {
+      case PREMIUM:
+      case PREMIUM_USERNAME: {
+        return true;
+      }
+      case CRACKED: {
+        return false;
+      }
+      case RATE_LIMIT: {
+        return Settings.IMP.MAIN.ON_RATE_LIMIT_PREMIUM;
+      }
+      default: {
+        return Settings.IMP.MAIN.ON_SERVER_ERROR_PREMIUM;
+      }
+    }
+  }
+
+  private void onInvalidate(@Nullable String uuid, @Nullable String lowercaseNickname) {
+    this.version.incrementAndGet();
+    if (lowercaseNickname == null) {
+      // The nickname of the account is unknown, it is cheaper to start over than to look for it.
+      this.cache.invalidateAll();
+    } else {
+      this.cache.invalidate(lowercaseNickname);
+    }
+  }
+
+  public void invalidate(String nickname) {
+    this.onInvalidate(null, nickname.toLowerCase(Locale.ROOT));
+  }
+
+  public void invalidateAll() {
+    this.version.incrementAndGet();
+    this.cache.invalidateAll();
+  }
+
+  public long getCacheSize() {
+    return this.cache.size();
+  }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.premium;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.LimboAuth.PremiumResponse;
+import net.elytrium.limboauth.LimboAuth.PremiumState;
+import net.elytrium.limboauth.Settings;
+import net.elytrium.limboauth.jfr.PremiumLookupEvent;
+import net.elytrium.limboauth.metrics.MetricsRegistry;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Resolves whether the nickname belongs to a premium account using the configured HTTP API.
+ * <ul>
+ *   <li>Concurrent lookups of the same nickname share a single request.</li>
+ *   <li>If the bulk URL is set, the lookups are collected for a short delay and sent in one Mojang bulk request (up to 10 names).</li>
+ *   <li>Premium and cracked answers are cached for different times, errors are never cached.</li>
+ *   <li>After the API rate-limits us, no requests are sent until the cooldown ends, then a single probe request closes the breaker.</li>
+ * </ul>
+ * The status codes and JSON validation fields are read from the config, so the same code works with the Mojang API and its mirrors.
+ */
+public class PremiumResolver {
+
+  private static final int MAX_BULK_SIZE = 10;
+  private static final int MAX_COOLDOWN_MULTIPLIER = 16;
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+  private static final Pattern BULK_NICKNAME_PATTERN = Pattern.compile("^[A-Za-z0-9_]{1,16}$");
+
+  private final Map<String, CompletableFuture<PremiumResponse>> inFlight = new ConcurrentHashMap<>();
+  private final List<String> batch = new ArrayList<>();
+  private final AtomicLong breakerOpenUntil = new AtomicLong();
+  private final AtomicBoolean breakerProbing = new AtomicBoolean();
+  private final AtomicInteger breakerTrips = new AtomicInteger();
+  private final AtomicLong requestsSent = new AtomicLong();
+  private final HttpClient client;
+  private final String profileUrl;
+  private final URI bulkUri;
+  private final Cache<String, PremiumResponse> premiumCache;
+  private final Cache<String, PremiumResponse> crackedCache;
+  private final ScheduledExecutorService scheduler;
+  private final long batchDelay;
+  private final long rateLimitCooldown;
+  private ScheduledFuture<?> batchFlush;
+
+  /**
+   * @param profileUrl        Single profile URL with the %s placeholder for the nickname.
+   * @param bulkUrl           Mojang-compatible bulk profiles URL, null or empty to look up every nickname separately.
+   * @param premiumTtl        Time in milliseconds to cache the premium answers.
+   * @param crackedTtl        Time in milliseconds to cache the cracked answers.
+   * @param cacheSize         Maximum amount of cached answers of each kind.
+   * @param batchDelay        Time in milliseconds to wait for more nicknames before sending the bulk request.
+   * @param rateLimitCooldown Time in milliseconds to stop sending the requests after being rate-limited, unless the API specifies it.
+   */
+  public PremiumResolver(HttpClient client, String profileUrl, String bulkUrl,
+      long premiumTtl, long crackedTtl, int cacheSize, long batchDelay, long rateLimitCooldown) {
+    this.client = client;
+    this.profileUrl = profileUrl;
+    this.bulkUri = bulkUrl == null || bulkUrl.isEmpty() ? null : URI.create(bulkUrl);
+    this.premiumCache = CacheBuilder.newBuilder().maximumSize(cacheSize).expireAfterWrite(premiumTtl, TimeUnit.MILLISECONDS).build();
+    this.crackedCache = CacheBuilder.newBuilder().maximumSize(cacheSize).expireAfterWrite(crackedTtl, TimeUnit.MILLISECONDS).build();
+    this.batchDelay = batchDelay;
+    this.rateLimitCooldown = rateLimitCooldown;
+
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "LimboAuth premium resolver");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    this.scheduler = scheduler;
+  }
+
+  public static PremiumResolver fromSettings(HttpClient client) {
+    return new PremiumResolver(client, Settings.IMP.MAIN.ISPREMIUM_AUTH_URL, Settings.IMP.MAIN.ISPREMIUM_BULK_AUTH_URL,
+        Settings.IMP.MAIN.PURGE_PREMIUM_CACHE_MILLIS, Settings.IMP.MAIN.PURGE_CRACKED_CACHE_MILLIS, Settings.IMP.MAIN.PREMIUM_CACHE_SIZE,
+        Settings.IMP.MAIN.PREMIUM_BATCH_DELAY_MILLIS, Settings.IMP.MAIN.PREMIUM_RATE_LIMIT_COOLDOWN_MILLIS);
+  }
+
+  /**
+   * Never completes exceptionally, the failures are reported as {@link PremiumState#ERROR} and {@link PremiumState#RATE_LIMIT}.
+   */
+  public CompletableFuture<PremiumResponse> resolve(String nickname) {
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    PremiumResponse cached = this.getCached(lowercaseNickname);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    CompletableFuture<PremiumResponse> future = new CompletableFuture<>();
+    CompletableFuture<PremiumResponse> existing = this.inFlight.putIfAbsent(lowercaseNickname, future);
+    if (existing != null) {
+      return existing;
+    }
+
+    if (this.bulkUri != null && BULK_NICKNAME_PATTERN.matcher(lowercaseNickname).matches()) {
+      this.enqueue(lowercaseNickname);
+    } else {
+      this.sendSingle(lowercaseNickname);
+    }
+
+    return future;
+  }
+
+  public PremiumResponse getCached(String nickname) {
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    PremiumResponse response = this.premiumCache.getIfPresent(lowercaseNickname);
+    return response == null ? this.crackedCache.getIfPresent(lowercaseNickname) : response;
+  }
+
+  public void invalidate(String nickname) {
+    String lowercaseNickname = nickname.toLowerCase(Locale.ROOT);
+    this.premiumCache.invalidate(lowercaseNickname);
+    this.crackedCache.invalidate(lowercaseNickname);
+  }
+
+  public void shutdown() {
+    this.scheduler.shutdownNow();
+    List<String> names;
+    synchronized (this.batch) {
+      names = new ArrayList<>(this.batch);
+      this.batch.clear();
+    }
+
+    names.forEach(name -> this.complete(name, new PremiumResponse(PremiumState.ERROR)));
+  }
+
+  public long getCacheSize() {
+    return this.premiumCache.size() + this.crackedCache.size();
+  }
+
+  public int getInFlight() {
+    return this.inFlight.size();
+  }
+
+  public long getRequestsSent() {
+    return this.requestsSent.get();
+  }
+
+  public boolean isRateLimited() {
+    return this.breakerOpenUntil.get() > System.currentTimeMillis();
+  }
+
+  private void enqueue(String lowercaseNickname) {
+    List<String> names = null;
+    synchronized (this.batch) {
+      this.batch.add(lowercaseNickname);
+      if (this.batch.size() >= MAX_BULK_SIZE) {
+        names = this.drainBatch();
+      } else if (this.batchFlush == null) {
+        try {
+          this.batchFlush = this.scheduler.schedule(this::flushBatch, this.batchDelay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+          // The resolver has been shut down during the reload, the request is still sent.
+          names = this.drainBatch();
+        }
+      }
+    }
+
+    if (names != null) {
+      this.sendBulk(names);
+    }
+  }
+
+  private void flushBatch() {
+    List<String> names;
+    synchronized (this.batch) {
+      names = this.drainBatch();
+    }
+
+    if (!names.isEmpty()) {
+      this.sendBulk(names);
+    }
+  }
+
+  private List<String> drainBatch() {
+    if (this.batchFlush != null) {
+      this.batchFlush.cancel(false);
+      this.batchFlush = null;
+    }
+
+    List<String> names = new ArrayList<>(this.batch);
+    this.batch.clear();
+    return names;
+  }
+
+  private void sendSingle(String lowercaseNickname) {
+    if (!this.tryAcquireBreaker()) {
+      this.complete(lowercaseNickname, new PremiumResponse(PremiumState.RATE_LIMIT));
+      return;
+    }
+
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(URI.create(String.format(this.profileUrl, URLEncoder.encode(lowercaseNickname, StandardCharsets.UTF_8))))
+        .timeout(REQUEST_TIMEOUT)
+        .build();
+
+    this.requestsSent.incrementAndGet();
+    PremiumLookupEvent event = new PremiumLookupEvent();
+    event.begin();
+    long startTime = System.nanoTime();
+    this.client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, throwable) -> {
+      LimboAuth.getMetrics().record(MetricsRegistry.Stage.PREMIUM_HTTP, startTime);
+      PremiumResponse result;
+      if (throwable == null) {
+        result = this.parseSingle(response);
+      } else {
+        LimboAuth.getLogger().error("Unable to authenticate with Mojang.", throwable);
+        result = new PremiumResponse(PremiumState.ERROR);
+      }
+
+      commitLookupEvent(event, 1, response, result.getState(), 0);
+
+      this.onResponse(result.getState() == PremiumState.PREMIUM_USERNAME || result.getState() == PremiumState.CRACKED);
+      this.complete(lowercaseNickname, result);
+    });
+  }
+
+  private void sendBulk(List<String> names) {
+    if (!this.tryAcquireBreaker()) {
+      names.forEach(name -> this.complete(name, new PremiumResponse(PremiumState.RATE_LIMIT)));
+      return;
+    }
+
+    JsonArray body = new JsonArray();
+    names.forEach(body::add);
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(this.bulkUri)
+        .timeout(REQUEST_TIMEOUT)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+        .build();
+
+    this.requestsSent.incrementAndGet();
+    PremiumLookupEvent event = new PremiumLookupEvent();
+    event.begin();
+    long startTime = System.nanoTime();
+    this.client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, throwable) -> {
+      LimboAuth.getMetrics().record(MetricsRegistry.Stage.PREMIUM_HTTP, startTime);
+      Map<String, PremiumResponse> results;
+      PremiumResponse fallback;
+      if (throwable == null) {
+        results = this.parseBulk(response, names);
+        boolean rateLimited = Settings.IMP.MAIN.STATUS_CODE_RATE_LIMIT.contains(response.statusCode());
+        fallback = new PremiumResponse(rateLimited ? PremiumState.RATE_LIMIT : PremiumState.ERROR);
+      } else {
+        LimboAuth.getLogger().error("Unable to authenticate with Mojang.", throwable);
+        results = Map.of();
+        fallback = new PremiumResponse(PremiumState.ERROR);
+      }
+
+      commitLookupEvent(event, names.size(), response, null, results.size());
+
+      this.onResponse(!results.isEmpty());
+      names.forEach(name -> this.complete(name, results.getOrDefault(name, fallback)));
+    });
+  }
+
+  private static void commitLookupEvent(PremiumLookupEvent event, int nicknames, @Nullable HttpResponse<String> response,
+      @Nullable PremiumState state, int resolved) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.setNicknames(nicknames);
+      event.setStatusCode(response == null ? -1 : response.statusCode());
+      event.setResult(state == null ? resolved + " resolved" : state.name());
+      event.commit();
+    }
+  }
+
+  private PremiumResponse parseSingle(HttpResponse<String> response) {
+    int statusCode = response.statusCode();
+    if (Settings.IMP.MAIN.STATUS_CODE_RATE_LIMIT.contains(statusCode)) {
+      this.openBreaker(response);
+      return new PremiumResponse(PremiumState.RATE_LIMIT);
+    }
+
+    try {
+      if (Settings.IMP.MAIN.STATUS_CODE_USER_EXISTS.contains(statusCode)) {
+        JsonElement jsonElement = JsonParser.parseString(response.body());
+        if (validateScheme(jsonElement, Settings.IMP.MAIN.USER_EXISTS_JSON_VALIDATOR_FIELDS)) {
+          return new PremiumResponse(PremiumState.PREMIUM_USERNAME, ((JsonObject) jsonElement).get(Settings.IMP.MAIN.JSON_UUID_FIELD).getAsString());
+        }
+      }
+
+      if (Settings.IMP.MAIN.STATUS_CODE_USER_NOT_EXISTS.contains(statusCode)) {
+        // The body is only parsed if it has to be validated, Mojang API may respond with an empty one.
+        List<String> scheme = Settings.IMP.MAIN.USER_NOT_EXISTS_JSON_VALIDATOR_FIELDS;
+        if (scheme.isEmpty() || validateScheme(JsonParser.parseString(response.body()), scheme)) {
+          return new PremiumResponse(PremiumState.CRACKED);
+        }
+      }
+    } catch (JsonParseException | IllegalArgumentException e) {
+      LimboAuth.getLogger().error("Unable to parse the isPremium API response: " + response.body(), e);
+    }
+
+    return new PremiumResponse(PremiumState.ERROR);
+  }
+
+  /**
+   * The bulk endpoint only returns the existing profiles, so the other nicknames are cracked.
+   * Returns an empty map if the response can't be used.
+   */
+  private Map<String, PremiumResponse> parseBulk(HttpResponse<String> response, List<String> names) {
+    int statusCode = response.statusCode();
+    if (Settings.IMP.MAIN.STATUS_CODE_RATE_LIMIT.contains(statusCode)) {
+      this.openBreaker(response);
+      return Map.of();
+    }
+
+    if (statusCode != 200) {
+      LimboAuth.getLogger().error("The bulk isPremium API responded with the status code " + statusCode + ": " + response.body());
+      return Map.of();
+    }
+
+    try {
+      JsonElement jsonElement = JsonParser.parseString(response.body());
+      if (!jsonElement.isJsonArray()) {
+        LimboAuth.getLogger().error("Unexpected bulk isPremium API response: " + response.body());
+        return Map.of();
+      }
+
+      Map<String, PremiumResponse> results = new HashMap<>(names.size());
+      for (JsonElement profile : jsonElement.getAsJsonArray()) {
+        if (validateScheme(profile, List.of("name", Settings.IMP.MAIN.JSON_UUID_FIELD))) {
+          JsonObject object = (JsonObject) profile;
+          results.put(object.get("name").getAsString().toLowerCase(Locale.ROOT),
+              new PremiumResponse(PremiumState.PREMIUM_USERNAME, object.get(Settings.IMP.MAIN.JSON_UUID_FIELD).getAsString()));
+        }
+      }
+
+      for (String name : names) {
+        results.putIfAbsent(name, new PremiumResponse(PremiumState.CRACKED));
+      }
+
+      return results;
+    } catch (JsonParseException | IllegalArgumentException e) {
+      LimboAuth.getLogger().error("Unable to parse the bulk isPremium API response: " + response.body(), e);
+      return Map.of();
+    }
+  }
+
+  private void complete(String lowercaseNickname, PremiumResponse response) {
+    if (response.getState() == PremiumState.PREMIUM_USERNAME) {
+      this.premiumCache.put(lowercaseNickname, response);
+    } else if (response.getState() == PremiumState.CRACKED) {
+      this.crackedCache.put(lowercaseNickname, response);
+    }
+
+    CompletableFuture<PremiumResponse> future = this.inFlight.remove(lowercaseNickname);
+    if (future != null) {
+      future.complete(response);
+    }
+  }
+
+  /**
+   * Closed breaker lets every request through, open one rejects them until the cooldown ends,
+   * and after that only one probe request is allowed until its result is known.
+   */
+  private boolean tryAcquireBreaker() {
+    long openUntil = this.breakerOpenUntil.get();
+    if (openUntil == 0) {
+      return true;
+    }
+
+    if (System.currentTimeMillis() < openUntil) {
+      return false;
+    }
+
+    return this.breakerProbing.compareAndSet(false, true);
+  }
+
+  private void openBreaker(HttpResponse<String> response) {
+    int trips = this.breakerTrips.incrementAndGet();
+    long cooldown = response.headers().firstValue("Retry-After").map(retryAfter -> {
+      try {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+      } catch (NumberFormatException e) {
+        return 0L;
+      }
+    }).filter(retryAfter -> retryAfter > 0).orElse(this.rateLimitCooldown * Math.min(MAX_COOLDOWN_MULTIPLIER, 1L << Math.min(trips - 1, 4)));
+
+    this.breakerOpenUntil.set(System.currentTimeMillis() + cooldown);
+    LimboAuth.getLogger().warn("The isPremium API has rate-limited the server, pausing the requests for " + cooldown + " ms.");
+  }
+
+  /**
+   * Closes the breaker after a successful response, the failed probe lets the next request probe the API again.
+   */
+  private void onResponse(boolean succeeded) {
+    if (succeeded && this.breakerOpenUntil.get() != 0) {
+      this.breakerOpenUntil.set(0);
+      this.breakerTrips.set(0);
+      LimboAuth.getLogger().info("The isPremium API is available again.");
+    }
+
+    this.breakerProbing.set(false);
+  }
+
+  private static boolean validateScheme(JsonElement jsonElement, List<String> scheme) {
+    if (!scheme.isEmpty()) {
+      if (!(jsonElement instanceof JsonObject)) {
+        return false;
+      }
+
+      JsonObject object = (JsonObject) jsonElement;
+      for (String field : scheme) {
+        if (!object.has(field)) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.session;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import net.elytrium.limboauth.LimboAuth;
+import net.elytrium.limboauth.database.PlayerRepository;
+import net.elytrium.limboauth.model.StoredSession;
+
+/**
+ * Keeps the sessions in the SESSIONS table, so the proxies that use the same database share them.
+ * Nothing is cached locally, otherwise a session destroyed on one proxy would still be accepted by the others.
+ * The queries are executed on the {@link PlayerRepository} executor.
+ */
+public class DatabaseSessionStore implements SessionStore {
+
+  private final Dao<StoredSession, String> sessionDao;
+  private final PlayerRepository playerRepository;
+  private final long ttl;
+
+  public DatabaseSessionStore(Dao<StoredSession, String> sessionDao, PlayerRepository playerRepository, long ttl) {
+    this.sessionDao = sessionDao;
+    this.playerRepository = playerRepository;
+    this.ttl = ttl;
+  }
+
+  @Override
+  public CompletableFuture<CachedSession> get(String lowercaseNickname) {
+    return this.playerRepository.supply(() -> {
+      StoredSession storedSession = this.sessionDao.queryForId(lowercaseNickname);
+      if (storedSession == null) {
+        return null;
+      }
+
+      CachedSession session;
+      try {
+        session = new CachedSession(storedSession.getCheckTime(), InetAddress.getByName(storedSession.getIp()), storedSession.getNickname());
+      } catch (UnknownHostException e) {
+        // The address is always stored as a literal, so it is not resolved, but may be corrupted.
+        return null;
+      }
+
+      return session.isExpired(System.currentTimeMillis(), this.ttl) ? null : session;
+    });
+  }
+
+  @Override
+  public void put(String lowercaseNickname, CachedSession session) {
+    StoredSession storedSession = new StoredSession(
+        lowercaseNickname, session.getUsername(), session.getInetAddress().getHostAddress(), session.getCheckTime());
+    this.playerRepository.supply(() -> {
+      // Not every supported database has an upsert, and the drivers report the duplicate keys differently.
+      // If the insert fails, another proxy could have inserted the row in between, so the update is retried,
+      // and the error is only reported if there is still no row to update.
+      if (this.sessionDao.update(storedSession) == 0) {
+        try {
+          this.sessionDao.create(storedSession);
+        } catch (SQLException e) {
+          if (this.sessionDao.update(storedSession) == 0) {
+            throw e;
+          }
+        }
+      }
+
+      return null;
+    }).exceptionally(e -> {
+      LimboAuth.getLogger().error("Unable to save the session of " + session.getUsername() + ".", e);
+      return null;
+    });
+  }
+
+  @Override
+  public void remove(String lowercaseNickname) {
+    this.playerRepository.supply(() -> this.sessionDao.deleteById(lowercaseNickname)).exceptionally(e -> {
+      LimboAuth.getLogger().error("Unable to destroy the session of " + lowercaseNickname + ".", e);
+      return null;
+    });
+  }
+
+  @Override
+  public void evictExpired() {
+    this.playerRepository.supply(() -> {
+      DeleteBuilder<StoredSession, String> deleteBuilder = this.sessionDao.deleteBuilder();
+      deleteBuilder.where().le(StoredSession.CHECK_TIME_FIELD, System.currentTimeMillis() - this.ttl);
+      return deleteBuilder.delete();
+    }).exceptionally(e -> {
+      LimboAuth.getLogger().error("Unable to purge the expired sessions.", e);
+      return null;
+    });
+  }
+
+  @Override
+  public long size() {
+    return -1;
+  }
+
+  @Override
+  public void close() {
+
+  }
+}
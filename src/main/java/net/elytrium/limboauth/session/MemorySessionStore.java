@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import net.elytrium.limboauth.LimboAuth;
+
+/**
+ * Keeps the sessions in memory. If the snapshot path is set, the sessions are written there on {@link #close()}
+ * and read back by the next store, so the players don't have to log in again after the reload or restart.
+ * The snapshot is deleted after reading, the sessions destroyed after that can't come back after a crash.
+ */
+public class MemorySessionStore implements SessionStore {
+
+  private static final int MAGIC = 0x4C415353; // LASS
+  private static final int VERSION = 1;
+
+  private final Map<String, CachedSession> sessions = new ConcurrentHashMap<>();
+  private final Path snapshotPath;
+  private final long ttl;
+
+  public MemorySessionStore(Path snapshotPath, long ttl) {
+    this.snapshotPath = snapshotPath;
+    this.ttl = ttl;
+  }
+
+  @Override
+  public CompletableFuture<CachedSession> get(String lowercaseNickname) {
+    CachedSession session = this.sessions.get(lowercaseNickname);
+    return CompletableFuture.completedFuture(session == null || session.isExpired(System.currentTimeMillis(), this.ttl) ? null : session);
+  }
+
+  @Override
+  public void put(String lowercaseNickname, CachedSession session) {
+    this.sessions.put(lowercaseNickname, session);
+  }
+
+  @Override
+  public void remove(String lowercaseNickname) {
+    this.sessions.remove(lowercaseNickname);
+  }
+
+  @Override
+  public void evictExpired() {
+    long currentTime = System.currentTimeMillis();
+    this.sessions.values().removeIf(session -> session.isExpired(currentTime, this.ttl));
+  }
+
+  @Override
+  public long size() {
+    return this.sessions.size();
+  }
+
+  @Override
+  public void close() {
+    if (this.snapshotPath == null) {
+      return;
+    }
+
+    try {
+      this.save();
+    } catch (IOException e) {
+      LimboAuth.getLogger().error("Unable to save the sessions to " + this.snapshotPath + ".", e);
+    }
+  }
+
+  /**
+   * Reads the unexpired sessions from the snapshot left by the previous store, if any.
+   */
+  public void restore() {
+    if (this.snapshotPath == null || !Files.exists(this.snapshotPath)) {
+      return;
+    }
+
+    try {
+      long currentTime = System.currentTimeMillis();
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.snapshotPath)))) {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+          LimboAuth.getLogger().warn("Ignoring the sessions snapshot " + this.snapshotPath + " of an unknown format.");
+          return;
+        }
+
+        int count = input.readInt();
+        for (int i = 0; i < count; ++i) {
+          String username = input.readUTF();
+          long checkTime = input.readLong();
+          byte[] address = new byte[input.readUnsignedByte()];
+          input.readFully(address);
+
+          CachedSession session = new CachedSession(checkTime, InetAddress.getByAddress(address), username);
+          if (!session.isExpired(currentTime, this.ttl)) {
+            this.sessions.put(username.toLowerCase(Locale.ROOT), session);
+          }
+        }
+      } finally {
+        Files.delete(this.snapshotPath);
+      }
+    } catch (IOException e) {
+      LimboAuth.getLogger().error("Unable to restore the sessions from " + this.snapshotPath + ".", e);
+    }
+  }
+
+  private void save() throws IOException {
+    this.evictExpired();
+    Path temporaryPath = this.snapshotPath.resolveSibling(this.snapshotPath.getFileName() + ".tmp");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+      // The map may still be modified by the logging in players, so the amount is written for the copy.
+      CachedSession[] sessions = this.sessions.values().toArray(new CachedSession[0]);
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(sessions.length);
+      for (CachedSession session : sessions) {
+        byte[] address = session.getInetAddress().getAddress();
+        output.writeUTF(session.getUsername());
+        output.writeLong(session.getCheckTime());
+        output.writeByte(address.length);
+        output.write(address);
+      }
+    }
+
+    Files.move(temporaryPath, this.snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.session;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage of the {@link CachedSession sessions}, keyed by the lowercase nickname.
+ */
+public interface SessionStore {
+
+  /**
+   * Completes with null if there is no unexpired session.
+   */
+  CompletableFuture<CachedSession> get(String lowercaseNickname);
+
+  void put(String lowercaseNickname, CachedSession session);
+
+  void remove(String lowercaseNickname);
+
+  void evictExpired();
+
+  /**
+   * Amount of the stored sessions, -1 if it is unknown.
+   */
+  long size();
+
+  /**
+   * Called on the reload and shutdown, before the database connection is closed.
+   */
+  void close();
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class AdmissionControllerTest {
+
+  private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+  @Test
+  void reconnectKeepsTheSlotOfTheNewConnection() {
+    AdmissionController controller = new AdmissionController(1, 0, 10, 60000);
+    UUID uuid = UUID.randomUUID();
+    Object oldConnection = new Object();
+    Object newConnection = new Object();
+    assertEquals(AdmissionController.Outcome.ADMITTED, controller.admit(uuid, ADDRESS, oldConnection, null).join().getOutcome());
+    assertEquals(AdmissionController.Outcome.ADMITTED, controller.admit(uuid, ADDRESS, newConnection, null).join().getOutcome());
+    assertEquals(1, controller.getActiveSessions());
+
+    controller.release(uuid, oldConnection);
+
+    assertEquals(1, controller.getActiveSessions());
+    assertFalse(controller.admit(UUID.randomUUID(), ADDRESS, new Object(), null).isDone());
+  }
+
+  @Test
+  void releaseOfTheOwnerAdmitsTheNextPlayer() {
+    AdmissionController controller = new AdmissionController(1, 0, 10, 60000);
+    UUID first = UUID.randomUUID();
+    Object connection = new Object();
+    controller.admit(first, ADDRESS, connection, null);
+    AdmissionController.Admission waiting = controller.admit(UUID.randomUUID(), ADDRESS, new Object(), null).getNow(null);
+    assertNull(waiting);
+
+    controller.release(first, connection);
+    controller.release(first, connection);
+
+    assertEquals(1, controller.getActiveSessions());
+    assertEquals(0, controller.getWaitingPlayers());
+  }
+
+  @Test
+  void waitingPlayersReceiveTheirPositions() throws UnknownHostException {
+    AdmissionController controller = new AdmissionController(1, 0, 10, 60000);
+    InetAddress otherAddress = InetAddress.getByName("10.0.0.1");
+    AtomicInteger first = new AtomicInteger();
+    AtomicInteger second = new AtomicInteger();
+    AtomicInteger other = new AtomicInteger();
+    controller.admit(UUID.randomUUID(), ADDRESS, new Object(), null);
+    controller.admit(UUID.randomUUID(), ADDRESS, new Object(), first::set);
+    controller.admit(UUID.randomUUID(), ADDRESS, new Object(), second::set);
+    controller.admit(UUID.randomUUID(), otherAddress, new Object(), other::set);
+
+    controller.expireWaiting();
+
+    // The subnets take turns, the heads of both queues are admitted within the first round.
+    assertEquals(2, first.get());
+    assertEquals(3, second.get());
+    assertEquals(2, other.get());
+  }
+}
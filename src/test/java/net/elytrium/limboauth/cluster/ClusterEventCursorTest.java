@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class ClusterEventCursorTest {
+
+  private static final long GAP_TIMEOUT = 60000;
+
+  @Test
+  void deliversEventsCommittedOutOfOrder() {
+    ClusterEventCursor cursor = new ClusterEventCursor(GAP_TIMEOUT, 500);
+    cursor.reset(10);
+
+    // Event 12 has been committed before event 11.
+    assertTrue(cursor.accept(12, 0));
+    assertEquals(12, cursor.getLastId());
+    assertEquals(Set.of(11L), cursor.getGaps());
+
+    // The next poll asks for the gap again and finds the late event.
+    assertTrue(cursor.accept(11, 1000));
+    assertTrue(cursor.getGaps().isEmpty());
+  }
+
+  @Test
+  void deliversEveryEventOnce() {
+    ClusterEventCursor cursor = new ClusterEventCursor(GAP_TIMEOUT, 500);
+    assertTrue(cursor.accept(1, 0));
+    assertTrue(cursor.accept(3, 0));
+    assertTrue(cursor.accept(2, 0));
+
+    assertFalse(cursor.accept(1, 0));
+    assertFalse(cursor.accept(2, 0));
+    assertFalse(cursor.accept(3, 0));
+  }
+
+  @Test
+  void skipsEventsPublishedBeforeStart() {
+    ClusterEventCursor cursor = new ClusterEventCursor(GAP_TIMEOUT, 500);
+    cursor.reset(100);
+    assertFalse(cursor.accept(99, 0));
+    assertTrue(cursor.accept(101, 0));
+    assertTrue(cursor.getGaps().isEmpty());
+  }
+
+  @Test
+  void forgetsGapsAfterTimeout() {
+    ClusterEventCursor cursor = new ClusterEventCursor(GAP_TIMEOUT, 500);
+    assertTrue(cursor.accept(5, 0));
+    assertEquals(Set.of(1L, 2L, 3L, 4L), cursor.getGaps());
+
+    cursor.expireGaps(GAP_TIMEOUT - 1);
+    assertEquals(4, cursor.getGaps().size());
+
+    cursor.expireGaps(GAP_TIMEOUT);
+    assertTrue(cursor.getGaps().isEmpty());
+    // A rolled back insert never shows up, but if it does after the timeout it is not delivered.
+    assertFalse(cursor.accept(3, GAP_TIMEOUT));
+  }
+
+  @Test
+  void limitsRememberedGaps() {
+    ClusterEventCursor cursor = new ClusterEventCursor(GAP_TIMEOUT, 3);
+    assertTrue(cursor.accept(1000, 0));
+    assertEquals(Set.of(997L, 998L, 999L), cursor.getGaps());
+
+    assertTrue(cursor.accept(1002, 0));
+    assertEquals(Set.of(998L, 999L, 1001L), cursor.getGaps());
+  }
+}
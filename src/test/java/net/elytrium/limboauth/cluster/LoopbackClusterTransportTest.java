@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2021 - 2023 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limboauth.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LoopbackClusterTransportTest {
+
+  @Test
+  void deliversToOtherNodesOnly() {
+    LoopbackClusterTransport.Network network = new LoopbackClusterTransport.Network();
+    List<ClusterMessage> receivedByFirst = new ArrayList<>();
+    List<ClusterMessage> receivedBySecond = new ArrayList<>();
+    LoopbackClusterTransport first = new LoopbackClusterTransport(network);
+    LoopbackClusterTransport second = new LoopbackClusterTransport(network);
+    first.start("first", receivedByFirst::add);
+    second.start("second", receivedBySecond::add);
+
+    ClusterMessage message = new ClusterMessage(ClusterMessage.Type.SESSION_REVOKE, "first", "player", null, 0);
+    first.publish(message);
+
+    assertTrue(receivedByFirst.isEmpty());
+    assertEquals(List.of(message), receivedBySecond);
+  }
+
+  @Test
+  void stopsDeliveringAfterClose() {
+    LoopbackClusterTransport.Network network = new LoopbackClusterTransport.Network();
+    List<ClusterMessage> received = new ArrayList<>();
+    LoopbackClusterTransport first = new LoopbackClusterTransport(network);
+    LoopbackClusterTransport second = new LoopbackClusterTransport(network);
+    first.start("first", message -> { });
+    second.start("second", received::add);
+    assertEquals(2, network.getNodes());
+
+    second.close();
+    first.publish(new ClusterMessage(ClusterMessage.Type.SESSION_REVOKE, "first", "player", null, 0));
+
+    assertEquals(1, network.getNodes());
+    assertTrue(received.isEmpty());
+  }
+}